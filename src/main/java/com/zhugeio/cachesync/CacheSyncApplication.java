@@ -1,17 +1,32 @@
 package com.zhugeio.cachesync;
 
+import com.zhugeio.cachesync.config.CacheSyncConfig;
+import com.zhugeio.cachesync.entity.SyncResult;
+import com.zhugeio.cachesync.metrics.SyncMetrics;
+import com.zhugeio.cachesync.server.AdminHttpServer;
 import com.zhugeio.cachesync.service.CacheSyncService;
+import com.zhugeio.cachesync.service.CdcSyncService;
+import com.zhugeio.cachesync.service.KVRocksService;
+import com.zhugeio.cachesync.service.RunHistoryService;
+import com.zhugeio.cachesync.service.TargetedRefreshService;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
 import org.springframework.boot.CommandLineRunner;
+import org.springframework.boot.DefaultApplicationArguments;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.Bean;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
 /**
  * ZhugeIO Cache Sync Application
  * 
  * 用于将MySQL中的缓存数据同步到KVRocks
- * 设计用于海豚调度定时调用
+ * 设计用于海豚调度定时调用；--daemon 或启用CDC时常驻运行
  * 
  * @author zhugeio
  */
@@ -24,17 +39,57 @@ public class CacheSyncApplication {
     }
 
     @Bean
-    public CommandLineRunner run(CacheSyncService cacheSyncService) {
+    public CommandLineRunner run(CacheSyncService cacheSyncService, KVRocksService kvRocksService,
+                                 CdcSyncService cdcSyncService, TargetedRefreshService targetedRefreshService,
+                                 AdminHttpServer adminHttpServer, SyncMetrics syncMetrics,
+                                 RunHistoryService runHistoryService, CacheSyncConfig config) {
         return args -> {
+            ApplicationArguments arguments = new DefaultApplicationArguments(args);
+            
+            // 回滚代际: --rollback=appIdEventIdMap[,blackEventIdSet]
+            List<String> rollbackCaches = arguments.getOptionValues("rollback");
+            if (rollbackCaches != null) {
+                boolean allRolledBack = true;
+                for (String value : rollbackCaches) {
+                    for (String cacheName : value.split(",")) {
+                        for (String name : kvRocksService.replicaNames(cacheName.trim())) {
+                            allRolledBack &= kvRocksService.rollbackGeneration(name) >= 0;
+                        }
+                    }
+                }
+                System.exit(allRolledBack ? 0 : 1);
+            }
+            
+            // 定向刷新: --refresh-cache=appIdEventIdMap[,blackEventIdSet] / --refresh-app=1001[,1002]
+            if (arguments.containsOption("refresh-cache") || arguments.containsOption("refresh-app")) {
+                List<SyncResult> results = targetedRefreshService.refresh(
+                        optionValue(arguments, "refresh-cache"), optionValue(arguments, "refresh-app"));
+                System.exit(results.stream().allMatch(SyncResult::isSuccess) ? 0 : 1);
+            }
+            
             log.info("========================================");
             log.info("Starting ZhugeIO Cache Sync Service...");
             log.info("========================================");
             
+            // 常驻模式: CDC实时写入 + 定期全量兜底
+            if (arguments.containsOption("daemon") || config.getDaemon().isEnabled() || cdcSyncService.isEnabled()) {
+                runDaemon(cacheSyncService, cdcSyncService, targetedRefreshService, adminHttpServer, syncMetrics, config);
+                return;
+            }
+            
             long startTime = System.currentTimeMillis();
             
             try {
                 // 执行全量同步
                 cacheSyncService.syncAll();
+                syncMetrics.export();
+                
+                // 严格模式: 性能回退时以2退出，与失败(1)区分
+                if (runHistoryService.isStrictFailure()) {
+                    log.error("Cache sync completed with performance regressions: {}",
+                            runHistoryService.getLastRegressions());
+                    System.exit(2);
+                }
                 
                 long costTime = System.currentTimeMillis() - startTime;
                 log.info("========================================");
@@ -47,9 +102,59 @@ public class CacheSyncApplication {
                 
             } catch (Exception e) {
                 log.error("Cache sync failed!", e);
+                syncMetrics.export();
                 // 异常退出，返回非0状态码
                 System.exit(1);
             }
         };
     }
+
+    private static String optionValue(ApplicationArguments arguments, String name) {
+        List<String> values = arguments.getOptionValues(name);
+        return values == null ? null : String.join(",", values);
+    }
+
+    /**
+     * 常驻运行: 启动CDC后立即全量一次，之后按间隔全量；CDC请求时提前全量
+     */
+    private void runDaemon(CacheSyncService cacheSyncService, CdcSyncService cdcSyncService,
+                           TargetedRefreshService targetedRefreshService, AdminHttpServer adminHttpServer,
+                           SyncMetrics syncMetrics, CacheSyncConfig config) throws Exception {
+        if (cdcSyncService.isEnabled()) {
+            cdcSyncService.start();
+        }
+        if (config.getDaemon().isHttpEnabled()) {
+            // 定向刷新与全量、CDC写入互斥，正在全量或刷新时返回409，不阻塞管理接口
+            adminHttpServer.register("/refresh", params -> {
+                if (params.get("cache") == null && params.get("app") == null) {
+                    throw new IllegalArgumentException("cache or app is required");
+                }
+                List<SyncResult> results = new ArrayList<>();
+                if (!cdcSyncService.tryRunExclusive(() ->
+                        results.addAll(targetedRefreshService.refresh(params.get("cache"), params.get("app"))))) {
+                    return new AdminHttpServer.Response(409,
+                            Collections.singletonMap("error", "full sync or refresh in progress, retry later"));
+                }
+                boolean success = results.stream().allMatch(SyncResult::isSuccess);
+                return new AdminHttpServer.Response(success ? 200 : 500, results);
+            });
+            if (syncMetrics.isEnabled()) {
+                adminHttpServer.register("/metrics", params -> new AdminHttpServer.Response(200, syncMetrics.scrape()));
+            }
+            adminHttpServer.start();
+        }
+        long interval = TimeUnit.MINUTES.toMillis(config.getDaemon().getFullSyncIntervalMinutes());
+        long nextFullSync = 0;
+        while (!Thread.currentThread().isInterrupted()) {
+            if (System.currentTimeMillis() >= nextFullSync || cdcSyncService.consumeFullSyncRequest()) {
+                try {
+                    cdcSyncService.runExclusive(cacheSyncService::syncAll);
+                } catch (Exception e) {
+                    log.error("Full sync failed in daemon mode", e);
+                }
+                nextFullSync = System.currentTimeMillis() + interval;
+            }
+            TimeUnit.SECONDS.sleep(1);
+        }
+    }
 }
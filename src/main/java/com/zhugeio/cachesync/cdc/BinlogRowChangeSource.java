@@ -0,0 +1,150 @@
+package com.zhugeio.cachesync.cdc;
+
+import com.github.shyiko.mysql.binlog.BinaryLogClient;
+import com.github.shyiko.mysql.binlog.event.*;
+import com.zhugeio.cachesync.config.CacheSyncConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * MySQL binlog行变更来源 (需要 binlog_format=ROW)
+ *
+ * 列名从information_schema按列序号获取；位点格式 ${binlogFile}:${position}，
+ * 只在事务提交(XID)后推进，重启时从完整事务的边界继续
+ */
+@Slf4j
+public class BinlogRowChangeSource implements RowChangeSource {
+
+    private final CacheSyncConfig.Cdc options;
+    private final JdbcTemplate jdbcTemplate;
+    private final Set<String> tables;
+    private final Map<Long, TableMapEventData> tableMaps = new ConcurrentHashMap<>();
+    private final Map<String, List<String>> columnNames = new ConcurrentHashMap<>();
+    private BinaryLogClient client;
+    private String database;
+    private volatile String position;
+
+    public BinlogRowChangeSource(CacheSyncConfig.Cdc options, JdbcTemplate jdbcTemplate, Set<String> tables) {
+        this.options = options;
+        this.jdbcTemplate = jdbcTemplate;
+        this.tables = tables;
+    }
+
+    @Override
+    public void start(String position, Consumer<RowChange> handler) throws Exception {
+        database = options.getDatabase() == null || options.getDatabase().isEmpty()
+                ? jdbcTemplate.queryForObject("SELECT DATABASE()", String.class)
+                : options.getDatabase();
+        for (String table : tables) {
+            loadColumns(table);
+        }
+
+        client = new BinaryLogClient(options.getHost(), options.getPort(), options.getUsername(), options.getPassword());
+        client.setServerId(options.getServerId());
+        if (position != null) {
+            int idx = position.lastIndexOf(':');
+            client.setBinlogFilename(position.substring(0, idx));
+            client.setBinlogPosition(Long.parseLong(position.substring(idx + 1)));
+            this.position = position;
+        }
+        client.registerEventListener(event -> onEvent(event, handler));
+        client.connect(TimeUnit.SECONDS.toMillis(options.getConnectTimeoutSeconds()));
+        if (this.position == null) {
+            this.position = client.getBinlogFilename() + ":" + client.getBinlogPosition();
+        }
+        log.info("Binlog source started at {}", this.position);
+    }
+
+    private void onEvent(Event event, Consumer<RowChange> handler) {
+        EventHeaderV4 header = event.getHeader();
+        EventType type = header.getEventType();
+        EventData data = event.getData();
+
+        if (type == EventType.TABLE_MAP) {
+            TableMapEventData tableMap = (TableMapEventData) data;
+            tableMaps.put(tableMap.getTableId(), tableMap);
+        } else if (type == EventType.XID) {
+            position = client.getBinlogFilename() + ":" + header.getNextPosition();
+        } else if (EventType.isWrite(type)) {
+            WriteRowsEventData rows = (WriteRowsEventData) data;
+            String table = watchedTable(rows.getTableId());
+            if (table != null) {
+                for (Serializable[] row : rows.getRows()) {
+                    handler.accept(new RowChange(table, RowChange.Type.INSERT, null, toMap(table, row)));
+                }
+            }
+        } else if (EventType.isUpdate(type)) {
+            UpdateRowsEventData rows = (UpdateRowsEventData) data;
+            String table = watchedTable(rows.getTableId());
+            if (table != null) {
+                for (Map.Entry<Serializable[], Serializable[]> row : rows.getRows()) {
+                    handler.accept(new RowChange(table, RowChange.Type.UPDATE,
+                            toMap(table, row.getKey()), toMap(table, row.getValue())));
+                }
+            }
+        } else if (EventType.isDelete(type)) {
+            DeleteRowsEventData rows = (DeleteRowsEventData) data;
+            String table = watchedTable(rows.getTableId());
+            if (table != null) {
+                for (Serializable[] row : rows.getRows()) {
+                    handler.accept(new RowChange(table, RowChange.Type.DELETE, toMap(table, row), null));
+                }
+            }
+        }
+    }
+
+    private String watchedTable(long tableId) {
+        TableMapEventData tableMap = tableMaps.get(tableId);
+        if (tableMap == null || !database.equals(tableMap.getDatabase()) || !tables.contains(tableMap.getTable())) {
+            return null;
+        }
+        return tableMap.getTable();
+    }
+
+    private Map<String, Object> toMap(String table, Serializable[] row) {
+        List<String> columns = columnNames.get(table);
+        if (columns.size() != row.length) {
+            // 表结构变更后重新加载列名
+            columns = loadColumns(table);
+        }
+        Map<String, Object> result = new HashMap<>();
+        for (int i = 0; i < row.length && i < columns.size(); i++) {
+            Serializable value = row[i];
+            result.put(columns.get(i), value instanceof byte[] ? new String((byte[]) value, StandardCharsets.UTF_8) : value);
+        }
+        return result;
+    }
+
+    private List<String> loadColumns(String table) {
+        List<String> columns = jdbcTemplate.queryForList(
+                "SELECT COLUMN_NAME FROM information_schema.COLUMNS WHERE TABLE_SCHEMA = ? AND TABLE_NAME = ? " +
+                "ORDER BY ORDINAL_POSITION", String.class, database, table);
+        columnNames.put(table, columns);
+        return columns;
+    }
+
+    @Override
+    public String position() {
+        return position;
+    }
+
+    @Override
+    public void stop() {
+        if (client == null) {
+            return;
+        }
+        try {
+            client.disconnect();
+        } catch (IOException e) {
+            log.warn("Binlog disconnect failed: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.zhugeio.cachesync.cdc;
+
+import com.alibaba.fastjson.JSON;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * 内存行变更来源，用于联调和测试
+ *
+ * 通过 {@link #publish} 投递变更，或从JSON Lines文件回放 (每行一个RowChange)
+ * 位点为已交付的变更数量，重启时跳过已交付的部分
+ */
+@Slf4j
+public class InMemoryRowChangeSource implements RowChangeSource {
+
+    private final BlockingQueue<RowChange> queue = new LinkedBlockingQueue<>();
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong delivered = new AtomicLong();
+    private volatile boolean running;
+    private Thread worker;
+
+    public void publish(RowChange change) {
+        published.incrementAndGet();
+        queue.add(change);
+    }
+
+    /**
+     * 从JSON Lines文件加载变更
+     */
+    public void loadJsonLines(Path file) throws IOException {
+        int count = 0;
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            if (!line.trim().isEmpty()) {
+                publish(JSON.parseObject(line, RowChange.class));
+                count++;
+            }
+        }
+        log.info("Loaded {} row changes from {}", count, file);
+    }
+
+    @Override
+    public void start(String position, Consumer<RowChange> handler) {
+        long skip = position == null ? 0 : Long.parseLong(position);
+        delivered.set(0);
+        running = true;
+        worker = new Thread(() -> {
+            while (running) {
+                try {
+                    RowChange change = queue.poll(100, TimeUnit.MILLISECONDS);
+                    if (change == null) {
+                        continue;
+                    }
+                    if (delivered.get() >= skip) {
+                        handler.accept(change);
+                    }
+                    delivered.incrementAndGet();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }, "cdc-memory-source");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    @Override
+    public String position() {
+        return String.valueOf(delivered.get());
+    }
+
+    /**
+     * 投递的变更是否都已交付
+     */
+    public boolean isDrained() {
+        return delivered.get() >= published.get();
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (worker != null) {
+            worker.interrupt();
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.zhugeio.cachesync.cdc;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+/**
+ * 一行数据变更
+ *
+ * INSERT只有after，DELETE只有before，UPDATE两者都有；列名 -> 列值
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RowChange {
+
+    public enum Type {
+        INSERT, UPDATE, DELETE
+    }
+
+    private String table;
+
+    private Type type;
+
+    private Map<String, Object> before;
+
+    private Map<String, Object> after;
+}
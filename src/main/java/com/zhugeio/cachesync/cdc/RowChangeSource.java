@@ -0,0 +1,26 @@
+package com.zhugeio.cachesync.cdc;
+
+import java.util.function.Consumer;
+
+/**
+ * 行变更来源
+ *
+ * 实现方按提交顺序把变更交给handler，并维护最近一个完整事务之后的位点；
+ * 调用方在变更写入KVRocks后持久化位点，重启时从该位点继续 (重放的变更是幂等的)
+ */
+public interface RowChangeSource {
+
+    /**
+     * 开始读取，非阻塞
+     *
+     * @param position 上次持久化的位点，null表示从当前位置开始
+     */
+    void start(String position, Consumer<RowChange> handler) throws Exception;
+
+    /**
+     * 已交给handler的变更所对应的位点
+     */
+    String position();
+
+    void stop();
+}
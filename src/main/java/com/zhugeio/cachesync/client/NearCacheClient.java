@@ -0,0 +1,369 @@
+package com.zhugeio.cachesync.client;
+
+import com.alibaba.fastjson.JSON;
+import com.zhugeio.cachesync.config.CacheSyncConfig;
+import com.zhugeio.cachesync.constants.CacheKeyConstants;
+import com.zhugeio.cachesync.entity.ChangeNotification;
+import com.zhugeio.cachesync.service.KVRocksService;
+import io.lettuce.core.pubsub.StatefulRedisPubSubConnection;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 消费方本地缓存
+ *
+ * 替代逐条调用 {@link KVRocksService#asyncHGet} / {@link KVRocksService#asyncSIsMember}：
+ * 每个缓存一个有界本地LRU，命中时不访问KVRocks；不存在的结果同样缓存 (cache-misses)
+ *
+ * 订阅 sync:changes 时按通知只失效变化的缓存 (swap) 或条目 (delta)；
+ * 同时轮询 sync:version 作为兜底: 版本变化时，上次版本之后没有收到swap通知的缓存整体失效
+ * (未订阅、订阅断开或通知丢失时等同于全部失效)
+ * preload-caches中的小缓存首次访问时在后台整体加载，加载完成前未命中照常读取KVRocks，
+ * 完成后未命中即表示不存在
+ *
+ * 未订阅时，CDC和定向刷新直接写入生效Key不改变版本，这部分变更在下次全量后可见
+ */
+@Slf4j
+@Component
+public class NearCacheClient {
+
+    /**
+     * 不存在的Hash Field
+     */
+    private static final Object MISSING = new Object();
+
+    @Autowired
+    private KVRocksService kvRocksService;
+
+    @Autowired
+    private CacheSyncConfig config;
+
+    private final Map<String, LocalCache> caches = new ConcurrentHashMap<>();
+    private final Map<String, String> digests = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private volatile String version;
+    /**
+     * 上次版本变化之后收到swap通知的缓存
+     */
+    private final Set<String> swapNotified = ConcurrentHashMap.newKeySet();
+    private ScheduledExecutorService poller;
+    private ExecutorService preloader;
+    private StatefulRedisPubSubConnection<String, String> subscription;
+
+    @PostConstruct
+    public void init() {
+        CacheSyncConfig.NearCache options = config.getNearCache();
+        if (!options.isEnabled()) {
+            return;
+        }
+        poller = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "near-cache-version");
+            thread.setDaemon(true);
+            return thread;
+        });
+        poller.scheduleWithFixedDelay(this::pollVersion, 0, options.getVersionPollMs(), TimeUnit.MILLISECONDS);
+        preloader = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "near-cache-preload");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        if (options.isSubscribe()) {
+            try {
+                subscription = kvRocksService.subscribe(CacheKeyConstants.SYNC_CHANGES_CHANNEL, this::onNotification);
+            } catch (Exception e) {
+                log.warn("Failed to subscribe {}, fall back to version polling: {}",
+                        CacheKeyConstants.SYNC_CHANGES_CHANNEL, e.getMessage());
+            }
+        }
+    }
+
+    private void onNotification(String message) {
+        try {
+            ChangeNotification notification = JSON.parseObject(message, ChangeNotification.class);
+            if (ChangeNotification.DELTA.equals(notification.getType())) {
+                // 增量后数据与上次替换的摘要不再对应
+                digests.remove(notification.getCache());
+            }
+            if (ChangeNotification.DELTA.equals(notification.getType()) && notification.getFields() != null) {
+                invalidate(notification.getCache(), notification.getFields());
+            } else if (notification.getDigest() != null) {
+                // 摘要未变化的整体替换无需失效
+                String previous = digests.put(notification.getCache(), notification.getDigest());
+                if (!notification.getDigest().equals(previous)) {
+                    invalidate(notification.getCache());
+                }
+            } else {
+                invalidate(notification.getCache());
+            }
+            if (ChangeNotification.SWAP.equals(notification.getType())) {
+                swapNotified.add(notification.getCache());
+            }
+        } catch (Exception e) {
+            log.warn("Invalid change notification: {}", message);
+        }
+    }
+
+    public boolean isEnabled() {
+        return config.getNearCache().isEnabled();
+    }
+
+    /**
+     * 本地优先的HGET，不存在时返回null
+     */
+    public CompletableFuture<String> hget(String cacheName, String field) {
+        if (!isEnabled()) {
+            return kvRocksService.asyncHGet(cacheName, field);
+        }
+        LocalCache cache = cache(cacheName);
+        preloadIfConfigured(cacheName, cache, false);
+
+        Object local = cache.get(field);
+        if (local != null || cache.complete) {
+            hits.incrementAndGet();
+            return CompletableFuture.completedFuture(local == null || local == MISSING ? null : (String) local);
+        }
+
+        misses.incrementAndGet();
+        long epoch = cache.epoch;
+        return kvRocksService.asyncHGetChecked(cacheName, field)
+                .thenApply(value -> {
+                    if (value != null) {
+                        cache.put(epoch, field, value);
+                    } else if (config.getNearCache().isCacheMisses()) {
+                        cache.put(epoch, field, MISSING);
+                    }
+                    return value;
+                })
+                .exceptionally(ex -> null);
+    }
+
+    /**
+     * 本地优先的SISMEMBER
+     */
+    public CompletableFuture<Boolean> sismember(String cacheName, String member) {
+        if (!isEnabled()) {
+            return kvRocksService.asyncSIsMember(cacheName, member);
+        }
+        LocalCache cache = cache(cacheName);
+        preloadIfConfigured(cacheName, cache, true);
+
+        Object local = cache.get(member);
+        if (local != null || cache.complete) {
+            hits.incrementAndGet();
+            return CompletableFuture.completedFuture(Boolean.TRUE.equals(local));
+        }
+
+        misses.incrementAndGet();
+        long epoch = cache.epoch;
+        return kvRocksService.asyncSIsMemberChecked(cacheName, member)
+                .thenApply(present -> {
+                    if (Boolean.TRUE.equals(present) || config.getNearCache().isCacheMisses()) {
+                        cache.put(epoch, member, Boolean.TRUE.equals(present));
+                    }
+                    return Boolean.TRUE.equals(present);
+                })
+                .exceptionally(ex -> false);
+    }
+
+    /**
+     * 失效单个缓存
+     */
+    public void invalidate(String cacheName) {
+        LocalCache cache = caches.get(cacheName);
+        if (cache != null) {
+            cache.clear();
+        }
+    }
+
+    /**
+     * 失效单个缓存中的部分条目
+     */
+    public void invalidate(String cacheName, Collection<String> keys) {
+        LocalCache cache = caches.get(cacheName);
+        if (cache != null) {
+            cache.remove(keys);
+        }
+    }
+
+    public void invalidateAll() {
+        for (LocalCache cache : caches.values()) {
+            cache.clear();
+        }
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    private LocalCache cache(String cacheName) {
+        return caches.computeIfAbsent(cacheName, name -> new LocalCache(config.getNearCache().getMaxEntries()));
+    }
+
+    private void pollVersion() {
+        try {
+            String current = kvRocksService.getValue(CacheKeyConstants.SYNC_VERSION);
+            if (current != null && version != null && !current.equals(version)) {
+                // 全量先发布swap通知再更新版本，已收到通知的缓存已按通知失效
+                List<String> stale = new ArrayList<>();
+                for (String cacheName : caches.keySet()) {
+                    if (!swapNotified.contains(cacheName)) {
+                        stale.add(cacheName);
+                        invalidate(cacheName);
+                    }
+                }
+                log.info("sync:version changed {} -> {}, invalidated {} caches without swap notification",
+                        version, current, stale.size());
+            }
+            if (current != null && !current.equals(version)) {
+                swapNotified.clear();
+                version = current;
+            }
+        } catch (Exception e) {
+            log.warn("Failed to poll sync:version: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 配置为整体加载的缓存，首次访问 (及每次失效后) 在后台读取全部条目，不阻塞调用方；
+     * 超过preload-max-entries时按需读取
+     */
+    private void preloadIfConfigured(String cacheName, LocalCache cache, boolean set) {
+        CacheSyncConfig.NearCache options = config.getNearCache();
+        if (cache.preloadAttempted || !options.getPreloadCaches().contains(cacheName)) {
+            return;
+        }
+        long epoch = cache.startPreload();
+        if (epoch < 0) {
+            return;
+        }
+        CompletableFuture.runAsync(() -> {
+            long limit = Math.min(options.getPreloadMaxEntries(), options.getMaxEntries());
+            long size = kvRocksService.sizeOfCache(cacheName);
+            if (size > limit) {
+                log.info("Skip preloading {}: {} entries exceeds {}", cacheName, size, limit);
+                return;
+            }
+            Map<String, Object> entries = new HashMap<>();
+            if (set) {
+                for (String member : kvRocksService.smembersCache(cacheName)) {
+                    entries.put(member, Boolean.TRUE);
+                }
+            } else {
+                entries.putAll(kvRocksService.hgetAllCache(cacheName));
+            }
+            // 加载期间已失效时丢弃，失效会重置preloadAttempted，下次访问重新加载
+            if (cache.complete(epoch, entries)) {
+                log.info("Preloaded {} - {} entries", cacheName, entries.size());
+            }
+        }, preloader).exceptionally(ex -> {
+            log.warn("Failed to preload {}: {}", cacheName, ex.getMessage());
+            return null;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (poller != null) {
+            poller.shutdownNow();
+        }
+        if (preloader != null) {
+            preloader.shutdownNow();
+        }
+        if (subscription != null) {
+            subscription.close();
+        }
+    }
+
+    /**
+     * 单个缓存的本地LRU
+     *
+     * epoch在失效时递增，失效前发出的读取结果不再写入
+     */
+    private static class LocalCache {
+
+        private final Map<String, Object> entries;
+        volatile long epoch;
+        volatile boolean complete;
+        volatile boolean preloadAttempted;
+
+        LocalCache(int maxEntries) {
+            this.entries = new LinkedHashMap<String, Object>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Object> eldest) {
+                    // 整体加载的缓存不淘汰，否则未命中不再表示不存在
+                    return !complete && size() > maxEntries;
+                }
+            };
+        }
+
+        /**
+         * 标记开始整体加载
+         *
+         * @return 当前epoch，已有加载开始过时返回-1
+         */
+        synchronized long startPreload() {
+            if (preloadAttempted) {
+                return -1;
+            }
+            preloadAttempted = true;
+            return epoch;
+        }
+
+        synchronized Object get(String key) {
+            return entries.get(key);
+        }
+
+        synchronized void put(long expectedEpoch, String key, Object value) {
+            if (epoch == expectedEpoch && !complete) {
+                entries.put(key, value);
+            }
+        }
+
+        synchronized boolean complete(long expectedEpoch, Map<String, Object> all) {
+            if (epoch != expectedEpoch) {
+                return false;
+            }
+            entries.clear();
+            entries.putAll(all);
+            complete = true;
+            return true;
+        }
+
+        synchronized void remove(Collection<String> keys) {
+            epoch++;
+            if (complete) {
+                // 整体加载的缓存重新加载
+                clear();
+                return;
+            }
+            for (String key : keys) {
+                entries.remove(key);
+            }
+        }
+
+        synchronized void clear() {
+            epoch++;
+            entries.clear();
+            complete = false;
+            preloadAttempted = false;
+        }
+    }
+}
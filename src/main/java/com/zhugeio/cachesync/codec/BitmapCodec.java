@@ -0,0 +1,48 @@
+package com.zhugeio.cachesync.codec;
+
+import java.util.Collection;
+
+/**
+ * 整数ID集合的位图编码
+ *
+ * 与Redis SETBIT/GETBIT位序一致: 第n位位于第 n/8 个字节，字节内从高位开始
+ * 服务端可直接GETBIT，客户端也可GET整个值后用 {@link #contains} 本地判断
+ */
+public final class BitmapCodec {
+
+    private BitmapCodec() {}
+
+    /**
+     * 编码ID集合，负数ID忽略
+     */
+    public static byte[] encode(Collection<Integer> ids) {
+        byte[] bitmap = new byte[Math.max(maxId(ids), 0) / 8 + 1];
+        for (Integer id : ids) {
+            if (id != null && id >= 0) {
+                bitmap[id >>> 3] |= (byte) (0x80 >>> (id & 7));
+            }
+        }
+        return bitmap;
+    }
+
+    public static boolean contains(byte[] bitmap, long id) {
+        if (bitmap == null || id < 0) {
+            return false;
+        }
+        long index = id >>> 3;
+        if (index >= bitmap.length) {
+            return false;
+        }
+        return (bitmap[(int) index] & (0x80 >>> (int) (id & 7))) != 0;
+    }
+
+    public static int maxId(Collection<Integer> ids) {
+        int maxId = -1;
+        for (Integer id : ids) {
+            if (id != null && id > maxId) {
+                maxId = id;
+            }
+        }
+        return maxId;
+    }
+}
@@ -0,0 +1,113 @@
+package com.zhugeio.cachesync.codec;
+
+import org.apache.commons.codec.digest.MurmurHash3;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 成员集合的Bloom Filter
+ *
+ * 同步时按集合大小和误判率构建，序列化后写入 ${setName}:bloom
+ * 消费方加载后本地判断: mightContain返回false时一定不存在，无需SISMEMBER
+ *
+ * 序列化格式: [版本 1字节][哈希函数个数 1字节][位数 8字节][位数组 long[]]
+ * 哈希: MurmurHash3 x64 128位，双重哈希派生k个位置
+ */
+public final class BloomFilter {
+
+    private static final byte VERSION = 1;
+    private static final int HEADER_SIZE = 10;
+
+    private final long numBits;
+    private final int numHashes;
+    private final long[] bits;
+
+    private BloomFilter(long numBits, int numHashes, long[] bits) {
+        this.numBits = numBits;
+        this.numHashes = numHashes;
+        this.bits = bits;
+    }
+
+    /**
+     * @param expectedInsertions 预计元素个数
+     * @param fpp                期望误判率 (0, 1)
+     */
+    public static BloomFilter create(long expectedInsertions, double fpp) {
+        if (fpp <= 0 || fpp >= 1) {
+            throw new IllegalArgumentException("fpp must be in (0, 1): " + fpp);
+        }
+        long n = Math.max(1, expectedInsertions);
+        long m = Math.max(64, (long) Math.ceil(-n * Math.log(fpp) / (Math.log(2) * Math.log(2))));
+        int k = Math.max(1, Math.min(255, (int) Math.round((double) m / n * Math.log(2))));
+        long words = (m + 63) >>> 6;
+        if (words > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Bloom filter too large: " + m + " bits");
+        }
+        return new BloomFilter(words << 6, k, new long[(int) words]);
+    }
+
+    public static BloomFilter fromBytes(byte[] data) {
+        if (data == null || data.length < HEADER_SIZE || data[0] != VERSION) {
+            throw new IllegalArgumentException("Not a bloom filter payload");
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        buffer.get();
+        int numHashes = buffer.get() & 0xFF;
+        long numBits = buffer.getLong();
+        long[] bits = new long[(int) (numBits >>> 6)];
+        if (buffer.remaining() != bits.length * 8) {
+            throw new IllegalArgumentException("Corrupt bloom filter payload");
+        }
+        buffer.asLongBuffer().get(bits);
+        return new BloomFilter(numBits, numHashes, bits);
+    }
+
+    public byte[] toBytes() {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + bits.length * 8);
+        buffer.put(VERSION);
+        buffer.put((byte) numHashes);
+        buffer.putLong(numBits);
+        buffer.asLongBuffer().put(bits);
+        return buffer.array();
+    }
+
+    public void put(String member) {
+        long[] hash = hash(member);
+        long combined = hash[0];
+        for (int i = 0; i < numHashes; i++) {
+            long index = (combined & Long.MAX_VALUE) % numBits;
+            bits[(int) (index >>> 6)] |= 1L << index;
+            combined += hash[1];
+        }
+    }
+
+    /**
+     * @return false表示一定不存在，true表示可能存在
+     */
+    public boolean mightContain(String member) {
+        long[] hash = hash(member);
+        long combined = hash[0];
+        for (int i = 0; i < numHashes; i++) {
+            long index = (combined & Long.MAX_VALUE) % numBits;
+            if ((bits[(int) (index >>> 6)] & (1L << index)) == 0) {
+                return false;
+            }
+            combined += hash[1];
+        }
+        return true;
+    }
+
+    public long bitSize() {
+        return numBits;
+    }
+
+    public int hashCount() {
+        return numHashes;
+    }
+
+    private static long[] hash(String member) {
+        byte[] bytes = member.getBytes(StandardCharsets.UTF_8);
+        return MurmurHash3.hash128x64(bytes, 0, bytes.length, 0);
+    }
+}
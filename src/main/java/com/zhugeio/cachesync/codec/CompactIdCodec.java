@@ -0,0 +1,118 @@
+package com.zhugeio.cachesync.codec;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * v2紧凑格式: 以 _ 分隔的Field/Value中的整数部分写为varint
+ *
+ * 编码为连续的片段，片段间隐含 _ 分隔:
+ * 整数片段: varint(n << 1)，n为非负规范十进制整数 (无前导0，不超过2^62)
+ * 字符串片段: varint(len << 1 | 1) + UTF-8，相邻的非整数部分合并为一个片段
+ *
+ * 例如 "1001_12345_1_APP_START" 22字节 -> 2+3+1+10 = 16字节，"12345" 5字节 -> 3字节
+ */
+public final class CompactIdCodec {
+
+    private static final long MAX_INTEGER = 1L << 62;
+
+    private CompactIdCodec() {}
+
+    public static byte[] encode(String value) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(value.length());
+        String[] parts = value.split("_", -1);
+        StringBuilder text = null;
+        for (String part : parts) {
+            long number = parseCanonical(part);
+            if (number >= 0) {
+                if (text != null) {
+                    writeText(out, text.toString());
+                    text = null;
+                }
+                writeVarint(out, number << 1);
+            } else if (text == null) {
+                text = new StringBuilder(part);
+            } else {
+                text.append('_').append(part);
+            }
+        }
+        if (text != null) {
+            writeText(out, text.toString());
+        }
+        return out.toByteArray();
+    }
+
+    public static String decode(byte[] bytes) {
+        if (bytes == null) {
+            return null;
+        }
+        StringBuilder result = new StringBuilder(bytes.length + 8);
+        int[] position = {0};
+        while (position[0] < bytes.length) {
+            if (position[0] > 0) {
+                result.append('_');
+            }
+            long header = readVarint(bytes, position);
+            if ((header & 1) == 0) {
+                result.append(header >>> 1);
+            } else {
+                int length = (int) (header >>> 1);
+                result.append(new String(bytes, position[0], length, StandardCharsets.UTF_8));
+                position[0] += length;
+            }
+        }
+        return result.toString();
+    }
+
+    /**
+     * @return 规范的非负整数，否则返回-1
+     */
+    private static long parseCanonical(String part) {
+        int length = part.length();
+        if (length == 0 || length > 19 || (length > 1 && part.charAt(0) == '0')) {
+            return -1;
+        }
+        long value = 0;
+        for (int i = 0; i < length; i++) {
+            char c = part.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+            if (value >= MAX_INTEGER) {
+                return -1;
+            }
+        }
+        return value;
+    }
+
+    private static void writeText(ByteArrayOutputStream out, String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, ((long) bytes.length << 1) | 1);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarint(byte[] bytes, int[] position) {
+        long value = 0;
+        int shift = 0;
+        while (true) {
+            if (position[0] >= bytes.length || shift > 63) {
+                throw new IllegalArgumentException("Malformed compact value");
+            }
+            byte b = bytes[position[0]++];
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+            shift += 7;
+        }
+    }
+}
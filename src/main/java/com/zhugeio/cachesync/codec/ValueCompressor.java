@@ -0,0 +1,152 @@
+package com.zhugeio.cachesync.codec;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 缓存Value压缩
+ *
+ * 帧格式 (可作为字符串写入): [\0]['Z'][版本 '1'][字典ID 8位十六进制][Base64(raw deflate)]
+ * 首字符\0不会出现在JSON或普通文本开头，未压缩的Value原样读取
+ *
+ * 字典从缓存自身的Value中采样训练: 统计高频的JSON字符串片段，按 出现次数*长度 排序，
+ * 价值最高的放在字典末尾 (距离数据最近)；字典ID为字典内容的CRC32，00000000表示无字典
+ */
+public final class ValueCompressor {
+
+    private static final char MARKER = '\0';
+    private static final String PREFIX = MARKER + "Z1";
+    private static final int HEADER_LENGTH = PREFIX.length() + 8;
+    private static final String NO_DICTIONARY = "00000000";
+
+    /**
+     * JSON字符串 (含引号) 及其后的结构字符
+     */
+    private static final Pattern TOKEN = Pattern.compile("\"[^\"\\\\]{1,64}\"[:,\\]}]?");
+
+    private ValueCompressor() {}
+
+    public static boolean isCompressed(String value) {
+        return value != null && value.length() > HEADER_LENGTH && value.startsWith(PREFIX);
+    }
+
+    /**
+     * @return 压缩帧使用的字典ID，未使用字典时返回null
+     */
+    public static String dictionaryIdOf(String value) {
+        String id = value.substring(PREFIX.length(), HEADER_LENGTH);
+        return NO_DICTIONARY.equals(id) ? null : id;
+    }
+
+    public static String dictionaryId(byte[] dictionary) {
+        if (dictionary == null || dictionary.length == 0) {
+            return NO_DICTIONARY;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(dictionary, 0, dictionary.length);
+        return String.format("%08x", crc.getValue());
+    }
+
+    /**
+     * 从样本Value训练字典
+     */
+    public static byte[] train(Collection<String> samples, int maxSize) {
+        Map<String, Integer> counts = new HashMap<>();
+        for (String sample : samples) {
+            Matcher matcher = TOKEN.matcher(sample);
+            while (matcher.find()) {
+                counts.merge(matcher.group(), 1, Integer::sum);
+            }
+        }
+        List<Map.Entry<String, Integer>> tokens = new ArrayList<>(counts.entrySet());
+        tokens.removeIf(entry -> entry.getValue() < 2);
+        tokens.sort((a, b) -> Long.compare((long) b.getValue() * b.getKey().length(),
+                (long) a.getValue() * a.getKey().length()));
+
+        List<byte[]> selected = new ArrayList<>();
+        int size = 0;
+        for (Map.Entry<String, Integer> token : tokens) {
+            byte[] bytes = token.getKey().getBytes(StandardCharsets.UTF_8);
+            if (size + bytes.length > maxSize) {
+                continue;
+            }
+            selected.add(bytes);
+            size += bytes.length;
+        }
+        // 价值越高越靠近字典末尾
+        ByteArrayOutputStream out = new ByteArrayOutputStream(size);
+        for (int i = selected.size() - 1; i >= 0; i--) {
+            out.write(selected.get(i), 0, selected.get(i).length);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * @param dictionary 可为null
+     */
+    public static String compress(String value, byte[] dictionary, String dictionaryId, int level) {
+        byte[] input = value.getBytes(StandardCharsets.UTF_8);
+        Deflater deflater = new Deflater(level, true);
+        try {
+            if (dictionary != null && dictionary.length > 0) {
+                deflater.setDictionary(dictionary);
+            }
+            deflater.setInput(input);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, input.length / 4));
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buffer);
+                out.write(buffer, 0, n);
+            }
+            return PREFIX + (dictionary == null || dictionary.length == 0 ? NO_DICTIONARY : dictionaryId)
+                    + Base64.getEncoder().encodeToString(out.toByteArray());
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * 解压帧，未压缩的Value原样返回
+     *
+     * @param dictionary 帧使用的字典，帧未使用字典时可为null
+     */
+    public static String decompress(String value, byte[] dictionary) {
+        if (!isCompressed(value)) {
+            return value;
+        }
+        byte[] input = Base64.getDecoder().decode(value.substring(HEADER_LENGTH));
+        Inflater inflater = new Inflater(true);
+        try {
+            if (dictionaryIdOf(value) != null) {
+                if (dictionary == null) {
+                    throw new IllegalStateException("Missing compression dictionary " + dictionaryIdOf(value));
+                }
+                inflater.setDictionary(dictionary);
+            }
+            // raw inflate需要额外的填充字节
+            inflater.setInput(Arrays.copyOf(input, input.length + 1));
+            ByteArrayOutputStream out = new ByteArrayOutputStream(input.length * 4);
+            byte[] buffer = new byte[8192];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buffer);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalStateException("Truncated compressed value");
+                }
+                out.write(buffer, 0, n);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupt compressed value", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
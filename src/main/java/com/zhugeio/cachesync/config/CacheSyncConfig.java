@@ -4,6 +4,13 @@ import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 /**
  * 缓存同步配置
  */
@@ -36,4 +43,679 @@ public class CacheSyncConfig {
      * pipeline批次大小
      */
     private int pipelineBatchSize = 500;
+
+    /**
+     * 是否两阶段提交: 所有缓存写入临时Key后统一RENAME/切换指针，最后更新sync:version
+     */
+    private boolean twoPhaseCommit = false;
+
+    /**
+     * Pipeline批次重试配置
+     */
+    private Retry retry = new Retry();
+
+    @Data
+    public static class Retry {
+
+        /**
+         * 单批次最多重试次数，0不重试
+         */
+        private int maxAttempts = 3;
+
+        /**
+         * 首次重试等待时间(毫秒)，之后每次翻倍
+         */
+        private long initialBackoffMs = 200;
+
+        private long maxBackoffMs = 5000;
+
+        /**
+         * 单个Key写入的重试总次数上限，超出后放弃并回收临时Key
+         */
+        private int maxTotalRetries = 20;
+    }
+
+    /**
+     * Pipeline批次自适应配置
+     */
+    private AdaptiveBatch adaptiveBatch = new AdaptiveBatch();
+
+    @Data
+    public static class AdaptiveBatch {
+
+        /**
+         * 是否根据回复延迟自动调节批次大小和并发窗口，关闭时固定使用pipeline-batch-size
+         */
+        private boolean enabled = false;
+
+        private int minBatchSize = 100;
+
+        private int maxBatchSize = 5000;
+
+        /**
+         * 加性增加的步长
+         */
+        private int increaseStep = 100;
+
+        /**
+         * 延迟超标时的乘性减小系数
+         */
+        private double decreaseFactor = 0.5;
+
+        /**
+         * 单批次回复延迟目标(毫秒)
+         */
+        private long targetLatencyMs = 50;
+
+        /**
+         * 最大在途批次数
+         */
+        private int maxWindow = 8;
+    }
+
+    /**
+     * 写入限速配置
+     */
+    private RateLimit rateLimit = new RateLimit();
+
+    @Data
+    public static class RateLimit {
+
+        /**
+         * 是否开启写入限速
+         */
+        private boolean enabled = false;
+
+        /**
+         * 全局每秒写入命令数，0不限制
+         */
+        private long opsPerSecond = 0;
+
+        /**
+         * 全局每秒写入字节数，0不限制
+         */
+        private long bytesPerSecond = 0;
+
+        /**
+         * 单节点每秒写入命令数，0不限制
+         */
+        private long nodeOpsPerSecond = 0;
+
+        /**
+         * 单节点每秒写入字节数，0不限制
+         */
+        private long nodeBytesPerSecond = 0;
+
+        /**
+         * 缓存优先级: cacheName -> HIGH/NORMAL/LOW
+         */
+        private Map<String, String> priorities = new HashMap<>();
+
+        /**
+         * 未配置的缓存使用的优先级
+         */
+        private String defaultPriority = "NORMAL";
+
+        /**
+         * 优先级权重，可使用的速率比例: 权重为w的缓存单独写入时最多达到上限的w倍，
+         * 默认HIGH/NORMAL为1.0 (未配置优先级的缓存可用满上限)，LOW只能使用20%
+         */
+        private Map<String, Double> priorityWeights = defaultPriorityWeights();
+
+        /**
+         * 是否根据探测延迟自动降速
+         */
+        private boolean probeEnabled = false;
+
+        private long probeIntervalMs = 1000;
+
+        /**
+         * 探测延迟超过该值(毫秒)时速率减半
+         */
+        private long probeLatencyThresholdMs = 20;
+
+        /**
+         * 探测使用的Hash Key，为空时使用PING
+         */
+        private String probeKey;
+
+        private String probeField = "";
+
+        private static Map<String, Double> defaultPriorityWeights() {
+            Map<String, Double> weights = new HashMap<>();
+            weights.put("HIGH", 1.0);
+            weights.put("NORMAL", 1.0);
+            weights.put("LOW", 0.2);
+            return weights;
+        }
+    }
+
+    /**
+     * 小缓存合并写入配置
+     */
+    private SmallCacheLane smallCacheLane = new SmallCacheLane();
+
+    @Data
+    public static class SmallCacheLane {
+
+        /**
+         * 是否将小缓存合并到同一批Pipeline写入和生效
+         */
+        private boolean enabled = false;
+
+        /**
+         * 条目数不超过该值的缓存走合并写入
+         */
+        private int maxEntries = 5000;
+    }
+
+    /**
+     * 整数集合位图编码配置
+     */
+    private Bitmap bitmap = new Bitmap();
+
+    @Data
+    public static class Bitmap {
+
+        /**
+         * 写入位图的整数集合
+         */
+        private List<String> caches = new ArrayList<>();
+
+        /**
+         * 是否只写位图不再写Set，开启后已有的Set (含副本) 在下次全量时删除
+         */
+        private boolean replaceSet = false;
+
+        /**
+         * 最大ID，超出时不写位图 (避免超大稀疏位图)
+         */
+        private int maxId = 1 << 28;
+    }
+
+    /**
+     * 成员集合Bloom Filter配置
+     */
+    private Bloom bloom = new Bloom();
+
+    @Data
+    public static class Bloom {
+
+        /**
+         * 是否在同步时发布Bloom Filter (${setName}:bloom)
+         */
+        private boolean enabled = false;
+
+        /**
+         * 发布Bloom Filter的集合及其误判率
+         */
+        private Map<String, Double> caches = defaultBloomCaches();
+
+        private static Map<String, Double> defaultBloomCaches() {
+            Map<String, Double> caches = new HashMap<>();
+            caches.put("adFrequencySet", 0.01);
+            caches.put("eventIdPlatform", 0.01);
+            caches.put("eventAttrdPlatform", 0.01);
+            return caches;
+        }
+    }
+
+    /**
+     * 基于水位的增量同步配置
+     */
+    private Incremental incremental = new Incremental();
+
+    @Data
+    public static class Incremental {
+
+        /**
+         * 是否启用增量同步，关闭时每次全量
+         */
+        private boolean enabled = false;
+
+        /**
+         * 全量对账间隔(小时)，超过该间隔或没有水位时执行全量
+         */
+        private long fullReconcileHours = 24;
+
+        /**
+         * 每次查询的行数
+         */
+        private int pageSize = 10000;
+
+        /**
+         * ads_frequency_first的水位列，需单调不减 (如自增主键或创建时间，可以不唯一)
+         */
+        private String adFrequencyColumn = "id";
+
+        /**
+         * 元数据表 -> 水位列 (更新时间或自增主键)，未配置的表每次全量
+         */
+        private Map<String, String> metadataColumns = defaultMetadataColumns();
+
+        private static Map<String, String> defaultMetadataColumns() {
+            Map<String, String> columns = new LinkedHashMap<>();
+            columns.put("event", "updated_at");
+            columns.put("event_attr", "updated_at");
+            columns.put("user_prop_meta", "updated_at");
+            columns.put("device_prop", "updated_at");
+            return columns;
+        }
+    }
+
+    /**
+     * 常驻模式配置 (--daemon 或启用CDC时)
+     */
+    private Daemon daemon = new Daemon();
+
+    @Data
+    public static class Daemon {
+
+        private boolean enabled = false;
+
+        /**
+         * 全量同步间隔(分钟)，作为CDC的正确性兜底
+         */
+        private long fullSyncIntervalMinutes = 60;
+
+        /**
+         * 是否在 server.port 上开启管理接口 (/refresh、/metrics)
+         */
+        private boolean httpEnabled = true;
+    }
+
+    /**
+     * CDC配置: 行变更实时写入受影响的缓存
+     */
+    private Cdc cdc = new Cdc();
+
+    @Data
+    public static class Cdc {
+
+        private boolean enabled = false;
+
+        /**
+         * 变更来源: binlog / memory
+         */
+        private String source = "binlog";
+
+        /**
+         * memory来源回放的JSON Lines文件，为空时只接收程序投递的变更
+         */
+        private String replayFile = "";
+
+        /**
+         * 监听的表
+         */
+        private List<String> tables = new ArrayList<>(Arrays.asList(
+                "company_app", "event", "event_attr", "user_prop_meta", "device_prop"));
+
+        /**
+         * 攒批写入的变更数，达到后立即写入
+         */
+        private int batchSize = 500;
+
+        /**
+         * 攒批最长等待时间(毫秒)
+         */
+        private long flushIntervalMs = 200;
+
+        /**
+         * 未写入的变更超过batch-size的倍数时阻塞读取 (全量同步暂停写入期间同样生效)
+         */
+        private int maxBufferedBatches = 10;
+
+        // binlog连接
+        private String host = "127.0.0.1";
+
+        private int port = 3306;
+
+        private String username;
+
+        private String password;
+
+        /**
+         * 库名，为空时使用数据源当前库
+         */
+        private String database = "";
+
+        /**
+         * 作为从库的server-id，需在集群内唯一
+         */
+        private long serverId = 65431;
+
+        private long connectTimeoutSeconds = 10;
+    }
+
+    /**
+     * 运行历史配置: 每次全量的各缓存统计追加到 sync:history，与滚动基线比较发现性能回退
+     */
+    private History history = new History();
+
+    @Data
+    public static class History {
+
+        private boolean enabled = true;
+
+        /**
+         * 保留的运行记录数
+         */
+        private int maxRuns = 100;
+
+        /**
+         * 基线取最近多少次运行 (各指标取中位数)
+         */
+        private int baselineRuns = 10;
+
+        /**
+         * 基线至少需要的样本数，不足时不判断
+         */
+        private int minSamples = 3;
+
+        /**
+         * 耗时超过基线的倍数视为回退
+         */
+        private double regressionRatio = 1.5;
+
+        /**
+         * 超出基线的绝对耗时(ms)低于该值时忽略，避免小缓存抖动误报
+         */
+        private long minRegressionMs = 2000;
+
+        /**
+         * 严格模式: 单次运行发现回退时以非0状态码(2)退出
+         */
+        private boolean strict = false;
+    }
+
+    /**
+     * JFR自定义事件配置: 运行时支持JFR且开始录制时才有开销
+     */
+    private Jfr jfr = new Jfr();
+
+    @Data
+    public static class Jfr {
+
+        private boolean enabled = true;
+
+        /**
+         * Pipeline批次回复延迟达到该值(ms)时事件标记为慢批次
+         */
+        private long slowBatchMs = 1000;
+    }
+
+    /**
+     * 同步指标配置: 常驻模式由管理接口 /metrics 抓取，单次运行结束后写入文件或推送
+     */
+    private Metrics metrics = new Metrics();
+
+    @Data
+    public static class Metrics {
+
+        private boolean enabled = true;
+
+        /**
+         * 单次运行结束后写入的文件 (Prometheus文本格式，node_exporter textfile等采集)，为空不写
+         */
+        private String file = "";
+
+        /**
+         * 单次运行结束后PUT的地址，如 http://pushgateway:9091/metrics/job/cache-sync，为空不推送
+         */
+        private String pushUrl = "";
+    }
+
+    /**
+     * v2紧凑格式配置: 整数部分写为varint，写入 ${cacheName}:v2 与v1并存
+     */
+    private Compact compact = new Compact();
+
+    @Data
+    public static class Compact {
+
+        private boolean enabled = false;
+
+        private List<String> caches = new ArrayList<>(Arrays.asList(
+                "appIdEventAttrIdMap", "appIdPropIdMap", "appIdEventIdMap"));
+    }
+
+    /**
+     * 大Value压缩配置
+     */
+    private Compression compression = new Compression();
+
+    @Data
+    public static class Compression {
+
+        private boolean enabled = false;
+
+        private List<String> caches = new ArrayList<>(Arrays.asList(
+                "virtualEventMap", "virtualEventPropMap", "virtualUserPropMap", "adsLinkEventMap"));
+
+        /**
+         * 小于该长度的Value不压缩
+         */
+        private int minLength = 1024;
+
+        /**
+         * Deflate压缩级别 1-9
+         */
+        private int level = 6;
+
+        /**
+         * 字典上限(字节)，Deflate窗口为32KB
+         */
+        private int dictionarySize = 16384;
+
+        /**
+         * 训练字典的样本Value数
+         */
+        private int sampleSize = 2000;
+
+        /**
+         * 重新训练字典的间隔(小时)
+         */
+        private long retrainHours = 24;
+
+        /**
+         * 被替换的旧字典保留天数
+         */
+        private long dictionaryRetainDays = 7;
+    }
+
+    /**
+     * 热点缓存副本配置
+     */
+    private Replica replica = new Replica();
+
+    @Data
+    public static class Replica {
+
+        /**
+         * 缓存名 -> 副本总数 (含主缓存)，1表示不复制
+         */
+        private Map<String, Integer> caches = new HashMap<>();
+    }
+
+    /**
+     * 快照文件配置: 全量同步时额外写出排序的只读文件，供同机消费方内存映射加载
+     */
+    private Snapshot snapshot = new Snapshot();
+
+    @Data
+    public static class Snapshot {
+
+        private boolean enabled = false;
+
+        private String directory = "snapshots";
+
+        /**
+         * 写出快照的缓存，为空时全部写出
+         */
+        private List<String> caches = new ArrayList<>();
+    }
+
+    /**
+     * 变更通知配置: 缓存替换或增量写入后发布到 sync:changes
+     */
+    private Notify notify = new Notify();
+
+    @Data
+    public static class Notify {
+
+        private boolean enabled = false;
+
+        /**
+         * 增量通知携带变化Field的上限，超过时不携带 (消费方整体失效该缓存)
+         */
+        private int maxFields = 1000;
+    }
+
+    /**
+     * 消费方本地缓存 (NearCacheClient) 配置
+     */
+    private NearCache nearCache = new NearCache();
+
+    @Data
+    public static class NearCache {
+
+        private boolean enabled = false;
+
+        /**
+         * 每个缓存的本地条目上限，超出时淘汰最久未访问的条目
+         */
+        private int maxEntries = 100000;
+
+        /**
+         * 是否缓存不存在的结果
+         */
+        private boolean cacheMisses = true;
+
+        /**
+         * 轮询 sync:version 的间隔(毫秒)，版本变化时清空本地缓存
+         */
+        private long versionPollMs = 1000;
+
+        /**
+         * 首次访问时在后台整体加载 (HGETALL/SMEMBERS) 的小缓存，加载完成前按需读取
+         */
+        private List<String> preloadCaches = new ArrayList<>();
+
+        /**
+         * 整体加载的条目上限，超出时退回按需读取
+         */
+        private int preloadMaxEntries = 10000;
+
+        /**
+         * 是否订阅 sync:changes，按通知只失效变化的缓存或条目
+         */
+        private boolean subscribe = true;
+    }
+
+    /**
+     * 增量写入配置
+     */
+    private Delta delta = new Delta();
+
+    @Data
+    public static class Delta {
+
+        /**
+         * 是否通过Lua脚本在服务端应用增量，脚本不可用时自动退回普通命令
+         */
+        private boolean useScript = true;
+
+        /**
+         * 每个脚本调用打包的操作数
+         */
+        private int chunkSize = 1000;
+    }
+
+    /**
+     * 按app拆分缓存配置
+     */
+    private Partition partition = new Partition();
+
+    @Data
+    public static class Partition {
+
+        /**
+         * 是否额外写入按app拆分的缓存 (appIdPropIdMap/appIdEventIdMap/appIdEventAttrIdMap/appIdDevicePropIdMap)
+         */
+        private boolean enabled = false;
+
+        /**
+         * 只写入app分区，不再整体替换全局Hash (已有的全局Hash删除，同时不写副本和v2紧凑格式)
+         * 每次全量只写入数据变化的app；开启前读取方需改为读取 ${cacheName}:{${appId}}
+         */
+        private boolean skipGlobal = false;
+    }
+
+    /**
+     * 代际模式配置
+     */
+    private Generation generation = new Generation();
+
+    @Data
+    public static class Generation {
+
+        /**
+         * 是否开启代际模式: 数据写入{cacheName}:gen:${n}，切换指针生效
+         */
+        private boolean enabled = false;
+
+        /**
+         * 保留的代际数量 (含当前代际)，用于回滚
+         */
+        private int retain = 2;
+
+        /**
+         * 读取时指针的本地缓存时间(毫秒)
+         */
+        private long pointerCacheMs = 1000;
+    }
+
+    /**
+     * 大Key回收配置
+     */
+    private Reclaim reclaim = new Reclaim();
+
+    @Data
+    public static class Reclaim {
+
+        /**
+         * 是否分批回收 (HSCAN+HDEL/SSCAN+SREM)，关闭时使用UNLINK
+         */
+        private boolean chunked = true;
+
+        /**
+         * 同步开始时是否扫描遗留的临时Key和未生效的代际
+         */
+        private boolean scanOrphans = true;
+
+        /**
+         * 临时Key超过该时间(分钟)未完成视为遗留
+         */
+        private int orphanAgeMinutes = 60;
+
+        /**
+         * 每批删除的字段/成员数
+         */
+        private int chunkSize = 500;
+
+        /**
+         * 批次间隔(毫秒)，限制回收速度
+         */
+        private long chunkIntervalMs = 20;
+
+        /**
+         * SCAN每次返回的Key数量
+         */
+        private int scanCount = 1000;
+
+        /**
+         * 退出时等待异步回收的时间(秒)，未完成的回收记录在sync:reclaim:pending，下次运行继续
+         */
+        private int awaitSeconds = 60;
+    }
 }
@@ -236,6 +236,26 @@ public final class CacheKeyConstants {
      */
     public static final String VIRTUAL_USER_PROP_MAP = "virtualUserPropMap";
 
+    // ========== 位图编码 ==========
+
+    /**
+     * 整数ID集合的位图版本
+     * String Key: ${setName}:bitmap
+     * Value: 位图，第${id}位为1表示包含该ID (与SETBIT/GETBIT位序一致)
+     */
+    public static String bitmapName(String setName) {
+        return setName + ":bitmap";
+    }
+
+    /**
+     * 成员集合的Bloom Filter
+     * String Key: ${setName}:bloom
+     * Value: BloomFilter序列化字节
+     */
+    public static String bloomName(String setName) {
+        return setName + ":bloom";
+    }
+
     // ========== 同步元数据 ==========
     
     /**
@@ -253,6 +273,180 @@ public final class CacheKeyConstants {
      */
     public static final String SYNC_STATUS = "sync:status";
 
+    /**
+     * 已提交回收、尚未完成的Key，下次运行开始时继续回收
+     * Set Key: sync:reclaim:pending
+     */
+    public static final String RECLAIM_PENDING = "sync:reclaim:pending";
+
+    /**
+     * 全量同步运行历史，最近的在前，按history.max-runs截断
+     * List Key: sync:history
+     * Element: RunRecord JSON
+     */
+    public static final String SYNC_HISTORY = "sync:history";
+
+    /**
+     * 增量同步水位
+     * Hash Key: sync:watermark
+     * Field: ${name} -> 已同步的最大水位值, ${name}:fullAt -> 最近一次全量对账时间戳(毫秒)
+     */
+    public static final String SYNC_WATERMARK = "sync:watermark";
+
+    /**
+     * CDC已写入的变更来源位点
+     * String Key: sync:cdc:position
+     */
+    public static final String CDC_POSITION = "sync:cdc:position";
+
+    /**
+     * 缓存变更通知频道
+     * Pub/Sub Channel: sync:changes
+     * Message: ChangeNotification JSON
+     */
+    public static final String SYNC_CHANGES_CHANNEL = "sync:changes";
+
+    /**
+     * Value压缩字典
+     * String Key: {${cacheName}}:dict:${id}，Value为Base64编码的字典
+     */
+    public static String compressionDictionaryKey(String cacheName, String id) {
+        return "{" + cacheName + "}:dict:" + id;
+    }
+
+    /**
+     * 当前压缩字典
+     * String Key: {${cacheName}}:dict:current，Value: ${id},${训练时间戳}
+     */
+    public static String compressionDictionaryPointerKey(String cacheName) {
+        return "{" + cacheName + "}:dict:current";
+    }
+
+    /**
+     * 热点缓存副本的缓存名，使用独立Hash Tag分布到不同节点
+     * 例如: appKeyAppIdMap -> appKeyAppIdMap:r1 (Key: {appKeyAppIdMap:r1})
+     */
+    public static String replicaName(String cacheName, int index) {
+        return cacheName + ":r" + index;
+    }
+
+    /**
+     * 已写入生效的副本 (含副本的位图、Bloom Filter)，读取时只选择已写入的副本，否则读取主缓存
+     * Set Key: sync:replicas
+     */
+    public static final String SYNC_REPLICAS = "sync:replicas";
+
+    /**
+     * 缓存数据格式标记
+     * Hash Key: sync:schema
+     * Field: ${cacheName} -> 已写入的最高格式版本 (2表示同时存在v2紧凑格式 ${cacheName}:v2)
+     */
+    public static final String SYNC_SCHEMA = "sync:schema";
+
+    public static final String SCHEMA_V2 = "2";
+
+    /**
+     * v2紧凑格式的缓存名，与v1并存
+     * 例如: appIdEventAttrIdMap -> appIdEventAttrIdMap:v2 (Key: {appIdEventAttrIdMap:v2})
+     */
+    public static String compactName(String cacheName) {
+        return cacheName + ":v2";
+    }
+
+    /**
+     * 副本或v2缓存名对应的主缓存名，其他原样返回
+     */
+    public static String primaryNameOf(String cacheName) {
+        if (cacheName.endsWith(":v2")) {
+            return cacheName.substring(0, cacheName.length() - 3);
+        }
+        int idx = cacheName.lastIndexOf(":r");
+        if (idx > 0 && idx + 2 < cacheName.length()) {
+            for (int i = idx + 2; i < cacheName.length(); i++) {
+                if (!Character.isDigit(cacheName.charAt(i))) {
+                    return cacheName;
+                }
+            }
+            return cacheName.substring(0, idx);
+        }
+        return cacheName;
+    }
+
+    /**
+     * 从实际Key解析缓存名
+     * 例如: {appIdEventIdMap}:temp:123 / appIdEventIdMap:{1}:temp:123 -> appIdEventIdMap
+     */
+    public static String cacheNameOf(String key) {
+        String name = key.startsWith("{") ? key.substring(1) : key;
+        int end = name.length();
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c == ':' || c == '}') {
+                end = i;
+                break;
+            }
+        }
+        return name.substring(0, end);
+    }
+
+    // ========== 代际模式 ==========
+
+    /**
+     * 代际数据Key
+     * Key: {${cacheName}}:gen:${n}
+     */
+    public static String generationKey(String cacheName, long generation) {
+        return "{" + cacheName + "}:gen:" + generation;
+    }
+
+    /**
+     * 当前代际指针
+     * String Key: {${cacheName}}:gen:current
+     * Value: ${n}，读取方先GET指针再访问 {${cacheName}}:gen:${n}
+     */
+    public static String generationPointerKey(String cacheName) {
+        return "{" + cacheName + "}:gen:current";
+    }
+
+    /**
+     * 代际编号序列
+     * String Key: {${cacheName}}:gen:seq
+     */
+    public static String generationSeqKey(String cacheName) {
+        return "{" + cacheName + "}:gen:seq";
+    }
+
+    /**
+     * 保留的代际列表，新代际在表头
+     * List Key: {${cacheName}}:gen:list
+     */
+    public static String generationListKey(String cacheName) {
+        return "{" + cacheName + "}:gen:list";
+    }
+
+    // ========== 按app拆分的缓存 ==========
+
+    /**
+     * 按app拆分的缓存Key
+     * Hash Key: ${cacheName}:{${appId}}
+     * Field/Value: 与全局缓存一致，只包含该appId的字段
+     *
+     * 使用{appId}作为Hash Tag，不同app分散到不同slot
+     */
+    public static String appPartitionKey(String cacheName, String appId) {
+        return cacheName + ":{" + appId + "}";
+    }
+
+    /**
+     * 按app拆分缓存的摘要
+     * Hash Key: ${cacheName}:partition:digest
+     * Field: ${appId}
+     * Value: 该app所有字段的MD5，用于判断app数据是否变化
+     */
+    public static String appPartitionDigestKey(String cacheName) {
+        return cacheName + ":partition:digest";
+    }
+
     // ==========================================================
     // DW模块 - Hash类型
     // ==========================================================
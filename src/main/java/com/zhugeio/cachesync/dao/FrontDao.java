@@ -1,6 +1,7 @@
 package com.zhugeio.cachesync.dao;
 
 import com.zhugeio.cachesync.entity.AdsLinkEvent;
+import com.zhugeio.cachesync.metrics.SyncEvents;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.JdbcTemplate;
@@ -25,6 +26,9 @@ public class FrontDao {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private SyncEvents syncEvents;
+
     // ==========================================================
     // 批量查询结果缓存（同一次sync周期内复用）
     // ==========================================================
@@ -45,6 +49,45 @@ public class FrontDao {
         log.info("Batch query cache cleared");
     }
 
+    // ==========================================================
+    // 查询入口: 记录JFR扫描事件 (SQL、行数、耗时)
+    // ==========================================================
+
+    private void scan(String sql, RowCallbackHandler handler, Object... args) {
+        Object event = syncEvents.beginScan(sql);
+        long[] rows = {0};
+        try {
+            jdbcTemplate.query(sql, (RowCallbackHandler) rs -> {
+                rows[0]++;
+                handler.processRow(rs);
+            }, args);
+        } finally {
+            syncEvents.endScan(event, rows[0]);
+        }
+    }
+
+    private <T> List<T> scanList(String sql, Class<T> elementType, Object... args) {
+        Object event = syncEvents.beginScan(sql);
+        List<T> rows = Collections.emptyList();
+        try {
+            rows = jdbcTemplate.queryForList(sql, elementType, args);
+            return rows;
+        } finally {
+            syncEvents.endScan(event, rows.size());
+        }
+    }
+
+    private List<Map<String, Object>> scanRows(String sql, Object... args) {
+        Object event = syncEvents.beginScan(sql);
+        List<Map<String, Object>> rows = Collections.emptyList();
+        try {
+            rows = jdbcTemplate.queryForList(sql, args);
+            return rows;
+        } finally {
+            syncEvents.endScan(event, rows.size());
+        }
+    }
+
     // ==========================================================
     // company_app 表批量查询 (原4次 -> 1次)
     // ==========================================================
@@ -69,11 +112,9 @@ public class FrontDao {
             CompanyAppData data = new CompanyAppData();
             String sql = "SELECT id, app_key, company_id, is_delete, stop, auto_event FROM company_app";
             
-            Set<Integer> transferIds = new HashSet<>(
-                jdbcTemplate.queryForList("SELECT id FROM tmp_transfer WHERE status = 2", Integer.class)
-            );
+            Set<Integer> transferIds = getTransferredAppIds();
             
-            jdbcTemplate.query(sql, (RowCallbackHandler) rs -> {
+            scan(sql, rs -> {
                 Integer id = rs.getInt("id");
                 String appKey = rs.getString("app_key");
                 Integer companyId = rs.getInt("company_id");
@@ -101,6 +142,15 @@ public class FrontDao {
         }
     }
 
+    /**
+     * 已迁移的app，不写入appKeyAppIdMap
+     */
+    public Set<Integer> getTransferredAppIds() {
+        return new HashSet<>(
+            scanList("SELECT id FROM tmp_transfer WHERE status = 2", Integer.class)
+        );
+    }
+
     public Map<String, Integer> getAppKeyIdMaps() {
         return getCompanyAppData().appKeyAppIdMap;
     }
@@ -138,7 +188,7 @@ public class FrontDao {
             UserPropMetaData data = new UserPropMetaData();
             String sql = "SELECT id, app_id, owner, name, is_delete, attr_type, sql_json, table_fields FROM user_prop_meta";
             
-            jdbcTemplate.query(sql, (RowCallbackHandler) rs -> {
+            scan(sql, rs -> {
                 Integer id = rs.getInt("id");
                 Integer appId = rs.getInt("app_id");
                 String owner = rs.getString("owner");
@@ -230,7 +280,7 @@ public class FrontDao {
             EventData data = new EventData();
             String sql = "SELECT id, app_id, owner, event_name, is_delete, is_stop FROM event";
             
-            jdbcTemplate.query(sql, (RowCallbackHandler) rs -> {
+            scan(sql, rs -> {
                 Integer id = rs.getInt("id");
                 Integer appId = rs.getInt("app_id");
                 String owner = rs.getString("owner");
@@ -295,7 +345,7 @@ public class FrontDao {
             String sql = "SELECT event_id, attr_id, attr_name, owner, is_delete, is_stop, " +
                          "attr_type, alias_name, column_name, sql_json FROM event_attr";
             
-            jdbcTemplate.query(sql, (RowCallbackHandler) rs -> {
+            scan(sql, rs -> {
                 Integer eventId = rs.getInt("event_id");
                 Long attrIdLong = rs.getLong("attr_id");
                 Integer attrId = attrIdLong.intValue();
@@ -384,6 +434,99 @@ public class FrontDao {
         return result;
     }
 
+    // ==========================================================
+    // 增量查询 (按水位列读取变化的行)
+    // ==========================================================
+
+    /**
+     * 水位列当前最大值，表为空时返回null
+     */
+    public String getMaxWatermark(String table, String column) {
+        return jdbcTemplate.queryForObject(
+                "SELECT MAX(" + checkColumn(column) + ") FROM " + checkColumn(table), String.class);
+    }
+
+    /**
+     * 增量分页返回行中的水位列别名，值为字符串形式 (与sync:watermark中保存的一致)
+     */
+    public static final String WATERMARK_ALIAS = "sync_wm";
+
+    /**
+     * 水位列不小于watermark的行 (包含边界值，重复写入是幂等的)，按 (水位列, 唯一键) 升序分页
+     *
+     * @param keyColumns 表的唯一键，水位相同的行按唯一键继续翻页
+     * @param after      上一页最后一行的 [水位, 唯一键...]，第一页为null
+     */
+    public List<Map<String, Object>> getRowsSince(String table, String columns, String column, String watermark,
+                                                  List<String> keyColumns, Object[] after, int limit) {
+        String wm = checkColumn(column);
+        StringBuilder order = new StringBuilder(wm);
+        StringBuilder placeholders = new StringBuilder("?");
+        for (String key : keyColumns) {
+            order.append(", ").append(checkColumn(key));
+            placeholders.append(", ?");
+        }
+        String sql = "SELECT " + columns + ", CAST(" + wm + " AS CHAR) AS " + WATERMARK_ALIAS + " FROM " + checkColumn(table) +
+                     (after == null ? " WHERE " + wm + " >= ?" : " WHERE (" + order + ") > (" + placeholders + ")") +
+                     " ORDER BY " + order + " LIMIT ?";
+        Object[] args;
+        if (after == null) {
+            args = new Object[]{watermark, limit};
+        } else {
+            args = Arrays.copyOf(after, after.length + 1);
+            args[after.length] = limit;
+        }
+        return scanRows(sql, args);
+    }
+
+    /**
+     * 单个app的行，用于定向刷新
+     */
+    public List<Map<String, Object>> getRowsForApp(String table, String columns, int appId) {
+        String where;
+        switch (table) {
+            case "company_app":
+                where = "id = ?";
+                break;
+            case "event_attr":
+                where = "event_id IN (SELECT id FROM event WHERE app_id = ?)";
+                break;
+            default:
+                where = "app_id = ?";
+                break;
+        }
+        return scanRows("SELECT " + columns + " FROM " + checkColumn(table) + " WHERE " + where, appId);
+    }
+
+    /**
+     * 按ID查询事件信息
+     */
+    public Map<Integer, EventInfo> getEventInfos(Collection<Integer> eventIds) {
+        Map<Integer, EventInfo> result = new HashMap<>();
+        if (eventIds.isEmpty()) {
+            return result;
+        }
+        String placeholders = String.join(",", Collections.nCopies(eventIds.size(), "?"));
+        String sql = "SELECT id, app_id, owner, event_name, is_delete FROM event WHERE id IN (" + placeholders + ")";
+        scan(sql, rs -> {
+            result.put(rs.getInt("id"), new EventInfo(rs.getInt("app_id"), rs.getString("event_name"),
+                    rs.getString("owner"), rs.getInt("is_delete") == 0));
+        }, eventIds.toArray());
+        return result;
+    }
+
+    /**
+     * 按ID过滤出有效(未删除、未停用)的app，直接查库不使用批量缓存
+     */
+    public Set<Integer> filterValidAppIds(Collection<Integer> appIds) {
+        if (appIds.isEmpty()) {
+            return new HashSet<>();
+        }
+        String placeholders = String.join(",", Collections.nCopies(appIds.size(), "?"));
+        String sql = "SELECT id FROM company_app WHERE is_delete = 0 AND stop = 0 AND id IN (" + placeholders + ")";
+        return new HashSet<>(scanList(sql, Integer.class, appIds.toArray()));
+    }
+
     // ==========================================================
     // 以下方法无法合并，保持独立查询
     // ==========================================================
@@ -391,7 +534,7 @@ public class FrontDao {
     public Map<String, Integer> getSdkPlatformHasDataMap() {
         String sql = "SELECT main_id, sdk_platform, has_data FROM app";
         Map<String, Integer> result = new HashMap<>();
-        jdbcTemplate.query(sql, (RowCallbackHandler) rs -> {
+        scan(sql, rs -> {
             result.put(rs.getInt("main_id") + "_" + rs.getInt("sdk_platform"), rs.getInt("has_data"));
         });
         return result;
@@ -400,7 +543,7 @@ public class FrontDao {
     public Map<String, Integer> getDevicePropIds() {
         String sql = "SELECT app_id, owner, name, id FROM device_prop";
         Map<String, Integer> result = new HashMap<>();
-        jdbcTemplate.query(sql, (RowCallbackHandler) rs -> {
+        scan(sql, rs -> {
             String name = rs.getString("name");
             if (name != null) {
                 result.put(rs.getInt("app_id") + "_" + rs.getString("owner") + "_" + name, rs.getInt("id"));
@@ -413,11 +556,11 @@ public class FrontDao {
         String sql = "SELECT a.id FROM company_app a, event b " +
                      "WHERE a.is_delete = 0 AND b.is_delete = 0 AND b.owner = 'zg' AND b.is_stop = 0 AND a.id = b.app_id " +
                      "GROUP BY a.id HAVING COUNT(*) >= MAX(a.event_sum)";
-        return new HashSet<>(jdbcTemplate.queryForList(sql, Integer.class));
+        return new HashSet<>(scanList(sql, Integer.class));
     }
 
     public Set<Integer> getUploadDatas() {
-        return new HashSet<>(jdbcTemplate.queryForList("SELECT app_id FROM app_data", Integer.class));
+        return new HashSet<>(scanList("SELECT app_id FROM app_data", Integer.class));
     }
 
     public Set<Integer> getForbiddenCreateEventAttrEventIds() {
@@ -425,13 +568,13 @@ public class FrontDao {
                      "WHERE a.is_delete = 0 AND b.is_delete = 0 AND b.is_stop = 0 " +
                      "AND a.id = b.app_id AND b.id = c.event_id AND c.is_stop = 0 " +
                      "GROUP BY b.id HAVING COUNT(*) >= MAX(a.attr_sum)";
-        return new HashSet<>(jdbcTemplate.queryForList(sql, Integer.class));
+        return new HashSet<>(scanList(sql, Integer.class));
     }
 
     public Set<String> getEventPlatforms() {
         String sql = "SELECT event_id, platform FROM event_platform";
         Set<String> result = new HashSet<>();
-        jdbcTemplate.query(sql, (RowCallbackHandler) rs -> {
+        scan(sql, rs -> {
             result.add(rs.getInt("event_id") + "_" + rs.getInt("platform"));
         });
         return result;
@@ -441,7 +584,7 @@ public class FrontDao {
         // 注意：字段名可能是event_attr_id而不是attr_id，根据实际表结构调整
         String sql = "SELECT event_attr_id, platform FROM event_attr_platform";
         Set<String> result = new HashSet<>();
-        jdbcTemplate.query(sql, (RowCallbackHandler) rs -> {
+        scan(sql, rs -> {
             result.add(rs.getLong("event_attr_id") + "_" + rs.getInt("platform"));
         });
         return result;
@@ -450,7 +593,7 @@ public class FrontDao {
     public Set<String> getDevicePropPlatforms() {
         String sql = "SELECT prop_id, platform FROM device_prop_platform";
         Set<String> result = new HashSet<>();
-        jdbcTemplate.query(sql, (RowCallbackHandler) rs -> {
+        scan(sql, rs -> {
             result.add(rs.getInt("prop_id") + "_" + rs.getInt("platform"));
         });
         return result;
@@ -465,7 +608,7 @@ public class FrontDao {
                 "JOIN advertising_app b ON a.app_key = b.app_key " +
                 "WHERE a.is_delete = 0 AND b.is_delete = 0 AND b.stop = 0";
         Map<String, Integer> result = new HashMap<>();
-        jdbcTemplate.query(sql, (RowCallbackHandler) rs -> {
+        scan(sql, rs -> {
             String appKey = rs.getString("app_key");
             if (appKey != null) {
                 result.put(appKey, rs.getInt("app_id"));
@@ -477,7 +620,7 @@ public class FrontDao {
     public Map<String, String> getLidAndChannelEvent() {
         String sql = "SELECT link_id, event_id, channel_event FROM ads_link_event WHERE is_delete = 0";
         Map<String, String> result = new HashMap<>();
-        jdbcTemplate.query(sql, (RowCallbackHandler) rs -> {
+        scan(sql, rs -> {
             result.put(rs.getInt("link_id") + "_" + rs.getInt("event_id"), rs.getString("channel_event"));
         });
         return result;
@@ -486,7 +629,7 @@ public class FrontDao {
     public Map<Integer, Integer> getEIdMap() {
         String sql = "SELECT link_id, event_id FROM ads_link_event WHERE is_delete = 0";
         Map<Integer, Integer> result = new HashMap<>();
-        jdbcTemplate.query(sql, (RowCallbackHandler) rs -> {
+        scan(sql, rs -> {
             result.put(rs.getInt("link_id"), rs.getInt("event_id"));
         });
         return result;
@@ -495,17 +638,51 @@ public class FrontDao {
     public Set<String> getAdsFrequency() {
         String sql = "SELECT event_id, link_id, zg_id FROM ads_frequency_first";
         Set<String> result = new HashSet<>();
-        jdbcTemplate.query(sql, (RowCallbackHandler) rs -> {
+        scan(sql, rs -> {
             result.add(rs.getInt("event_id") + "_" + rs.getInt("link_id") + "_" + rs.getString("zg_id"));
         });
         return result;
     }
 
+    /**
+     * 水位列当前最大值，表为空时返回0
+     */
+    public long getAdsFrequencyMaxWatermark(String column) {
+        Long max = jdbcTemplate.queryForObject(
+                "SELECT MAX(" + checkColumn(column) + ") FROM ads_frequency_first", Long.class);
+        return max == null ? 0L : max;
+    }
+
+    /**
+     * 水位之后新增的记录，按 (水位列, event_id, link_id, zg_id) 升序分页，水位列可以不唯一
+     *
+     * @param after 上一页最后一行的 {水位, event_id, link_id, zg_id}，为null时读取第一页 (包含水位值本身)
+     * @return 每行为 {水位, event_id, link_id, zg_id}
+     */
+    public List<Object[]> getAdsFrequencyAfter(String column, long watermark, Object[] after, int limit) {
+        String wm = checkColumn(column);
+        String sql = "SELECT " + wm + " AS wm, event_id, link_id, zg_id FROM ads_frequency_first " +
+                     (after == null ? "WHERE " + wm + " >= ?" : "WHERE (" + wm + ", event_id, link_id, zg_id) > (?, ?, ?, ?)") +
+                     " ORDER BY " + wm + ", event_id, link_id, zg_id LIMIT ?";
+        Object[] args;
+        if (after == null) {
+            args = new Object[]{watermark, limit};
+        } else {
+            args = Arrays.copyOf(after, after.length + 1);
+            args[after.length] = limit;
+        }
+        List<Object[]> result = new ArrayList<>();
+        scan(sql, rs -> {
+            result.add(new Object[]{rs.getLong("wm"), rs.getInt("event_id"), rs.getInt("link_id"), rs.getString("zg_id")});
+        }, args);
+        return result;
+    }
+
     public Map<String, AdsLinkEvent> getAdsLinkEventMap() {
         String sql = "SELECT link_id, event_id, event_ids, channel_event, match_json, frequency, windows_time " +
                      "FROM ads_link_event WHERE is_delete = 0";
         Map<String, AdsLinkEvent> result = new HashMap<>();
-        jdbcTemplate.query(sql, (RowCallbackHandler) rs -> {
+        scan(sql, rs -> {
             AdsLinkEvent event = new AdsLinkEvent();
             event.setLinkId(rs.getInt("link_id"));
             event.setEventId(rs.getInt("event_id"));
@@ -528,7 +705,7 @@ public class FrontDao {
         String sql = "SELECT event_name, alias_name, app_id, event_json FROM virtual_event " +
                      "WHERE is_delete = 0 AND event_status = 0";
         Map<String, List<String>> result = new HashMap<>();
-        jdbcTemplate.query(sql, (RowCallbackHandler) rs -> {
+        scan(sql, rs -> {
             String eventJson = rs.getString("event_json");
             if (eventJson != null) {
                 try {
@@ -549,7 +726,7 @@ public class FrontDao {
         String sql = "SELECT event_name, app_id, event_json FROM virtual_event " +
                      "WHERE is_delete = 0 AND event_status = 0";
         Map<String, Set<String>> result = new HashMap<>();
-        jdbcTemplate.query(sql, (RowCallbackHandler) rs -> {
+        scan(sql, rs -> {
             String virtualEventName = rs.getString("event_name");
             Long appId = rs.getLong("app_id");
             String eventJson = rs.getString("event_json");
@@ -575,7 +752,7 @@ public class FrontDao {
     public Set<String> getVirtualEventAppidsSet() {
         String sql = "SELECT app_id FROM virtual_event WHERE is_delete = 0 AND event_status = 0 GROUP BY app_id";
         Set<String> result = new HashSet<>();
-        jdbcTemplate.query(sql, (RowCallbackHandler) rs -> {
+        scan(sql, rs -> {
             result.add(String.valueOf(rs.getLong("app_id")));
         });
         return result;
@@ -588,7 +765,7 @@ public class FrontDao {
     public Map<String, String> getCurrentKuduTable() {
         String sql = "SELECT base_name, current_name FROM kudu_exchange";
         Map<String, String> result = new HashMap<>();
-        jdbcTemplate.query(sql, (RowCallbackHandler) rs -> {
+        scan(sql, rs -> {
             String baseName = rs.getString("base_name");
             String currentName = rs.getString("current_name");
             if (baseName != null && currentName != null) {
@@ -603,7 +780,7 @@ public class FrontDao {
         String sql = "SELECT app_id, app_config FROM app_custom_config " +
                      "WHERE app_config_type = 'id_mapping' AND app_config = 'true'";
         Map<String, String> result = new HashMap<>();
-        jdbcTemplate.query(sql, (RowCallbackHandler) rs -> {
+        scan(sql, rs -> {
             Integer appId = rs.getInt("app_id");
             if (validAppIds.contains(appId)) {
                 result.put(String.valueOf(appId), rs.getString("app_config"));
@@ -615,7 +792,7 @@ public class FrontDao {
     public Map<String, String> getYearWeek() {
         String sql = "SELECT day, year_week FROM etl_yearkweek";
         Map<String, String> result = new HashMap<>();
-        jdbcTemplate.query(sql, (RowCallbackHandler) rs -> {
+        scan(sql, rs -> {
             result.put(String.valueOf(rs.getInt("day")), String.valueOf(rs.getInt("year_week")));
         });
         return result;
@@ -624,9 +801,19 @@ public class FrontDao {
     public Set<String> getBusiness() {
         String sql = "SELECT company_id, identifier FROM business WHERE del = 0 AND state = 1";
         Set<String> result = new HashSet<>();
-        jdbcTemplate.query(sql, (RowCallbackHandler) rs -> {
+        scan(sql, rs -> {
             result.add(rs.getInt("company_id") + "_" + rs.getString("identifier"));
         });
         return result;
     }
+
+    /**
+     * 列名来自配置，拼接SQL前校验
+     */
+    private static String checkColumn(String column) {
+        if (column == null || !column.matches("[A-Za-z_][A-Za-z0-9_]*")) {
+            throw new IllegalArgumentException("Invalid column name: " + column);
+        }
+        return column;
+    }
 }
@@ -0,0 +1,58 @@
+package com.zhugeio.cachesync.entity;
+
+import lombok.Data;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 单个缓存的增量变更
+ *
+ * Hash缓存使用puts/deletes，Set缓存使用adds/removes；同一Field/成员后一次变更覆盖前一次
+ */
+@Data
+public class CacheDelta {
+
+    private final String cacheName;
+
+    private final Map<String, String> puts = new HashMap<>();
+
+    private final Set<String> deletes = new HashSet<>();
+
+    private final Set<String> adds = new HashSet<>();
+
+    private final Set<String> removes = new HashSet<>();
+
+    public void put(String field, String value) {
+        deletes.remove(field);
+        puts.put(field, value);
+    }
+
+    public void delete(String field) {
+        puts.remove(field);
+        deletes.add(field);
+    }
+
+    /**
+     * Set成员加入或移出
+     */
+    public void member(String member, boolean present) {
+        if (present) {
+            removes.remove(member);
+            adds.add(member);
+        } else {
+            adds.remove(member);
+            removes.add(member);
+        }
+    }
+
+    public int size() {
+        return puts.size() + deletes.size() + adds.size() + removes.size();
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+}
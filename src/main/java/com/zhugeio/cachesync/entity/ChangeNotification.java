@@ -0,0 +1,33 @@
+package com.zhugeio.cachesync.entity;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 缓存变更通知，发布到 sync:changes
+ *
+ * swap: 缓存整体替换，digest为新数据与顺序无关的摘要，相同数据的两次替换摘要相同
+ * delta: 字段级增量写入 (增量同步/CDC/定向刷新)，fields为变化的Field/成员，超过上限时为null
+ */
+@Data
+public class ChangeNotification {
+
+    public static final String SWAP = "swap";
+    public static final String DELTA = "delta";
+
+    private String type;
+
+    private String cache;
+
+    /**
+     * 当前代际，未使用代际模式时为-1
+     */
+    private long generation = -1;
+
+    private String digest;
+
+    private List<String> fields;
+
+    private long timestamp;
+}
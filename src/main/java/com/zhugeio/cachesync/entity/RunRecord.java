@@ -0,0 +1,53 @@
+package com.zhugeio.cachesync.entity;
+
+import lombok.Data;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 一次全量同步的运行记录，追加到 sync:history
+ */
+@Data
+public class RunRecord {
+
+    private long timestamp;
+
+    private long costMs;
+
+    private boolean success;
+
+    /**
+     * 缓存名 -> 该缓存本次的统计
+     */
+    private Map<String, CacheRun> caches = new LinkedHashMap<>();
+
+    @Data
+    public static class CacheRun {
+
+        private long rows;
+
+        private long bytes;
+
+        private long commands;
+
+        private long costMs;
+
+        /**
+         * 变化的Field/成员数，-1表示未知 (整体替换)
+         */
+        private long changedFields = -1;
+
+        /**
+         * 是否为增量写入，基线只取同一方式的运行
+         */
+        private boolean incremental;
+
+        private boolean success;
+
+        /**
+         * 阶段 -> 耗时(ms)
+         */
+        private Map<String, Long> phaseMillis = new LinkedHashMap<>();
+    }
+}
@@ -1,6 +1,8 @@
 package com.zhugeio.cachesync.entity;
 
 import lombok.Data;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
@@ -29,6 +31,51 @@ public class SyncResult {
      */
     private long endTime;
     
+    /**
+     * Pipeline批次数
+     */
+    private long batches;
+    
+    /**
+     * 发送的命令数
+     */
+    private long commands;
+    
+    /**
+     * 写入的字节数
+     */
+    private long bytesWritten;
+    
+    /**
+     * 各阶段耗时(ms): query/transform/write/swap
+     */
+    private Map<String, Long> phaseMillis = new LinkedHashMap<>();
+    
+    /**
+     * 变化的Field/成员数 (增量写入)，-1表示未知 (整体替换)
+     */
+    private long changedFields = -1;
+
+    /**
+     * 是否为增量写入 (只写入变化部分)，与整体替换的耗时不可比
+     */
+    private boolean incremental;
+    
+    /**
+     * Pipeline批次重试次数
+     */
+    private long retries;
+    
+    /**
+     * 最后使用的Pipeline批次大小
+     */
+    private int pipelineBatchSize;
+    
+    /**
+     * 最后使用的Pipeline在途批次窗口
+     */
+    private int pipelineWindow;
+    
     /**
      * 是否成功
      */
@@ -52,6 +99,18 @@ public class SyncResult {
         syncCount.addAndGet(count);
     }
     
+    public void recordWrite(WriteStats stats) {
+        if (stats == null || stats.getBatches() == 0) {
+            return;
+        }
+        batches += stats.getBatches();
+        commands += stats.getCommands();
+        bytesWritten += stats.getBytes();
+        retries += stats.getRetries();
+        pipelineBatchSize = stats.getBatchSize();
+        pipelineWindow = stats.getWindow();
+    }
+    
     public void finish() {
         this.endTime = System.currentTimeMillis();
     }
@@ -68,10 +127,16 @@ public class SyncResult {
     
     @Override
     public String toString() {
-        return String.format("[%s] count=%d, cost=%dms, success=%s%s",
+        return String.format("[%s] count=%d, cost=%dms, phases=%s, bytes=%d, batches=%d, retries=%d, batchSize=%d, window=%d, success=%s%s",
                 cacheName,
                 syncCount.get(),
                 getCostTime(),
+                phaseMillis,
+                bytesWritten,
+                batches,
+                retries,
+                pipelineBatchSize,
+                pipelineWindow,
                 success,
                 errorMessage != null ? ", error=" + errorMessage : "");
     }
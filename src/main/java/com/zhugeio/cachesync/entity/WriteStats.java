@@ -0,0 +1,52 @@
+package com.zhugeio.cachesync.entity;
+
+import lombok.Data;
+
+/**
+ * 一次批量写入的统计
+ */
+@Data
+public class WriteStats {
+
+    /**
+     * Pipeline批次数
+     */
+    private long batches;
+
+    /**
+     * 发送的命令数
+     */
+    private long commands;
+
+    /**
+     * 发送的字节数 (Key/Field/Value字符数估算)
+     */
+    private long bytes;
+
+    /**
+     * 批次重试次数
+     */
+    private long retries;
+
+    /**
+     * 最后使用的批次大小
+     */
+    private int batchSize;
+
+    /**
+     * 最后使用的并发批次窗口
+     */
+    private int window;
+
+    public void merge(WriteStats other) {
+        if (other == null) {
+            return;
+        }
+        batches += other.batches;
+        commands += other.commands;
+        bytes += other.bytes;
+        retries += other.retries;
+        batchSize = other.batchSize;
+        window = other.window;
+    }
+}
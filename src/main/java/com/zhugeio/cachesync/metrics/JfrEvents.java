@@ -0,0 +1,101 @@
+package com.zhugeio.cachesync.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * 同步过程的JFR自定义事件 (只由 {@link SyncEvents} 在JFR可用时加载)
+ *
+ * 在JMC中位于 ZhugeIO / Cache Sync 分类下，可与GC、Socket读写等事件按时间对照
+ */
+final class JfrEvents {
+
+    private JfrEvents() {}
+
+    @Name("com.zhugeio.cachesync.Scan")
+    @Label("MySQL Scan")
+    @Description("FrontDao query and row iteration")
+    @Category({"ZhugeIO", "Cache Sync"})
+    @StackTrace(false)
+    static final class ScanEvent extends Event {
+
+        @Label("Cache")
+        String cache;
+
+        @Label("SQL")
+        String sql;
+
+        @Label("Rows")
+        long rows;
+    }
+
+    @Name("com.zhugeio.cachesync.Transform")
+    @Label("Transform")
+    @Description("Conversion of query results to cache entries")
+    @Category({"ZhugeIO", "Cache Sync"})
+    @StackTrace(false)
+    static final class TransformEvent extends Event {
+
+        @Label("Cache")
+        String cache;
+
+        @Label("Entries")
+        long rows;
+    }
+
+    @Name("com.zhugeio.cachesync.Batch")
+    @Label("Pipeline Batch")
+    @Description("Pipeline batch from send until all replies arrived")
+    @Category({"ZhugeIO", "Cache Sync"})
+    @StackTrace(false)
+    static final class BatchEvent extends Event {
+
+        @Label("Cache")
+        String cache;
+
+        @Label("Key")
+        String key;
+
+        @Label("Batch Index")
+        int batchIndex;
+
+        @Label("Commands")
+        long commands;
+
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+
+        @Label("Success")
+        boolean success;
+
+        @Label("Slow")
+        @Description("Reply latency reached jfr.slow-batch-ms")
+        boolean slow;
+    }
+
+    @Name("com.zhugeio.cachesync.Swap")
+    @Label("Swap")
+    @Description("RENAME, DEL or generation pointer flip that publishes a cache")
+    @Category({"ZhugeIO", "Cache Sync"})
+    @StackTrace(false)
+    static final class SwapEvent extends Event {
+
+        @Label("Cache")
+        String cache;
+
+        @Label("Command")
+        String command;
+
+        @Label("Staged")
+        boolean staged;
+
+        @Label("Success")
+        boolean success;
+    }
+}
@@ -0,0 +1,152 @@
+package com.zhugeio.cachesync.metrics;
+
+import com.zhugeio.cachesync.config.CacheSyncConfig;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * JFR自定义事件入口: MySQL扫描、转换、Pipeline批次、RENAME/指针切换
+ *
+ * 运行时没有JFR (jdk.jfr) 或 jfr.enabled=false 时所有方法为空操作，事件类不会被加载；
+ * begin返回的对象只用于传回对应的end方法，为null时表示不记录
+ *
+ * 录制: java -XX:StartFlightRecording=filename=sync.jfr,settings=profile -jar ...，
+ * 或对运行中的进程 jcmd <pid> JFR.start；慢批次可在JMC中按 Slow 字段过滤
+ */
+@Component
+public class SyncEvents {
+
+    private static final boolean AVAILABLE = detect();
+
+    private static final int MAX_SQL_LENGTH = 256;
+
+    @Autowired
+    private CacheSyncConfig config;
+
+    private static boolean detect() {
+        try {
+            Class<?> recorder = Class.forName("jdk.jfr.FlightRecorder");
+            return (Boolean) recorder.getMethod("isAvailable").invoke(null);
+        } catch (Throwable e) {
+            return false;
+        }
+    }
+
+    private boolean active() {
+        return AVAILABLE && config.getJfr().isEnabled();
+    }
+
+    public Object beginScan(String sql) {
+        if (!active()) {
+            return null;
+        }
+        JfrEvents.ScanEvent event = new JfrEvents.ScanEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.cache = SyncMetrics.currentCache();
+        event.sql = sql.length() > MAX_SQL_LENGTH ? sql.substring(0, MAX_SQL_LENGTH) : sql;
+        event.begin();
+        return event;
+    }
+
+    public void endScan(Object token, long rows) {
+        if (token == null) {
+            return;
+        }
+        JfrEvents.ScanEvent event = (JfrEvents.ScanEvent) token;
+        event.rows = rows;
+        event.commit();
+    }
+
+    public Object beginTransform() {
+        if (!active()) {
+            return null;
+        }
+        JfrEvents.TransformEvent event = new JfrEvents.TransformEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.cache = SyncMetrics.currentCache();
+        event.begin();
+        return event;
+    }
+
+    public void endTransform(Object token, long rows) {
+        if (token == null) {
+            return;
+        }
+        JfrEvents.TransformEvent event = (JfrEvents.TransformEvent) token;
+        event.rows = rows;
+        event.commit();
+    }
+
+    /**
+     * 批次发送前调用；回复到达的时刻由 {@link #onBatchReplied} 记为事件结束
+     */
+    public Object beginBatch(String cacheName, String key, int batchIndex, long commands, long bytes) {
+        if (!active()) {
+            return null;
+        }
+        JfrEvents.BatchEvent event = new JfrEvents.BatchEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.cache = cacheName;
+        event.key = key;
+        event.batchIndex = batchIndex;
+        event.commands = commands;
+        event.bytes = bytes;
+        event.begin();
+        return event;
+    }
+
+    /**
+     * 批次全部回复时记录结束时间 (在IO线程上)，提交仍由写入线程完成
+     */
+    public void onBatchReplied(Object token, CompletableFuture<?> replies) {
+        if (token != null) {
+            JfrEvents.BatchEvent event = (JfrEvents.BatchEvent) token;
+            replies.whenComplete((v, e) -> event.end());
+        }
+    }
+
+    /**
+     * 写入线程等待到批次结果后提交，未回复 (超时) 的批次以当前时间结束
+     */
+    public void endBatch(Object token, long latencyMs, boolean success) {
+        if (token == null) {
+            return;
+        }
+        JfrEvents.BatchEvent event = (JfrEvents.BatchEvent) token;
+        event.success = success;
+        event.slow = latencyMs >= config.getJfr().getSlowBatchMs();
+        event.commit();
+    }
+
+    public Object beginSwap(String cacheName, String command, boolean staged) {
+        if (!active()) {
+            return null;
+        }
+        JfrEvents.SwapEvent event = new JfrEvents.SwapEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.cache = cacheName;
+        event.command = command;
+        event.staged = staged;
+        event.begin();
+        return event;
+    }
+
+    public void endSwap(Object token, boolean success) {
+        if (token == null) {
+            return;
+        }
+        JfrEvents.SwapEvent event = (JfrEvents.SwapEvent) token;
+        event.success = success;
+        event.commit();
+    }
+}
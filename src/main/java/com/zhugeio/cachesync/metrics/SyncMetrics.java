@@ -0,0 +1,246 @@
+package com.zhugeio.cachesync.metrics;
+
+import com.zhugeio.cachesync.config.CacheSyncConfig;
+import com.zhugeio.cachesync.entity.SyncResult;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 同步指标 (Prometheus文本格式)
+ *
+ * 每个同步任务按阶段计时: query(MySQL查询) -> transform(转换、快照、压缩) -> write(KVRocks写入) -> swap(RENAME/指针切换)
+ * 阶段由任务线程上的计时器切换，任务结束时写入 {@link SyncResult#getPhaseMillis()} 并记录到直方图
+ *
+ * 常驻模式由管理接口 /metrics 抓取；单次运行结束后写入文件或推送到网关
+ */
+@Slf4j
+@Component
+public class SyncMetrics {
+
+    public static final String QUERY = "query";
+    public static final String TRANSFORM = "transform";
+    public static final String WRITE = "write";
+    public static final String SWAP = "swap";
+
+    private static final ThreadLocal<PhaseClock> CURRENT = new ThreadLocal<>();
+
+    @Autowired
+    private CacheSyncConfig config;
+
+    private final PrometheusMeterRegistry registry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+
+    public boolean isEnabled() {
+        return config.getMetrics().isEnabled();
+    }
+
+    /**
+     * 包装同步任务: 从query阶段开始计时，结束时记录各阶段耗时和写入量
+     */
+    public Callable<SyncResult> instrument(String cacheName, Callable<SyncResult> task) {
+        return () -> {
+            PhaseClock clock = new PhaseClock(cacheName, QUERY);
+            CURRENT.set(clock);
+            try {
+                SyncResult result = task.call();
+                clock.stop();
+                record(cacheName, result, clock);
+                return result;
+            } finally {
+                CURRENT.remove();
+            }
+        };
+    }
+
+    /**
+     * 当前线程正在执行的同步任务的缓存名，不在同步任务中时返回null
+     */
+    public static String currentCache() {
+        PhaseClock clock = CURRENT.get();
+        return clock == null ? null : clock.cacheName;
+    }
+
+    /**
+     * 当前任务进入下一阶段，不在同步任务中时忽略
+     *
+     * @return 之前的阶段，不在同步任务中时返回null
+     */
+    public String enterPhase(String phase) {
+        PhaseClock clock = CURRENT.get();
+        return clock == null ? null : clock.enter(phase);
+    }
+
+    /**
+     * 任务外单独计时的阶段 (如两阶段统一提交的swap)
+     */
+    public void recordPhase(String cacheName, String phase, long nanos) {
+        if (isEnabled()) {
+            phaseTimer(cacheName, phase).record(nanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * 单个Pipeline批次的回复延迟
+     */
+    public void recordBatchReply(String cacheName, long millis) {
+        if (!isEnabled()) {
+            return;
+        }
+        Timer.builder("cache.sync.batch.reply")
+                .description("Pipeline batch reply latency")
+                .tag("cache", cacheName)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(1))
+                .maximumExpectedValue(Duration.ofSeconds(60))
+                .register(registry)
+                .record(millis, TimeUnit.MILLISECONDS);
+    }
+
+    private void record(String cacheName, SyncResult result, PhaseClock clock) {
+        if (result == null) {
+            return;
+        }
+        result.getPhaseMillis().clear();
+        for (Map.Entry<String, Long> entry : clock.totals.entrySet()) {
+            result.getPhaseMillis().put(entry.getKey(), TimeUnit.NANOSECONDS.toMillis(entry.getValue()));
+        }
+        if (!isEnabled()) {
+            return;
+        }
+        for (Map.Entry<String, Long> entry : clock.totals.entrySet()) {
+            phaseTimer(cacheName, entry.getKey()).record(entry.getValue(), TimeUnit.NANOSECONDS);
+        }
+        counter("cache.sync.rows", "Rows read from MySQL", cacheName).increment(result.getSyncCount().get());
+        counter("cache.sync.bytes.written", "Bytes written to KVRocks", cacheName).increment(result.getBytesWritten());
+        counter("cache.sync.commands", "Commands sent to KVRocks", cacheName).increment(result.getCommands());
+        counter("cache.sync.batches", "Pipeline batches sent", cacheName).increment(result.getBatches());
+        if (!result.isSuccess()) {
+            counter("cache.sync.failures", "Failed sync tasks", cacheName).increment();
+        }
+    }
+
+    private Timer phaseTimer(String cacheName, String phase) {
+        return Timer.builder("cache.sync.phase")
+                .description("Sync task phase duration")
+                .tag("cache", cacheName)
+                .tag("phase", phase)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(1))
+                .maximumExpectedValue(Duration.ofMinutes(30))
+                .register(registry);
+    }
+
+    private Counter counter(String name, String description, String cacheName) {
+        return Counter.builder(name)
+                .description(description)
+                .tag("cache", cacheName)
+                .register(registry);
+    }
+
+    public String scrape() {
+        return registry.scrape();
+    }
+
+    /**
+     * 单次运行结束后导出: 写入metrics.file (原子替换)，并PUT到metrics.push-url
+     */
+    public void export() {
+        CacheSyncConfig.Metrics metrics = config.getMetrics();
+        if (!metrics.isEnabled()) {
+            return;
+        }
+        String text = scrape();
+        if (!metrics.getFile().isEmpty()) {
+            try {
+                Path file = Paths.get(metrics.getFile()).toAbsolutePath();
+                Files.createDirectories(file.getParent());
+                Path temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+                Files.write(temp, text.getBytes(StandardCharsets.UTF_8));
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                log.info("Wrote metrics to {}", file);
+            } catch (Exception e) {
+                log.warn("Failed to write metrics file {}: {}", metrics.getFile(), e.getMessage());
+            }
+        }
+        if (!metrics.getPushUrl().isEmpty()) {
+            push(metrics.getPushUrl(), text);
+        }
+    }
+
+    private void push(String pushUrl, String text) {
+        HttpURLConnection connection = null;
+        try {
+            connection = (HttpURLConnection) new URL(pushUrl).openConnection();
+            connection.setRequestMethod("PUT");
+            connection.setDoOutput(true);
+            connection.setConnectTimeout(5000);
+            connection.setReadTimeout(10000);
+            connection.setRequestProperty("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(text.getBytes(StandardCharsets.UTF_8));
+            }
+            int status = connection.getResponseCode();
+            if (status >= 300) {
+                log.warn("Metrics push to {} returned {}", pushUrl, status);
+            } else {
+                log.info("Pushed metrics to {}", pushUrl);
+            }
+        } catch (Exception e) {
+            log.warn("Failed to push metrics to {}: {}", pushUrl, e.getMessage());
+        } finally {
+            if (connection != null) {
+                connection.disconnect();
+            }
+        }
+    }
+
+    /**
+     * 单个任务线程上的阶段计时，同一阶段多次进入时累加
+     */
+    private static class PhaseClock {
+
+        final String cacheName;
+        final Map<String, Long> totals = new LinkedHashMap<>();
+        String phase;
+        long since;
+
+        PhaseClock(String cacheName, String phase) {
+            this.cacheName = cacheName;
+            this.phase = phase;
+            this.since = System.nanoTime();
+        }
+
+        String enter(String next) {
+            String previous = phase;
+            if (!next.equals(previous)) {
+                stop();
+                phase = next;
+            }
+            return previous;
+        }
+
+        void stop() {
+            long now = System.nanoTime();
+            totals.merge(phase, now - since, Long::sum);
+            since = now;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.zhugeio.cachesync.server;
+
+import com.alibaba.fastjson.JSON;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+/**
+ * 常驻模式下的管理接口，监听 server.port
+ *
+ * 使用JDK自带的HttpServer，处理函数接收查询参数并返回JSON；
+ * 两个处理线程，执行刷新时 /metrics 仍可抓取
+ */
+@Slf4j
+@Component
+public class AdminHttpServer {
+
+    @Value("${server.port:8080}")
+    private int port;
+
+    private final Map<String, Function<Map<String, String>, Response>> handlers = new LinkedHashMap<>();
+    private HttpServer server;
+
+    public static class Response {
+        final int status;
+        final Object body;
+
+        public Response(int status, Object body) {
+            this.status = status;
+            this.body = body;
+        }
+    }
+
+    public synchronized void register(String path, Function<Map<String, String>, Response> handler) {
+        handlers.put(path, handler);
+        if (server != null) {
+            server.createContext(path, exchange -> handle(exchange, handler));
+        }
+    }
+
+    public synchronized void start() throws IOException {
+        if (server != null) {
+            return;
+        }
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.setExecutor(Executors.newFixedThreadPool(2, r -> {
+            Thread thread = new Thread(r, "admin-http");
+            thread.setDaemon(true);
+            return thread;
+        }));
+        for (Map.Entry<String, Function<Map<String, String>, Response>> entry : handlers.entrySet()) {
+            Function<Map<String, String>, Response> handler = entry.getValue();
+            server.createContext(entry.getKey(), exchange -> handle(exchange, handler));
+        }
+        server.start();
+        log.info("Admin HTTP server listening on port {}, paths={}", port, handlers.keySet());
+    }
+
+    private void handle(HttpExchange exchange, Function<Map<String, String>, Response> handler) throws IOException {
+        Response response;
+        try {
+            response = handler.apply(parseQuery(exchange.getRequestURI().getRawQuery()));
+        } catch (IllegalArgumentException e) {
+            response = new Response(400, errorBody(e.getMessage()));
+        } catch (Exception e) {
+            log.error("Admin request {} failed", exchange.getRequestURI(), e);
+            response = new Response(500, errorBody(e.getMessage()));
+        }
+
+        byte[] body = (response.body instanceof String ? (String) response.body : JSON.toJSONString(response.body))
+                .getBytes(StandardCharsets.UTF_8);
+        String contentType = response.body instanceof String ? "text/plain; charset=utf-8" : "application/json; charset=utf-8";
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(response.status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static Map<String, String> errorBody(String message) {
+        Map<String, String> body = new LinkedHashMap<>();
+        body.put("error", message);
+        return body;
+    }
+
+    private static Map<String, String> parseQuery(String query) throws UnsupportedEncodingException {
+        Map<String, String> params = new LinkedHashMap<>();
+        if (query == null || query.isEmpty()) {
+            return params;
+        }
+        for (String pair : query.split("&")) {
+            int index = pair.indexOf('=');
+            String name = index < 0 ? pair : pair.substring(0, index);
+            String value = index < 0 ? "" : pair.substring(index + 1);
+            params.put(URLDecoder.decode(name, "UTF-8"), URLDecoder.decode(value, "UTF-8"));
+        }
+        return params;
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        if (server != null) {
+            server.stop(0);
+            server = null;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.zhugeio.cachesync.service;
+
+import com.zhugeio.cachesync.config.CacheSyncConfig;
+
+/**
+ * Pipeline批次大小与并发窗口的自适应调节 (AIMD)
+ *
+ * - 批次回复延迟低于目标: 批次大小加性增加，延迟低于目标一半时窗口+1
+ * - 延迟超过目标: 批次大小乘性减小，窗口-1
+ * - 出错/超时: 批次大小和窗口都减半
+ *
+ * 每个节点连接一个实例，关闭自适应时固定为pipeline-batch-size、窗口1
+ */
+class AdaptiveBatchSizer {
+
+    private final CacheSyncConfig.AdaptiveBatch options;
+    private final boolean adaptive;
+    private int batchSize;
+    private int window;
+
+    AdaptiveBatchSizer(CacheSyncConfig config) {
+        this.options = config.getAdaptiveBatch();
+        this.adaptive = options.isEnabled();
+        this.batchSize = adaptive
+                ? clamp(config.getPipelineBatchSize(), options.getMinBatchSize(), options.getMaxBatchSize())
+                : config.getPipelineBatchSize();
+        this.window = 1;
+    }
+
+    synchronized int batchSize() {
+        return batchSize;
+    }
+
+    synchronized int window() {
+        return window;
+    }
+
+    synchronized void onSuccess(long latencyMs) {
+        if (!adaptive) {
+            return;
+        }
+        long target = options.getTargetLatencyMs();
+        if (latencyMs <= target) {
+            batchSize = Math.min(options.getMaxBatchSize(), batchSize + options.getIncreaseStep());
+            if (latencyMs * 2 <= target) {
+                window = Math.min(options.getMaxWindow(), window + 1);
+            }
+        } else {
+            batchSize = Math.max(options.getMinBatchSize(), (int) (batchSize * options.getDecreaseFactor()));
+            window = Math.max(1, window - 1);
+        }
+    }
+
+    synchronized void onFailure() {
+        if (!adaptive) {
+            return;
+        }
+        batchSize = Math.max(options.getMinBatchSize(), batchSize / 2);
+        window = Math.max(1, window / 2);
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return Math.max(min, Math.min(max, value));
+    }
+}
@@ -0,0 +1,228 @@
+package com.zhugeio.cachesync.service;
+
+import com.zhugeio.cachesync.config.CacheSyncConfig;
+import com.zhugeio.cachesync.constants.CacheKeyConstants;
+import com.zhugeio.cachesync.entity.SyncResult;
+import com.zhugeio.cachesync.entity.WriteStats;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.function.Supplier;
+
+/**
+ * 按app拆分缓存服务
+ *
+ * 将Field以 ${appId}_ 开头的全局Hash额外拆分为 ${cacheName}:{${appId}}
+ * 每个app的数据计算MD5摘要，只有摘要变化的app才写入(已存在的app只写入差异)，已不存在的app删除
+ * 消费方处理单个app时可直接 HGETALL ${cacheName}:{${appId}} 一次加载
+ * 配置skip-global时不再写入全局Hash，每次全量只写入变化的app
+ *
+ * 两阶段提交时新分区随其他缓存统一RENAME，差异写入、删除和摘要更新在提交成功后执行，
+ * 分区提交失败时归到所属缓存的结果，摘要不更新，下次全量重新对账
+ */
+@Slf4j
+@Service
+public class AppPartitionService {
+
+    /**
+     * 按app拆分的缓存
+     */
+    static final Set<String> PARTITIONED_CACHES = new HashSet<>(Arrays.asList(
+            CacheKeyConstants.APP_ID_PROP_ID_MAP,
+            CacheKeyConstants.APP_ID_EVENT_ID_MAP,
+            CacheKeyConstants.APP_ID_EVENT_ATTR_ID_MAP,
+            CacheKeyConstants.APP_ID_DEVICE_PROP_ID_MAP));
+
+    /**
+     * 增量写入过的app的摘要，与任何数据的摘要都不相等，下次全量必定按差异对账
+     */
+    static final String DIRTY_DIGEST = "dirty";
+
+    @Autowired
+    private KVRocksService kvRocksService;
+
+    @Autowired
+    private CacheSyncConfig config;
+
+    public boolean isEnabled() {
+        return config.getPartition().isEnabled();
+    }
+
+    /**
+     * 开启拆分时该缓存是否按app拆分写入
+     */
+    public boolean isPartitioned(String cacheName) {
+        return isEnabled() && PARTITIONED_CACHES.contains(cacheName);
+    }
+
+    /**
+     * 拆分的缓存是否只写入app分区、不再写入全局Hash
+     */
+    public boolean isSkipGlobal() {
+        CacheSyncConfig.Partition partition = config.getPartition();
+        return partition.isEnabled() && partition.isSkipGlobal();
+    }
+
+    /**
+     * 按app拆分写入
+     *
+     * @param result 提交后执行的差异写入记录到该结果
+     * @return 本次立即写入 (新建或重写的分区) 的统计
+     */
+    public WriteStats syncPartitions(String cacheName, Map<String, String> data, SyncResult result) {
+        WriteStats stats = new WriteStats();
+        if (!isEnabled()) {
+            return stats;
+        }
+
+        Map<String, Map<String, String>> partitions = splitByAppId(data);
+        String digestKey = CacheKeyConstants.appPartitionDigestKey(cacheName);
+        Map<String, String> oldDigests = kvRocksService.hgetAll(digestKey);
+
+        Map<String, String> digests = new HashMap<>();
+        List<String> unchangedKeys = new ArrayList<>();
+        for (Map.Entry<String, Map<String, String>> entry : partitions.entrySet()) {
+            String digest = digest(entry.getValue());
+            digests.put(entry.getKey(), digest);
+            if (digest.equals(oldDigests.get(entry.getKey()))) {
+                unchangedKeys.add(CacheKeyConstants.appPartitionKey(cacheName, entry.getKey()));
+            }
+        }
+        // 摘要未变但分区Key已被删除或过期的app重新写入
+        Set<String> existingKeys = kvRocksService.existingKeys(unchangedKeys);
+
+        Map<String, String> changedDigests = new HashMap<>();
+        List<Supplier<WriteStats>> diffs = new ArrayList<>();
+        for (Map.Entry<String, Map<String, String>> entry : partitions.entrySet()) {
+            String appId = entry.getKey();
+            String digest = digests.get(appId);
+            String oldDigest = oldDigests.get(appId);
+            String partitionKey = CacheKeyConstants.appPartitionKey(cacheName, appId);
+            if (digest.equals(oldDigest)) {
+                if (existingKeys.contains(partitionKey)) {
+                    continue;
+                }
+                log.warn("Partition {} missing, rewrite", partitionKey);
+                oldDigest = null;
+            }
+            if (oldDigest == null) {
+                stats.merge(kvRocksService.atomicReplaceHashKey(cacheName, partitionKey, entry.getValue()));
+            } else {
+                diffs.add(diff(partitionKey, entry.getValue()));
+            }
+            changedDigests.put(appId, digest);
+        }
+
+        List<String> removedApps = new ArrayList<>();
+        for (String appId : oldDigests.keySet()) {
+            if (!partitions.containsKey(appId)) {
+                removedApps.add(appId);
+            }
+        }
+
+        // 先写数据再更新摘要，中途失败时下次会重新写入
+        kvRocksService.afterCommit(cacheName, () -> {
+            for (Supplier<WriteStats> diff : diffs) {
+                result.recordWrite(diff.get());
+            }
+            for (String appId : removedApps) {
+                kvRocksService.retireKey(CacheKeyConstants.appPartitionKey(cacheName, appId));
+            }
+            kvRocksService.hset(digestKey, changedDigests);
+            kvRocksService.hdel(digestKey, removedApps);
+        });
+
+        log.info("Synced partitions of {} - {} apps, {} changed, {} removed",
+                cacheName, partitions.size(), changedDigests.size(), removedApps.size());
+        return stats;
+    }
+
+    /**
+     * 增量写入已存在的app分区，尚未拆分的app留给下次全量按摘要创建
+     * 
+     * 写入前把这些app的摘要标记为dirty，下次全量不会因摘要相同而跳过，
+     * 增量看不到的变化 (如源表硬删除) 由全量的差异对账修正
+     */
+    public WriteStats applyIncrement(String cacheName, Map<String, String> puts, Collection<String> deletes) {
+        WriteStats stats = new WriteStats();
+        if (!isEnabled() || (puts.isEmpty() && deletes.isEmpty())) {
+            return stats;
+        }
+        Map<String, String> digests = kvRocksService.hgetAll(CacheKeyConstants.appPartitionDigestKey(cacheName));
+        Map<String, Map<String, String>> putsByApp = splitByAppId(puts);
+        Map<String, String> deleteFields = new HashMap<>();
+        for (String field : deletes) {
+            deleteFields.put(field, "");
+        }
+        Map<String, Map<String, String>> deletesByApp = splitByAppId(deleteFields);
+
+        Set<String> appIds = new HashSet<>(putsByApp.keySet());
+        appIds.addAll(deletesByApp.keySet());
+        appIds.retainAll(digests.keySet());
+        if (appIds.isEmpty()) {
+            return stats;
+        }
+        Map<String, String> dirty = new HashMap<>();
+        for (String appId : appIds) {
+            dirty.put(appId, DIRTY_DIGEST);
+        }
+        kvRocksService.hset(CacheKeyConstants.appPartitionDigestKey(cacheName), dirty);
+        for (String appId : appIds) {
+            stats.merge(kvRocksService.applyHashDelta(CacheKeyConstants.appPartitionKey(cacheName, appId),
+                    putsByApp.getOrDefault(appId, Collections.emptyMap()),
+                    deletesByApp.getOrDefault(appId, Collections.emptyMap()).keySet()));
+        }
+        return stats;
+    }
+
+    /**
+     * 已存在的app只写入变化的字段，差异按当前分区计算，返回的写入在提交后执行
+     */
+    private Supplier<WriteStats> diff(String partitionKey, Map<String, String> data) {
+        Map<String, String> current = kvRocksService.hgetAll(partitionKey);
+        Map<String, String> puts = new HashMap<>();
+        for (Map.Entry<String, String> entry : data.entrySet()) {
+            if (!entry.getValue().equals(current.get(entry.getKey()))) {
+                puts.put(entry.getKey(), entry.getValue());
+            }
+        }
+        List<String> deletes = new ArrayList<>();
+        for (String field : current.keySet()) {
+            if (!data.containsKey(field)) {
+                deletes.add(field);
+            }
+        }
+        return () -> kvRocksService.applyHashDelta(partitionKey, puts, deletes);
+    }
+
+    /**
+     * 按Field前缀 ${appId}_ 分组
+     */
+    static Map<String, Map<String, String>> splitByAppId(Map<String, String> data) {
+        Map<String, Map<String, String>> partitions = new HashMap<>();
+        for (Map.Entry<String, String> entry : data.entrySet()) {
+            String field = entry.getKey();
+            int idx = field.indexOf('_');
+            if (idx <= 0) {
+                continue;
+            }
+            partitions.computeIfAbsent(field.substring(0, idx), k -> new HashMap<>())
+                    .put(field, entry.getValue());
+        }
+        return partitions;
+    }
+
+    /**
+     * 与Field顺序无关的摘要
+     */
+    static String digest(Map<String, String> partition) {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, String> entry : new TreeMap<>(partition).entrySet()) {
+            sb.append(entry.getKey()).append('\u0001').append(entry.getValue()).append('\u0002');
+        }
+        return DigestUtils.md5Hex(sb.toString());
+    }
+}
@@ -1,15 +1,25 @@
 package com.zhugeio.cachesync.service;
 
 import com.alibaba.fastjson.JSON;
+import com.zhugeio.cachesync.codec.BitmapCodec;
+import com.zhugeio.cachesync.codec.BloomFilter;
 import com.zhugeio.cachesync.config.CacheSyncConfig;
 import com.zhugeio.cachesync.constants.CacheKeyConstants;
 import com.zhugeio.cachesync.dao.FrontDao;
 import com.zhugeio.cachesync.entity.AdsLinkEvent;
 import com.zhugeio.cachesync.entity.SyncResult;
+import com.zhugeio.cachesync.entity.WriteStats;
+import com.zhugeio.cachesync.metrics.SyncEvents;
+import com.zhugeio.cachesync.metrics.SyncMetrics;
+import com.zhugeio.cachesync.snapshot.SnapshotWriter;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.text.SimpleDateFormat;
 import java.util.*;
 import java.util.concurrent.*;
@@ -30,8 +40,41 @@ public class CacheSyncService {
     @Autowired
     private CacheSyncConfig config;
     
+    @Autowired
+    private AppPartitionService appPartitionService;
+    
+    @Autowired
+    private KeyReclaimService keyReclaimService;
+
+    @Autowired
+    private IncrementalSyncService incrementalSyncService;
+    
+    @Autowired
+    private ChangeNotifier changeNotifier;
+    
+    @Autowired
+    private ValueCompressionService valueCompressionService;
+    
+    @Autowired
+    private SyncMetrics syncMetrics;
+    
+    @Autowired
+    private SyncEvents syncEvents;
+    
+    @Autowired
+    private RunHistoryService runHistoryService;
+    
     private final List<SyncResult> syncResults = Collections.synchronizedList(new ArrayList<>());
     private ExecutorService executorService;
+    
+    // 小缓存合并写入，syncAll结束前统一flush
+    private final Map<String, Map<String, String>> smallHashes = new HashMap<>();
+    private final Map<String, Set<String>> smallSets = new HashMap<>();
+    private final Map<String, SyncResult> smallResults = new HashMap<>();
+    private boolean smallLaneOpen;
+    
+    // 已写出、等待替换提交后生效的快照文件: 缓存名 -> ${cacheName}.snap.pending
+    private final Map<String, Path> pendingSnapshots = new ConcurrentHashMap<>();
 
     public void syncAll() {
         log.info("Starting full cache sync...");
@@ -39,64 +82,31 @@ public class CacheSyncService {
         
         // 清除批量查询缓存，确保获取最新数据
         frontDao.clearBatchCache();
+        syncResults.clear();
+        changeNotifier.clearPending();
         
         int threadCount = Runtime.getRuntime().availableProcessors();
         executorService = Executors.newFixedThreadPool(threadCount);
+        boolean committed = false;
         
         try {
             recordSyncStart();
             
-            List<Callable<SyncResult>> tasks = new ArrayList<>();
-            
-            // 核心缓存
-            tasks.add(this::syncAppKeyAppIdMap);
-            tasks.add(this::syncAppIdSdkHasDataMap);
-            tasks.add(this::syncAppIdPropIdMap);
-            tasks.add(this::syncAppIdPropIdOriginalMap);
-            tasks.add(this::syncAppIdEventIdMap);
-            tasks.add(this::syncAppIdEventAttrIdMap);
-            tasks.add(this::syncAppIdDevicePropIdMap);
-            
-            // Set集合
-            tasks.add(this::syncBlackUserPropSet);
-            tasks.add(this::syncBlackEventIdSet);
-            tasks.add(this::syncBlackEventAttrIdSet);
-            tasks.add(this::syncAppIdCreateEventForbidSet);
-            tasks.add(this::syncAppIdUploadDataSet);
-            tasks.add(this::syncAppIdNoneAutoCreateSet);
-            tasks.add(this::syncEventIdCreateAttrForbiddenSet);
-            tasks.add(this::syncEventIdPlatform);
-            tasks.add(this::syncEventAttrPlatform);
-            tasks.add(this::syncDevicePropPlatform);
+            // 后台继续上次运行未完成的回收，并回收遗留的临时Key和旧代际
+            keyReclaimService.reclaimOrphansAsync();
             
-            // 虚拟事件/属性
-            tasks.add(this::syncVirtualEventMap);
-            tasks.add(this::syncVirtualEventAttrMap);
-            tasks.add(this::syncEventAttrAliasMap);
-            tasks.add(this::syncVirtualEventAppidsSet);
-            tasks.add(this::syncVirtualPropAppIdsSet);
-            tasks.add(this::syncEventVirtualAttrIdsSet);
-            tasks.add(this::syncVirtualEventPropMap);
-            tasks.add(this::syncVirtualUserPropMap);
-            
-            // 投放相关
-            if (config.isOpenToufang()) {
-                tasks.add(this::syncOpenAdvertisingFunctionAppMap);
-                tasks.add(this::syncLidAndChannelEventMap);
-                tasks.add(this::syncAppIdSMap);
-                tasks.add(this::syncAdFrequencySet);
-                tasks.add(this::syncAdsLinkEventMap);
+            if (config.isTwoPhaseCommit()) {
+                kvRocksService.beginStaging();
             }
+            openSmallCacheLane();
+            
+            // 已增量更新的元数据缓存本次跳过全量
+            Set<String> incrementalCaches = incrementalSyncService.applyMetadataIncrements(syncResults);
             
-            // DW模块
-            tasks.add(this::syncEventAttrColumnMap);
-            tasks.add(this::syncBaseCurrentMap);
-            tasks.add(this::syncOpenCdpAppidMap);
-            tasks.add(this::syncYearWeek);
-            tasks.add(this::syncCidByAidMap);
-            tasks.add(this::syncBusinessMap);
+            Map<String, Callable<SyncResult>> tasks = buildTasks();
+            tasks.keySet().removeAll(incrementalCaches);
             
-            List<Future<SyncResult>> futures = executorService.invokeAll(tasks, 
+            List<Future<SyncResult>> futures = executorService.invokeAll(tasks.values(), 
                     config.getTimeoutSeconds(), TimeUnit.SECONDS);
             
             for (Future<SyncResult> future : futures) {
@@ -108,20 +118,124 @@ public class CacheSyncService {
                 }
             }
             
+            flushSmallCacheLane();
+            
+            if (config.isTwoPhaseCommit()) {
+                commitStaged();
+            }
+            committed = true;
+            incrementalSyncService.completeFullReconcile(syncResults);
+            publishSnapshots(syncResults);
+            changeNotifier.publishSwaps(syncResults);
+            
             recordSyncComplete();
             printSyncSummary(startTime);
+            runHistoryService.record(syncResults, System.currentTimeMillis() - startTime);
             
         } catch (InterruptedException e) {
             log.error("Sync interrupted", e);
             Thread.currentThread().interrupt();
             throw new RuntimeException("Sync interrupted", e);
         } finally {
+            if (!committed) {
+                abortRun();
+            }
             if (executorService != null) {
                 executorService.shutdown();
             }
         }
     }
 
+    /**
+     * 缓存名 -> 同步任务
+     */
+    private Map<String, Callable<SyncResult>> buildTasks() {
+        Map<String, Callable<SyncResult>> tasks = new LinkedHashMap<>();
+        
+        // 核心缓存
+        tasks.put(CacheKeyConstants.APP_KEY_APP_ID_MAP, this::syncAppKeyAppIdMap);
+        tasks.put(CacheKeyConstants.APP_ID_SDK_HAS_DATA_MAP, this::syncAppIdSdkHasDataMap);
+        tasks.put(CacheKeyConstants.APP_ID_PROP_ID_MAP, this::syncAppIdPropIdMap);
+        tasks.put(CacheKeyConstants.APP_ID_PROP_ID_ORIGINAL_MAP, this::syncAppIdPropIdOriginalMap);
+        tasks.put(CacheKeyConstants.APP_ID_EVENT_ID_MAP, this::syncAppIdEventIdMap);
+        tasks.put(CacheKeyConstants.APP_ID_EVENT_ATTR_ID_MAP, this::syncAppIdEventAttrIdMap);
+        tasks.put(CacheKeyConstants.APP_ID_DEVICE_PROP_ID_MAP, this::syncAppIdDevicePropIdMap);
+        
+        // Set集合
+        tasks.put(CacheKeyConstants.BLACK_USER_PROP_SET, this::syncBlackUserPropSet);
+        tasks.put(CacheKeyConstants.BLACK_EVENT_ID_SET, this::syncBlackEventIdSet);
+        tasks.put(CacheKeyConstants.BLACK_EVENT_ATTR_ID_SET, this::syncBlackEventAttrIdSet);
+        tasks.put(CacheKeyConstants.APP_ID_CREATE_EVENT_FORBID_SET, this::syncAppIdCreateEventForbidSet);
+        tasks.put(CacheKeyConstants.APP_ID_UPLOAD_DATA_SET, this::syncAppIdUploadDataSet);
+        tasks.put(CacheKeyConstants.APP_ID_NONE_AUTO_CREATE_SET, this::syncAppIdNoneAutoCreateSet);
+        tasks.put(CacheKeyConstants.EVENT_ID_CREATE_ATTR_FORBIDDEN_SET, this::syncEventIdCreateAttrForbiddenSet);
+        tasks.put(CacheKeyConstants.EVENT_ID_PLATFORM, this::syncEventIdPlatform);
+        tasks.put(CacheKeyConstants.EVENT_ATTR_PLATFORM, this::syncEventAttrPlatform);
+        tasks.put(CacheKeyConstants.DEVICE_PROP_PLATFORM, this::syncDevicePropPlatform);
+        
+        // 虚拟事件/属性
+        tasks.put(CacheKeyConstants.VIRTUAL_EVENT_MAP, this::syncVirtualEventMap);
+        tasks.put(CacheKeyConstants.VIRTUAL_EVENT_ATTR_MAP, this::syncVirtualEventAttrMap);
+        tasks.put(CacheKeyConstants.EVENT_ATTR_ALIAS_MAP, this::syncEventAttrAliasMap);
+        tasks.put(CacheKeyConstants.VIRTUAL_EVENT_APPIDS_SET, this::syncVirtualEventAppidsSet);
+        tasks.put(CacheKeyConstants.VIRTUAL_PROP_APP_IDS_SET, this::syncVirtualPropAppIdsSet);
+        tasks.put(CacheKeyConstants.EVENT_VIRTUAL_ATTR_IDS_SET, this::syncEventVirtualAttrIdsSet);
+        tasks.put(CacheKeyConstants.VIRTUAL_EVENT_PROP_MAP, this::syncVirtualEventPropMap);
+        tasks.put(CacheKeyConstants.VIRTUAL_USER_PROP_MAP, this::syncVirtualUserPropMap);
+        
+        // 投放相关
+        if (config.isOpenToufang()) {
+            tasks.put(CacheKeyConstants.OPEN_ADVERTISING_FUNCTION_APP_MAP, this::syncOpenAdvertisingFunctionAppMap);
+            tasks.put(CacheKeyConstants.LID_AND_CHANNEL_EVENT_MAP, this::syncLidAndChannelEventMap);
+            tasks.put(CacheKeyConstants.APP_ID_S_MAP, this::syncAppIdSMap);
+            tasks.put(CacheKeyConstants.AD_FREQUENCY_SET, this::syncAdFrequencySet);
+            tasks.put(CacheKeyConstants.ADS_LINK_EVENT_MAP, this::syncAdsLinkEventMap);
+        }
+        
+        // DW模块
+        tasks.put(CacheKeyConstants.EVENT_ATTR_COLUMN_MAP, this::syncEventAttrColumnMap);
+        tasks.put(CacheKeyConstants.BASE_CURRENT_MAP, this::syncBaseCurrentMap);
+        tasks.put(CacheKeyConstants.OPEN_CDP_APPID_MAP, this::syncOpenCdpAppidMap);
+        tasks.put(CacheKeyConstants.YEAR_WEEK, this::syncYearWeek);
+        tasks.put(CacheKeyConstants.CID_BY_AID_MAP, this::syncCidByAidMap);
+        tasks.put(CacheKeyConstants.BUSINESS_MAP, this::syncBusinessMap);
+        
+        // 按阶段计时
+        tasks.replaceAll(syncMetrics::instrument);
+        return tasks;
+    }
+
+    /**
+     * 只刷新指定的缓存
+     */
+    public List<SyncResult> refreshCaches(Collection<String> cacheNames) {
+        frontDao.clearBatchCache();
+        Map<String, Callable<SyncResult>> tasks = buildTasks();
+        List<SyncResult> results = new ArrayList<>();
+        for (String cacheName : cacheNames) {
+            Callable<SyncResult> task = tasks.get(cacheName);
+            if (task == null) {
+                SyncResult result = new SyncResult(cacheName);
+                result.fail("Unknown cache");
+                results.add(result);
+                continue;
+            }
+            try {
+                results.add(task.call());
+            } catch (Exception e) {
+                SyncResult result = new SyncResult(cacheName);
+                result.fail(e.getMessage());
+                results.add(result);
+            }
+        }
+        publishSnapshots(results);
+        changeNotifier.publishSwaps(results);
+        for (SyncResult result : results) {
+            log.info("Refreshed {}", result);
+        }
+        return results;
+    }
+
     // ==================== 同步方法 ====================
     
     private SyncResult syncAppKeyAppIdMap() {
@@ -129,7 +243,7 @@ public class CacheSyncService {
         try {
             Map<String, Integer> data = frontDao.getAppKeyIdMaps();
             Map<String, String> stringMap = toStringMap(data);
-            kvRocksService.atomicReplaceHash(CacheKeyConstants.APP_KEY_APP_ID_MAP, stringMap);
+            replaceHash(CacheKeyConstants.APP_KEY_APP_ID_MAP, stringMap, result);
             result.addCount(data.size());
             log.info("Synced {} - {} records", CacheKeyConstants.APP_KEY_APP_ID_MAP, data.size());
         } catch (Exception e) {
@@ -145,7 +259,7 @@ public class CacheSyncService {
         try {
             Map<String, Integer> data = frontDao.getSdkPlatformHasDataMap();
             Map<String, String> stringMap = toStringMap(data);
-            kvRocksService.atomicReplaceHash(CacheKeyConstants.APP_ID_SDK_HAS_DATA_MAP, stringMap);
+            replaceHash(CacheKeyConstants.APP_ID_SDK_HAS_DATA_MAP, stringMap, result);
             result.addCount(data.size());
             log.info("Synced {} - {} records", CacheKeyConstants.APP_ID_SDK_HAS_DATA_MAP, data.size());
         } catch (Exception e) {
@@ -161,7 +275,7 @@ public class CacheSyncService {
         try {
             Map<String, Integer> data = frontDao.getUserPropIds();
             Map<String, String> stringMap = toStringMap(data);
-            kvRocksService.atomicReplaceHash(CacheKeyConstants.APP_ID_PROP_ID_MAP, stringMap);
+            replacePartitionedHash(CacheKeyConstants.APP_ID_PROP_ID_MAP, stringMap, result);
             result.addCount(data.size());
             log.info("Synced {} - {} records", CacheKeyConstants.APP_ID_PROP_ID_MAP, data.size());
         } catch (Exception e) {
@@ -176,7 +290,7 @@ public class CacheSyncService {
         SyncResult result = new SyncResult(CacheKeyConstants.APP_ID_PROP_ID_ORIGINAL_MAP);
         try {
             Map<String, String> data = frontDao.getOriginalUserPropIds();
-            kvRocksService.atomicReplaceHash(CacheKeyConstants.APP_ID_PROP_ID_ORIGINAL_MAP, data);
+            replaceHash(CacheKeyConstants.APP_ID_PROP_ID_ORIGINAL_MAP, data, result);
             result.addCount(data.size());
             log.info("Synced {} - {} records", CacheKeyConstants.APP_ID_PROP_ID_ORIGINAL_MAP, data.size());
         } catch (Exception e) {
@@ -192,7 +306,7 @@ public class CacheSyncService {
         try {
             Map<String, Integer> data = frontDao.getEventIds();
             Map<String, String> stringMap = toStringMap(data);
-            kvRocksService.atomicReplaceHash(CacheKeyConstants.APP_ID_EVENT_ID_MAP, stringMap);
+            replacePartitionedHash(CacheKeyConstants.APP_ID_EVENT_ID_MAP, stringMap, result);
             result.addCount(data.size());
             log.info("Synced {} - {} records", CacheKeyConstants.APP_ID_EVENT_ID_MAP, data.size());
         } catch (Exception e) {
@@ -208,7 +322,7 @@ public class CacheSyncService {
         try {
             Map<String, Integer> data = frontDao.getEventAttrIds();
             Map<String, String> stringMap = toStringMap(data);
-            kvRocksService.atomicReplaceHash(CacheKeyConstants.APP_ID_EVENT_ATTR_ID_MAP, stringMap);
+            replacePartitionedHash(CacheKeyConstants.APP_ID_EVENT_ATTR_ID_MAP, stringMap, result);
             result.addCount(data.size());
             log.info("Synced {} - {} records", CacheKeyConstants.APP_ID_EVENT_ATTR_ID_MAP, data.size());
         } catch (Exception e) {
@@ -224,7 +338,7 @@ public class CacheSyncService {
         try {
             Map<String, Integer> data = frontDao.getDevicePropIds();
             Map<String, String> stringMap = toStringMap(data);
-            kvRocksService.atomicReplaceHash(CacheKeyConstants.APP_ID_DEVICE_PROP_ID_MAP, stringMap);
+            replacePartitionedHash(CacheKeyConstants.APP_ID_DEVICE_PROP_ID_MAP, stringMap, result);
             result.addCount(data.size());
             log.info("Synced {} - {} records", CacheKeyConstants.APP_ID_DEVICE_PROP_ID_MAP, data.size());
         } catch (Exception e) {
@@ -239,8 +353,7 @@ public class CacheSyncService {
         SyncResult result = new SyncResult(CacheKeyConstants.BLACK_USER_PROP_SET);
         try {
             Set<Integer> data = frontDao.getBlackUserPropIds();
-            Set<String> stringSet = toStringSet(data);
-            kvRocksService.atomicReplaceSet(CacheKeyConstants.BLACK_USER_PROP_SET, stringSet);
+            replaceIntSet(CacheKeyConstants.BLACK_USER_PROP_SET, data, result);
             result.addCount(data.size());
             log.info("Synced {} - {} records", CacheKeyConstants.BLACK_USER_PROP_SET, data.size());
         } catch (Exception e) {
@@ -255,8 +368,7 @@ public class CacheSyncService {
         SyncResult result = new SyncResult(CacheKeyConstants.BLACK_EVENT_ID_SET);
         try {
             Set<Integer> data = frontDao.getBlackEventIds();
-            Set<String> stringSet = toStringSet(data);
-            kvRocksService.atomicReplaceSet(CacheKeyConstants.BLACK_EVENT_ID_SET, stringSet);
+            replaceIntSet(CacheKeyConstants.BLACK_EVENT_ID_SET, data, result);
             result.addCount(data.size());
             log.info("Synced {} - {} records", CacheKeyConstants.BLACK_EVENT_ID_SET, data.size());
         } catch (Exception e) {
@@ -271,8 +383,7 @@ public class CacheSyncService {
         SyncResult result = new SyncResult(CacheKeyConstants.BLACK_EVENT_ATTR_ID_SET);
         try {
             Set<Integer> data = frontDao.getBlackEventAttrIds();
-            Set<String> stringSet = toStringSet(data);
-            kvRocksService.atomicReplaceSet(CacheKeyConstants.BLACK_EVENT_ATTR_ID_SET, stringSet);
+            replaceIntSet(CacheKeyConstants.BLACK_EVENT_ATTR_ID_SET, data, result);
             result.addCount(data.size());
             log.info("Synced {} - {} records", CacheKeyConstants.BLACK_EVENT_ATTR_ID_SET, data.size());
         } catch (Exception e) {
@@ -287,8 +398,7 @@ public class CacheSyncService {
         SyncResult result = new SyncResult(CacheKeyConstants.APP_ID_CREATE_EVENT_FORBID_SET);
         try {
             Set<Integer> data = frontDao.getForbiddenCreateEventAppIds();
-            Set<String> stringSet = toStringSet(data);
-            kvRocksService.atomicReplaceSet(CacheKeyConstants.APP_ID_CREATE_EVENT_FORBID_SET, stringSet);
+            replaceIntSet(CacheKeyConstants.APP_ID_CREATE_EVENT_FORBID_SET, data, result);
             result.addCount(data.size());
             log.info("Synced {} - {} records", CacheKeyConstants.APP_ID_CREATE_EVENT_FORBID_SET, data.size());
         } catch (Exception e) {
@@ -303,8 +413,7 @@ public class CacheSyncService {
         SyncResult result = new SyncResult(CacheKeyConstants.APP_ID_UPLOAD_DATA_SET);
         try {
             Set<Integer> data = frontDao.getUploadDatas();
-            Set<String> stringSet = toStringSet(data);
-            kvRocksService.atomicReplaceSet(CacheKeyConstants.APP_ID_UPLOAD_DATA_SET, stringSet);
+            replaceIntSet(CacheKeyConstants.APP_ID_UPLOAD_DATA_SET, data, result);
             result.addCount(data.size());
             log.info("Synced {} - {} records", CacheKeyConstants.APP_ID_UPLOAD_DATA_SET, data.size());
         } catch (Exception e) {
@@ -319,8 +428,7 @@ public class CacheSyncService {
         SyncResult result = new SyncResult(CacheKeyConstants.APP_ID_NONE_AUTO_CREATE_SET);
         try {
             Set<Integer> data = frontDao.getNoneAutoCreateAppIds();
-            Set<String> stringSet = toStringSet(data);
-            kvRocksService.atomicReplaceSet(CacheKeyConstants.APP_ID_NONE_AUTO_CREATE_SET, stringSet);
+            replaceIntSet(CacheKeyConstants.APP_ID_NONE_AUTO_CREATE_SET, data, result);
             result.addCount(data.size());
             log.info("Synced {} - {} records", CacheKeyConstants.APP_ID_NONE_AUTO_CREATE_SET, data.size());
         } catch (Exception e) {
@@ -335,8 +443,7 @@ public class CacheSyncService {
         SyncResult result = new SyncResult(CacheKeyConstants.EVENT_ID_CREATE_ATTR_FORBIDDEN_SET);
         try {
             Set<Integer> data = frontDao.getForbiddenCreateEventAttrEventIds();
-            Set<String> stringSet = toStringSet(data);
-            kvRocksService.atomicReplaceSet(CacheKeyConstants.EVENT_ID_CREATE_ATTR_FORBIDDEN_SET, stringSet);
+            replaceIntSet(CacheKeyConstants.EVENT_ID_CREATE_ATTR_FORBIDDEN_SET, data, result);
             result.addCount(data.size());
             log.info("Synced {} - {} records", CacheKeyConstants.EVENT_ID_CREATE_ATTR_FORBIDDEN_SET, data.size());
         } catch (Exception e) {
@@ -351,7 +458,7 @@ public class CacheSyncService {
         SyncResult result = new SyncResult(CacheKeyConstants.EVENT_ID_PLATFORM);
         try {
             Set<String> data = frontDao.getEventPlatforms();
-            kvRocksService.atomicReplaceSet(CacheKeyConstants.EVENT_ID_PLATFORM, data);
+            replaceSet(CacheKeyConstants.EVENT_ID_PLATFORM, data, result);
             result.addCount(data.size());
             log.info("Synced {} - {} records", CacheKeyConstants.EVENT_ID_PLATFORM, data.size());
         } catch (Exception e) {
@@ -366,7 +473,7 @@ public class CacheSyncService {
         SyncResult result = new SyncResult(CacheKeyConstants.EVENT_ATTR_PLATFORM);
         try {
             Set<String> data = frontDao.getEventAttrPlatforms();
-            kvRocksService.atomicReplaceSet(CacheKeyConstants.EVENT_ATTR_PLATFORM, data);
+            replaceSet(CacheKeyConstants.EVENT_ATTR_PLATFORM, data, result);
             result.addCount(data.size());
             log.info("Synced {} - {} records", CacheKeyConstants.EVENT_ATTR_PLATFORM, data.size());
         } catch (Exception e) {
@@ -381,7 +488,7 @@ public class CacheSyncService {
         SyncResult result = new SyncResult(CacheKeyConstants.DEVICE_PROP_PLATFORM);
         try {
             Set<String> data = frontDao.getDevicePropPlatforms();
-            kvRocksService.atomicReplaceSet(CacheKeyConstants.DEVICE_PROP_PLATFORM, data);
+            replaceSet(CacheKeyConstants.DEVICE_PROP_PLATFORM, data, result);
             result.addCount(data.size());
             log.info("Synced {} - {} records", CacheKeyConstants.DEVICE_PROP_PLATFORM, data.size());
         } catch (Exception e) {
@@ -397,7 +504,7 @@ public class CacheSyncService {
         try {
             Map<String, List<String>> data = frontDao.getVirtualEventMap();
             Map<String, String> stringMap = toJsonStringMap(data);
-            kvRocksService.atomicReplaceHash(CacheKeyConstants.VIRTUAL_EVENT_MAP, stringMap);
+            replaceHash(CacheKeyConstants.VIRTUAL_EVENT_MAP, stringMap, result);
             result.addCount(data.size());
             log.info("Synced {} - {} records", CacheKeyConstants.VIRTUAL_EVENT_MAP, data.size());
         } catch (Exception e) {
@@ -416,7 +523,7 @@ public class CacheSyncService {
             for (Map.Entry<String, Set<String>> entry : data.entrySet()) {
                 stringMap.put(entry.getKey(), JSON.toJSONString(entry.getValue()));
             }
-            kvRocksService.atomicReplaceHash(CacheKeyConstants.VIRTUAL_EVENT_ATTR_MAP, stringMap);
+            replaceHash(CacheKeyConstants.VIRTUAL_EVENT_ATTR_MAP, stringMap, result);
             result.addCount(data.size());
             log.info("Synced {} - {} records", CacheKeyConstants.VIRTUAL_EVENT_ATTR_MAP, data.size());
         } catch (Exception e) {
@@ -431,7 +538,7 @@ public class CacheSyncService {
         SyncResult result = new SyncResult(CacheKeyConstants.EVENT_ATTR_ALIAS_MAP);
         try {
             Map<String, String> data = frontDao.getEventAttrAliasMap();
-            kvRocksService.atomicReplaceHash(CacheKeyConstants.EVENT_ATTR_ALIAS_MAP, data);
+            replaceHash(CacheKeyConstants.EVENT_ATTR_ALIAS_MAP, data, result);
             result.addCount(data.size());
             log.info("Synced {} - {} records", CacheKeyConstants.EVENT_ATTR_ALIAS_MAP, data.size());
         } catch (Exception e) {
@@ -446,7 +553,7 @@ public class CacheSyncService {
         SyncResult result = new SyncResult(CacheKeyConstants.VIRTUAL_EVENT_APPIDS_SET);
         try {
             Set<String> data = frontDao.getVirtualEventAppidsSet();
-            kvRocksService.atomicReplaceSet(CacheKeyConstants.VIRTUAL_EVENT_APPIDS_SET, data);
+            replaceSet(CacheKeyConstants.VIRTUAL_EVENT_APPIDS_SET, data, result);
             result.addCount(data.size());
             log.info("Synced {} - {} records", CacheKeyConstants.VIRTUAL_EVENT_APPIDS_SET, data.size());
         } catch (Exception e) {
@@ -461,7 +568,7 @@ public class CacheSyncService {
         SyncResult result = new SyncResult(CacheKeyConstants.VIRTUAL_PROP_APP_IDS_SET);
         try {
             Set<String> data = frontDao.getVirtualPropAppIdsSet();
-            kvRocksService.atomicReplaceSet(CacheKeyConstants.VIRTUAL_PROP_APP_IDS_SET, data);
+            replaceSet(CacheKeyConstants.VIRTUAL_PROP_APP_IDS_SET, data, result);
             result.addCount(data.size());
             log.info("Synced {} - {} records", CacheKeyConstants.VIRTUAL_PROP_APP_IDS_SET, data.size());
         } catch (Exception e) {
@@ -476,7 +583,7 @@ public class CacheSyncService {
         SyncResult result = new SyncResult(CacheKeyConstants.EVENT_VIRTUAL_ATTR_IDS_SET);
         try {
             Set<String> data = frontDao.getEventVirtualAttrIds();
-            kvRocksService.atomicReplaceSet(CacheKeyConstants.EVENT_VIRTUAL_ATTR_IDS_SET, data);
+            replaceSet(CacheKeyConstants.EVENT_VIRTUAL_ATTR_IDS_SET, data, result);
             result.addCount(data.size());
             log.info("Synced {} - {} records", CacheKeyConstants.EVENT_VIRTUAL_ATTR_IDS_SET, data.size());
         } catch (Exception e) {
@@ -492,7 +599,7 @@ public class CacheSyncService {
         try {
             Map<String, List<String>> data = frontDao.getVirtualEventPropMap();
             Map<String, String> stringMap = toJsonStringMap(data);
-            kvRocksService.atomicReplaceHash(CacheKeyConstants.VIRTUAL_EVENT_PROP_MAP, stringMap);
+            replaceHash(CacheKeyConstants.VIRTUAL_EVENT_PROP_MAP, stringMap, result);
             result.addCount(data.size());
             log.info("Synced {} - {} records", CacheKeyConstants.VIRTUAL_EVENT_PROP_MAP, data.size());
         } catch (Exception e) {
@@ -508,7 +615,7 @@ public class CacheSyncService {
         try {
             Map<String, List<String>> data = frontDao.getVirtualUserPropMap();
             Map<String, String> stringMap = toJsonStringMap(data);
-            kvRocksService.atomicReplaceHash(CacheKeyConstants.VIRTUAL_USER_PROP_MAP, stringMap);
+            replaceHash(CacheKeyConstants.VIRTUAL_USER_PROP_MAP, stringMap, result);
             result.addCount(data.size());
             log.info("Synced {} - {} records", CacheKeyConstants.VIRTUAL_USER_PROP_MAP, data.size());
         } catch (Exception e) {
@@ -525,7 +632,7 @@ public class CacheSyncService {
         try {
             Map<String, Integer> data = frontDao.getOpenAdvertisingFunctionAppId();
             Map<String, String> stringMap = toStringMap(data);
-            kvRocksService.atomicReplaceHash(CacheKeyConstants.OPEN_ADVERTISING_FUNCTION_APP_MAP, stringMap);
+            replaceHash(CacheKeyConstants.OPEN_ADVERTISING_FUNCTION_APP_MAP, stringMap, result);
             result.addCount(data.size());
             log.info("Synced {} - {} records", CacheKeyConstants.OPEN_ADVERTISING_FUNCTION_APP_MAP, data.size());
         } catch (Exception e) {
@@ -540,7 +647,7 @@ public class CacheSyncService {
         SyncResult result = new SyncResult(CacheKeyConstants.LID_AND_CHANNEL_EVENT_MAP);
         try {
             Map<String, String> data = frontDao.getLidAndChannelEvent();
-            kvRocksService.atomicReplaceHash(CacheKeyConstants.LID_AND_CHANNEL_EVENT_MAP, data);
+            replaceHash(CacheKeyConstants.LID_AND_CHANNEL_EVENT_MAP, data, result);
             result.addCount(data.size());
             log.info("Synced {} - {} records", CacheKeyConstants.LID_AND_CHANNEL_EVENT_MAP, data.size());
         } catch (Exception e) {
@@ -559,7 +666,7 @@ public class CacheSyncService {
             for (Map.Entry<Integer, Integer> entry : data.entrySet()) {
                 stringMap.put(String.valueOf(entry.getKey()), String.valueOf(entry.getValue()));
             }
-            kvRocksService.atomicReplaceHash(CacheKeyConstants.APP_ID_S_MAP, stringMap);
+            replaceHash(CacheKeyConstants.APP_ID_S_MAP, stringMap, result);
             result.addCount(data.size());
             log.info("Synced {} - {} records", CacheKeyConstants.APP_ID_S_MAP, data.size());
         } catch (Exception e) {
@@ -573,10 +680,23 @@ public class CacheSyncService {
     private SyncResult syncAdFrequencySet() {
         SyncResult result = new SyncResult(CacheKeyConstants.AD_FREQUENCY_SET);
         try {
-            Set<String> data = frontDao.getAdsFrequency();
-            kvRocksService.atomicReplaceSet(CacheKeyConstants.AD_FREQUENCY_SET, data);
-            result.addCount(data.size());
-            log.info("Synced {} - {} records", CacheKeyConstants.AD_FREQUENCY_SET, data.size());
+            if (incrementalSyncService.canApplyIncrement(CacheKeyConstants.AD_FREQUENCY_SET)) {
+                result.setIncremental(true);
+                Set<String> added = incrementalSyncService.appendAdFrequency(result);
+                extendBloomFilter(CacheKeyConstants.AD_FREQUENCY_SET, added, result);
+                result.addCount(added.size());
+            } else {
+                // 先取水位再全量读取，对账期间新增的记录下次增量会再次写入
+                long watermark = incrementalSyncService.isEnabled()
+                        ? incrementalSyncService.getAdFrequencyMaxWatermark() : 0L;
+                Set<String> data = frontDao.getAdsFrequency();
+                replaceSet(CacheKeyConstants.AD_FREQUENCY_SET, data, result);
+                if (incrementalSyncService.isEnabled()) {
+                    incrementalSyncService.deferFullReconcile(CacheKeyConstants.AD_FREQUENCY_SET, watermark);
+                }
+                result.addCount(data.size());
+                log.info("Synced {} - {} records", CacheKeyConstants.AD_FREQUENCY_SET, data.size());
+            }
         } catch (Exception e) {
             result.fail(e.getMessage());
             log.error("Failed to sync {}", CacheKeyConstants.AD_FREQUENCY_SET, e);
@@ -593,7 +713,7 @@ public class CacheSyncService {
             for (Map.Entry<String, AdsLinkEvent> entry : data.entrySet()) {
                 stringMap.put(entry.getKey(), entry.getValue().toJsonString());
             }
-            kvRocksService.atomicReplaceHash(CacheKeyConstants.ADS_LINK_EVENT_MAP, stringMap);
+            replaceHash(CacheKeyConstants.ADS_LINK_EVENT_MAP, stringMap, result);
             result.addCount(data.size());
             log.info("Synced {} - {} records", CacheKeyConstants.ADS_LINK_EVENT_MAP, data.size());
         } catch (Exception e) {
@@ -612,7 +732,7 @@ public class CacheSyncService {
         SyncResult result = new SyncResult(CacheKeyConstants.EVENT_ATTR_COLUMN_MAP);
         try {
             Map<String, String> data = frontDao.getAttrColumnName();
-            kvRocksService.atomicReplaceHash(CacheKeyConstants.EVENT_ATTR_COLUMN_MAP, data);
+            replaceHash(CacheKeyConstants.EVENT_ATTR_COLUMN_MAP, data, result);
             result.addCount(data.size());
             log.info("Synced {} - {} records", CacheKeyConstants.EVENT_ATTR_COLUMN_MAP, data.size());
         } catch (Exception e) {
@@ -627,7 +747,7 @@ public class CacheSyncService {
         SyncResult result = new SyncResult(CacheKeyConstants.BASE_CURRENT_MAP);
         try {
             Map<String, String> data = frontDao.getCurrentKuduTable();
-            kvRocksService.atomicReplaceHash(CacheKeyConstants.BASE_CURRENT_MAP, data);
+            replaceHash(CacheKeyConstants.BASE_CURRENT_MAP, data, result);
             result.addCount(data.size());
             log.info("Synced {} - {} records", CacheKeyConstants.BASE_CURRENT_MAP, data.size());
         } catch (Exception e) {
@@ -642,7 +762,7 @@ public class CacheSyncService {
         SyncResult result = new SyncResult(CacheKeyConstants.OPEN_CDP_APPID_MAP);
         try {
             Map<String, String> data = frontDao.getOpenCdp();
-            kvRocksService.atomicReplaceHash(CacheKeyConstants.OPEN_CDP_APPID_MAP, data);
+            replaceHash(CacheKeyConstants.OPEN_CDP_APPID_MAP, data, result);
             result.addCount(data.size());
             log.info("Synced {} - {} records", CacheKeyConstants.OPEN_CDP_APPID_MAP, data.size());
         } catch (Exception e) {
@@ -657,7 +777,7 @@ public class CacheSyncService {
         SyncResult result = new SyncResult(CacheKeyConstants.YEAR_WEEK);
         try {
             Map<String, String> data = frontDao.getYearWeek();
-            kvRocksService.atomicReplaceHash(CacheKeyConstants.YEAR_WEEK, data);
+            replaceHash(CacheKeyConstants.YEAR_WEEK, data, result);
             result.addCount(data.size());
             log.info("Synced {} - {} records", CacheKeyConstants.YEAR_WEEK, data.size());
         } catch (Exception e) {
@@ -672,7 +792,7 @@ public class CacheSyncService {
         SyncResult result = new SyncResult(CacheKeyConstants.CID_BY_AID_MAP);
         try {
             Map<String, String> data = frontDao.getCompanyIdsByAppId();
-            kvRocksService.atomicReplaceHash(CacheKeyConstants.CID_BY_AID_MAP, data);
+            replaceHash(CacheKeyConstants.CID_BY_AID_MAP, data, result);
             result.addCount(data.size());
             log.info("Synced {} - {} records", CacheKeyConstants.CID_BY_AID_MAP, data.size());
         } catch (Exception e) {
@@ -687,7 +807,7 @@ public class CacheSyncService {
         SyncResult result = new SyncResult(CacheKeyConstants.BUSINESS_MAP);
         try {
             Set<String> data = frontDao.getBusiness();
-            kvRocksService.atomicReplaceSet(CacheKeyConstants.BUSINESS_MAP, data);
+            replaceSet(CacheKeyConstants.BUSINESS_MAP, data, result);
             result.addCount(data.size());
             log.info("Synced {} - {} records", CacheKeyConstants.BUSINESS_MAP, data.size());
         } catch (Exception e) {
@@ -700,30 +820,336 @@ public class CacheSyncService {
 
     // ==================== 辅助方法 ====================
     
+    private void replaceHash(String cacheName, Map<String, String> data, SyncResult result) {
+        writeHash(cacheName, prepareHash(cacheName, data), result);
+    }
+    
+    /**
+     * 写入前的公共处理: 记录变更通知、写出快照、压缩Value
+     */
+    private Map<String, String> prepareHash(String cacheName, Map<String, String> data) {
+        syncMetrics.enterPhase(SyncMetrics.TRANSFORM);
+        changeNotifier.recordSwap(cacheName, data);
+        writeSnapshot(cacheName, data, null);
+        data = valueCompressionService.compress(cacheName, data);
+        syncMetrics.enterPhase(SyncMetrics.WRITE);
+        return data;
+    }
+    
+    private void writeHash(String cacheName, Map<String, String> data, SyncResult result) {
+        // 配置了副本时每个副本各自原子替换
+        for (String name : kvRocksService.replicaNames(cacheName)) {
+            synchronized (smallResults) {
+                if (smallLaneOpen && data.size() <= config.getSmallCacheLane().getMaxEntries()) {
+                    smallHashes.put(name, data);
+                    smallResults.put(name, result);
+                    continue;
+                }
+            }
+            result.recordWrite(kvRocksService.atomicReplaceHash(name, data));
+        }
+        if (isCompactCache(cacheName)) {
+            result.recordWrite(kvRocksService.atomicReplaceCompactHash(cacheName, data));
+        }
+    }
+    
+    /**
+     * 按app拆分的缓存: 配置skip-global时只写入app分区 (并删除遗留的全局Hash)，否则同时整体替换全局Hash
+     */
+    private void replacePartitionedHash(String cacheName, Map<String, String> data, SyncResult result) {
+        data = prepareHash(cacheName, data);
+        if (!appPartitionService.isSkipGlobal()) {
+            writeHash(cacheName, data, result);
+        } else if (kvRocksService.exists(kvRocksService.readKey(cacheName))) {
+            result.recordWrite(kvRocksService.atomicReplaceHash(cacheName, Collections.emptyMap()));
+        }
+        result.recordWrite(appPartitionService.syncPartitions(cacheName, data, result));
+    }
+    
+    private boolean isCompactCache(String cacheName) {
+        CacheSyncConfig.Compact compact = config.getCompact();
+        return compact.isEnabled() && compact.getCaches().contains(cacheName);
+    }
+    
+    private void replaceSet(String cacheName, Set<String> data, SyncResult result) {
+        syncMetrics.enterPhase(SyncMetrics.TRANSFORM);
+        changeNotifier.recordSwap(cacheName, data);
+        writeSnapshot(cacheName, null, data);
+        syncMetrics.enterPhase(SyncMetrics.WRITE);
+        publishBloomFilter(cacheName, data, result);
+        for (String name : kvRocksService.replicaNames(cacheName)) {
+            synchronized (smallResults) {
+                if (smallLaneOpen && data.size() <= config.getSmallCacheLane().getMaxEntries()) {
+                    smallSets.put(name, data);
+                    smallResults.put(name, result);
+                    continue;
+                }
+            }
+            result.recordWrite(kvRocksService.atomicReplaceSet(name, data));
+        }
+    }
+    
+    /**
+     * 按配置写出快照文件到 ${cacheName}.snap.pending，失败不影响同步；
+     * 替换提交成功后由 {@link #publishSnapshots} 原子替换为 ${cacheName}.snap，写入或提交失败时删除
+     * 
+     * 快照只反映全量数据，增量和CDC写入在下次全量后体现
+     */
+    private void writeSnapshot(String cacheName, Map<String, String> hash, Collection<?> set) {
+        CacheSyncConfig.Snapshot snapshot = config.getSnapshot();
+        if (!snapshot.isEnabled() || (!snapshot.getCaches().isEmpty() && !snapshot.getCaches().contains(cacheName))) {
+            return;
+        }
+        Path file = Paths.get(snapshot.getDirectory(), cacheName + SnapshotWriter.FILE_SUFFIX + ".pending");
+        try {
+            long start = System.currentTimeMillis();
+            if (hash != null) {
+                SnapshotWriter.writeHash(file, hash);
+            } else {
+                SnapshotWriter.writeSet(file, set);
+            }
+            pendingSnapshots.put(cacheName, file);
+            log.info("Wrote snapshot {} - {} entries in {} ms", file,
+                    hash != null ? hash.size() : set.size(), System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            log.warn("Failed to write snapshot of {}", cacheName, e);
+        }
+    }
+
+    /**
+     * 成功的缓存发布快照，失败或未完成 (超时、中止) 的缓存删除待发布的快照
+     */
+    private void publishSnapshots(Collection<SyncResult> results) {
+        List<SyncResult> snapshot;
+        synchronized (results) {
+            snapshot = new ArrayList<>(results);
+        }
+        for (SyncResult result : snapshot) {
+            if (!result.isSuccess()) {
+                continue;
+            }
+            Path pending = pendingSnapshots.remove(result.getCacheName());
+            if (pending == null) {
+                continue;
+            }
+            String name = pending.getFileName().toString();
+            Path file = pending.resolveSibling(name.substring(0, name.length() - ".pending".length()));
+            try {
+                Files.move(pending, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (Exception e) {
+                log.warn("Failed to publish snapshot of {}", result.getCacheName(), e);
+            }
+        }
+        for (Iterator<Path> it = pendingSnapshots.values().iterator(); it.hasNext(); ) {
+            Path pending = it.next();
+            it.remove();
+            try {
+                Files.deleteIfExists(pending);
+            } catch (Exception e) {
+                log.warn("Failed to delete pending snapshot {}", pending, e);
+            }
+        }
+    }
+
+    /**
+     * 按配置为集合构建并发布Bloom Filter (含副本)
+     */
+    private void publishBloomFilter(String cacheName, Set<String> data, SyncResult result) {
+        CacheSyncConfig.Bloom bloom = config.getBloom();
+        Double fpp = bloom.getCaches().get(cacheName);
+        if (!bloom.isEnabled() || fpp == null) {
+            return;
+        }
+        BloomFilter filter = BloomFilter.create(data.size(), fpp);
+        for (String member : data) {
+            filter.put(member);
+        }
+        byte[] bytes = filter.toBytes();
+        for (String name : kvRocksService.replicaNames(cacheName)) {
+            result.recordWrite(kvRocksService.atomicReplaceBinary(CacheKeyConstants.bloomName(name), bytes));
+        }
+        log.info("Published bloom filter for {} - {} members, {} bytes, {} hashes",
+                cacheName, data.size(), bytes.length, filter.hashCount());
+    }
+
+    /**
+     * 增量写入后把新增成员补充到已发布的Bloom Filter，避免误判为不存在
+     * 
+     * 误判率随增量上升，全量对账时重新按集合大小构建
+     */
+    private void extendBloomFilter(String cacheName, Set<String> added, SyncResult result) {
+        CacheSyncConfig.Bloom bloom = config.getBloom();
+        if (!bloom.isEnabled() || !bloom.getCaches().containsKey(cacheName) || added.isEmpty()) {
+            return;
+        }
+        BloomFilter filter = kvRocksService.loadBloomFilter(cacheName);
+        if (filter == null) {
+            log.warn("No bloom filter published for {}, skip extending until next full reconcile", cacheName);
+            return;
+        }
+        for (String member : added) {
+            filter.put(member);
+        }
+        byte[] bytes = filter.toBytes();
+        for (String name : kvRocksService.replicaNames(cacheName)) {
+            result.recordWrite(kvRocksService.atomicReplaceBinary(CacheKeyConstants.bloomName(name), bytes));
+        }
+    }
+
+    /**
+     * 整数集合: 按配置额外写入位图 (含副本)，replace-set时只写位图并回收之前写入的Set
+     */
+    private void replaceIntSet(String cacheName, Set<Integer> data, SyncResult result) {
+        CacheSyncConfig.Bitmap bitmap = config.getBitmap();
+        if (bitmap.getCaches().contains(cacheName)) {
+            syncMetrics.enterPhase(SyncMetrics.WRITE);
+            int maxId = BitmapCodec.maxId(data);
+            if (maxId <= bitmap.getMaxId()) {
+                byte[] encoded = BitmapCodec.encode(data);
+                for (String name : kvRocksService.replicaNames(cacheName)) {
+                    result.recordWrite(kvRocksService.atomicReplaceBinary(CacheKeyConstants.bitmapName(name), encoded));
+                }
+                if (bitmap.isReplaceSet()) {
+                    changeNotifier.recordSwap(cacheName, data);
+                    writeSnapshot(cacheName, null, data);
+                    retireSet(cacheName, result);
+                    return;
+                }
+            } else {
+                log.warn("Skip bitmap for {}, max id {} exceeds {}", cacheName, maxId, bitmap.getMaxId());
+            }
+        }
+        replaceSet(cacheName, toStringSet(data), result);
+    }
+    
+    /**
+     * 只写位图后删除之前写入的Set (含副本)，避免消费方和增量继续读写过期的Set
+     */
+    private void retireSet(String cacheName, SyncResult result) {
+        for (String name : kvRocksService.replicaNames(cacheName)) {
+            if (kvRocksService.exists(kvRocksService.readKey(name))) {
+                log.info("Retiring set {} replaced by bitmap", name);
+                result.recordWrite(kvRocksService.atomicReplaceSet(name, Collections.emptySet()));
+            }
+        }
+    }
+    
+    private void openSmallCacheLane() {
+        synchronized (smallResults) {
+            smallHashes.clear();
+            smallSets.clear();
+            smallResults.clear();
+            smallLaneOpen = config.getSmallCacheLane().isEnabled();
+        }
+    }
+    
+    /**
+     * 合并写入小缓存，之后完成的任务(如超时任务)各自写入
+     */
+    private void flushSmallCacheLane() {
+        Map<String, Map<String, String>> hashes;
+        Map<String, Set<String>> sets;
+        Map<String, SyncResult> results;
+        synchronized (smallResults) {
+            if (!smallLaneOpen) {
+                return;
+            }
+            smallLaneOpen = false;
+            hashes = new HashMap<>(smallHashes);
+            sets = new HashMap<>(smallSets);
+            results = new HashMap<>(smallResults);
+        }
+        
+        List<String> failedCaches;
+        Map<String, WriteStats> writeStats = new HashMap<>();
+        try {
+            failedCaches = kvRocksService.batchReplaceSmall(hashes, sets, writeStats);
+        } catch (Exception e) {
+            log.error("Small cache lane flush failed", e);
+            failedCaches = new ArrayList<>(results.keySet());
+        }
+        for (Map.Entry<String, WriteStats> entry : writeStats.entrySet()) {
+            SyncResult result = results.get(entry.getKey());
+            if (result != null) {
+                result.recordWrite(entry.getValue());
+            }
+        }
+        for (String cacheName : failedCaches) {
+            SyncResult result = results.get(cacheName);
+            if (result != null) {
+                result.fail("Small cache lane write failed");
+            }
+        }
+    }
+    
     private Map<String, String> toStringMap(Map<String, Integer> map) {
+        syncMetrics.enterPhase(SyncMetrics.TRANSFORM);
+        Object event = syncEvents.beginTransform();
         Map<String, String> result = new HashMap<>();
         for (Map.Entry<String, Integer> entry : map.entrySet()) {
             result.put(entry.getKey(), String.valueOf(entry.getValue()));
         }
+        syncEvents.endTransform(event, result.size());
         return result;
     }
 
     private Set<String> toStringSet(Set<Integer> set) {
+        syncMetrics.enterPhase(SyncMetrics.TRANSFORM);
+        Object event = syncEvents.beginTransform();
         Set<String> result = new HashSet<>();
         for (Integer item : set) {
             result.add(String.valueOf(item));
         }
+        syncEvents.endTransform(event, result.size());
         return result;
     }
 
     private Map<String, String> toJsonStringMap(Map<String, List<String>> map) {
+        syncMetrics.enterPhase(SyncMetrics.TRANSFORM);
+        Object event = syncEvents.beginTransform();
         Map<String, String> result = new HashMap<>();
         for (Map.Entry<String, List<String>> entry : map.entrySet()) {
             result.put(entry.getKey(), JSON.toJSONString(entry.getValue()));
         }
+        syncEvents.endTransform(event, result.size());
         return result;
     }
 
+    /**
+     * 统一提交暂存的替换，提交失败的缓存标记为失败
+     */
+    /**
+     * 未到达提交的运行 (中断或异常): 关闭小缓存通道，放弃暂存的替换和提交后动作并回收临时Key，
+     * 避免之后的写入 (刷新、CDC) 继续进入暂存队列而一直不生效
+     */
+    private void abortRun() {
+        synchronized (smallResults) {
+            smallLaneOpen = false;
+            smallHashes.clear();
+            smallSets.clear();
+            smallResults.clear();
+        }
+        if (config.isTwoPhaseCommit()) {
+            kvRocksService.abortStaged();
+        }
+        changeNotifier.clearPending();
+        publishSnapshots(Collections.emptyList());
+    }
+
+    private void commitStaged() {
+        Set<String> failedCaches = new HashSet<>();
+        for (String cacheName : kvRocksService.commitStaged()) {
+            failedCaches.add(CacheKeyConstants.primaryNameOf(cacheName));
+        }
+        synchronized (syncResults) {
+            for (SyncResult result : syncResults) {
+                if (failedCaches.contains(result.getCacheName())) {
+                    result.fail("Commit failed");
+                }
+            }
+        }
+    }
+
     private void recordSyncStart() {
         SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
         String timestamp = sdf.format(new Date());
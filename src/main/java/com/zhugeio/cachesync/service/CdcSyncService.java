@@ -0,0 +1,244 @@
+package com.zhugeio.cachesync.service;
+
+import com.zhugeio.cachesync.cdc.BinlogRowChangeSource;
+import com.zhugeio.cachesync.cdc.InMemoryRowChangeSource;
+import com.zhugeio.cachesync.cdc.RowChange;
+import com.zhugeio.cachesync.cdc.RowChangeSource;
+import com.zhugeio.cachesync.config.CacheSyncConfig;
+import com.zhugeio.cachesync.constants.CacheKeyConstants;
+import com.zhugeio.cachesync.entity.CacheDelta;
+import com.zhugeio.cachesync.entity.SyncResult;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * CDC同步服务
+ *
+ * 行变更攒批 (batch-size或flush-interval-ms) 后经 {@link RowDeltaMapper} 转换为字段级变更，
+ * 打包写入当前生效的Key；写入成功后持久化来源位点 sync:cdc:position
+ *
+ * 全量同步期间暂停写入，变更在内存中累积 (超过max-buffered-batches时阻塞读取)，全量切换完成后再应用，避免被全量快照覆盖；
+ * 无法按行推导的变更 (如虚拟属性定义) 请求提前执行一次全量
+ */
+@Slf4j
+@Service
+public class CdcSyncService {
+
+    @Autowired
+    private RowDeltaMapper rowDeltaMapper;
+
+    @Autowired
+    private KVRocksService kvRocksService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private CacheSyncConfig config;
+
+    private final List<RowChange> buffer = new ArrayList<>();
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private RowChangeSource source;
+    private ScheduledExecutorService flusher;
+    private String savedPosition;
+    private volatile boolean fullSyncRequested;
+
+    public boolean isEnabled() {
+        return config.getCdc().isEnabled();
+    }
+
+    public synchronized void start() throws Exception {
+        if (source != null) {
+            return;
+        }
+        CacheSyncConfig.Cdc options = config.getCdc();
+        source = createSource(options);
+        savedPosition = kvRocksService.getValue(CacheKeyConstants.CDC_POSITION);
+
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "cdc-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flushQuietly,
+                options.getFlushIntervalMs(), options.getFlushIntervalMs(), TimeUnit.MILLISECONDS);
+
+        source.start(savedPosition, this::onChange);
+        log.info("CDC started, source={}, tables={}, position={}", options.getSource(), options.getTables(), savedPosition);
+    }
+
+    private RowChangeSource createSource(CacheSyncConfig.Cdc options) throws Exception {
+        Set<String> tables = new LinkedHashSet<>();
+        for (String table : options.getTables()) {
+            if (rowDeltaMapper.isSupported(table)) {
+                tables.add(table);
+            } else {
+                log.warn("Unsupported CDC table: {}", table);
+            }
+        }
+        if ("memory".equalsIgnoreCase(options.getSource())) {
+            InMemoryRowChangeSource memorySource = new InMemoryRowChangeSource();
+            if (options.getReplayFile() != null && !options.getReplayFile().isEmpty()) {
+                memorySource.loadJsonLines(Paths.get(options.getReplayFile()));
+            }
+            return memorySource;
+        }
+        return new BinlogRowChangeSource(options, jdbcTemplate, tables);
+    }
+
+    public RowChangeSource getSource() {
+        return source;
+    }
+
+    /**
+     * 在暂停CDC写入期间执行 (如全量同步)
+     */
+    public void runExclusive(Runnable task) {
+        writeLock.lock();
+        try {
+            task.run();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * 未在执行全量等互斥任务时执行，否则立即返回false
+     */
+    public boolean tryRunExclusive(Runnable task) {
+        if (!writeLock.tryLock()) {
+            return false;
+        }
+        try {
+            task.run();
+            return true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * 取出并清除提前全量的请求
+     */
+    public boolean consumeFullSyncRequest() {
+        boolean requested = fullSyncRequested;
+        fullSyncRequested = false;
+        return requested;
+    }
+
+    private void onChange(RowChange change) {
+        CacheSyncConfig.Cdc options = config.getCdc();
+        long maxBuffered = (long) options.getBatchSize() * options.getMaxBufferedBatches();
+        boolean batchFull;
+        synchronized (buffer) {
+            // 写入跟不上或全量同步暂停写入时阻塞读取，由来源端缓冲
+            while (buffer.size() >= maxBuffered) {
+                try {
+                    buffer.wait(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            buffer.add(change);
+            batchFull = buffer.size() == options.getBatchSize();
+        }
+        if (batchFull) {
+            flusher.execute(this::flushQuietly);
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception e) {
+            log.error("CDC flush failed, will retry", e);
+        }
+    }
+
+    /**
+     * 写入已累积的变更，失败时变更放回队首等待重试
+     */
+    public void flush() {
+        if (!writeLock.tryLock()) {
+            return;
+        }
+        try {
+            // 先取位点再取变更，保证位点之前的变更都在本批中
+            String position = source.position();
+            List<RowChange> batch;
+            synchronized (buffer) {
+                batch = new ArrayList<>(buffer);
+                buffer.clear();
+                buffer.notifyAll();
+            }
+
+            try {
+                if (!batch.isEmpty()) {
+                    applyBatch(batch);
+                }
+            } catch (RuntimeException e) {
+                synchronized (buffer) {
+                    buffer.addAll(0, batch);
+                }
+                throw e;
+            }
+
+            if (position != null && !position.equals(savedPosition)) {
+                kvRocksService.setValue(CacheKeyConstants.CDC_POSITION, position);
+                savedPosition = position;
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void applyBatch(List<RowChange> batch) {
+        List<RowChange> supported = new ArrayList<>(batch.size());
+        for (RowChange change : batch) {
+            if (rowDeltaMapper.isSupported(change.getTable())) {
+                supported.add(change);
+            }
+        }
+        // 整批的关联查询 (事件信息、有效app、迁移app) 一次完成
+        RowDeltaMapper.Lookups lookups = rowDeltaMapper.lookup(supported);
+        Map<String, CacheDelta> deltas = new LinkedHashMap<>();
+        for (RowChange change : supported) {
+            if (!rowDeltaMapper.derive(change, deltas, lookups)) {
+                log.info("CDC change of {} requires full sync", change.getTable());
+                fullSyncRequested = true;
+            }
+        }
+
+        SyncResult result = new SyncResult("cdc");
+        rowDeltaMapper.apply(deltas.values(), result);
+        result.finish();
+        log.debug("CDC applied {} changes - {}", batch.size(), result);
+    }
+
+    @PreDestroy
+    public synchronized void shutdown() {
+        if (source == null) {
+            return;
+        }
+        source.stop();
+        flusher.shutdown();
+        try {
+            flush();
+        } catch (Exception e) {
+            log.error("CDC final flush failed", e);
+        }
+        source = null;
+        log.info("CDC stopped at {}", savedPosition);
+    }
+}
@@ -0,0 +1,139 @@
+package com.zhugeio.cachesync.service;
+
+import com.alibaba.fastjson.JSON;
+import com.zhugeio.cachesync.config.CacheSyncConfig;
+import com.zhugeio.cachesync.constants.CacheKeyConstants;
+import com.zhugeio.cachesync.entity.CacheDelta;
+import com.zhugeio.cachesync.entity.ChangeNotification;
+import com.zhugeio.cachesync.entity.SyncResult;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.codec.digest.MurmurHash3;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 缓存变更通知
+ *
+ * 整体替换: 写入时记录新数据的摘要，替换生效 (直接写入、小缓存合并提交或两阶段提交) 后发布
+ * 增量写入: 写入后发布变化的Field/成员
+ *
+ * 摘要为各条目MurmurHash3的和，与条目顺序无关
+ */
+@Slf4j
+@Service
+public class ChangeNotifier {
+
+    @Autowired
+    private KVRocksService kvRocksService;
+
+    @Autowired
+    private CacheSyncConfig config;
+
+    /**
+     * 已写入、尚未生效的缓存 -> 摘要
+     */
+    private final Map<String, String> pendingSwaps = new ConcurrentHashMap<>();
+
+    public boolean isEnabled() {
+        return config.getNotify().isEnabled();
+    }
+
+    public void recordSwap(String cacheName, Map<String, String> data) {
+        if (!isEnabled()) {
+            return;
+        }
+        long digest = 0;
+        for (Map.Entry<String, String> entry : data.entrySet()) {
+            digest += hash(entry.getKey() + '\0' + entry.getValue());
+        }
+        pendingSwaps.put(cacheName, Long.toHexString(digest));
+    }
+
+    public void recordSwap(String cacheName, Collection<?> members) {
+        if (!isEnabled()) {
+            return;
+        }
+        long digest = 0;
+        for (Object member : members) {
+            digest += hash(String.valueOf(member));
+        }
+        pendingSwaps.put(cacheName, Long.toHexString(digest));
+    }
+
+    /**
+     * 丢弃未生效的记录 (同步开始或中止时)
+     */
+    public void clearPending() {
+        pendingSwaps.clear();
+    }
+
+    /**
+     * 发布已成功替换的缓存
+     */
+    public void publishSwaps(Collection<SyncResult> results) {
+        if (!isEnabled()) {
+            return;
+        }
+        List<SyncResult> snapshot;
+        synchronized (results) {
+            snapshot = new ArrayList<>(results);
+        }
+        for (SyncResult result : snapshot) {
+            String digest = pendingSwaps.remove(result.getCacheName());
+            if (digest == null || !result.isSuccess()) {
+                continue;
+            }
+            ChangeNotification notification = newNotification(ChangeNotification.SWAP, result.getCacheName());
+            notification.setDigest(digest);
+            publish(notification);
+        }
+    }
+
+    /**
+     * 发布字段级增量
+     */
+    public void publishDelta(CacheDelta delta) {
+        if (!isEnabled() || delta.isEmpty()) {
+            return;
+        }
+        ChangeNotification notification = newNotification(ChangeNotification.DELTA, delta.getCacheName());
+        if (delta.size() <= config.getNotify().getMaxFields()) {
+            List<String> fields = new ArrayList<>(delta.size());
+            fields.addAll(delta.getPuts().keySet());
+            fields.addAll(delta.getDeletes());
+            fields.addAll(delta.getAdds());
+            fields.addAll(delta.getRemoves());
+            notification.setFields(fields);
+        }
+        publish(notification);
+    }
+
+    private ChangeNotification newNotification(String type, String cacheName) {
+        ChangeNotification notification = new ChangeNotification();
+        notification.setType(type);
+        notification.setCache(cacheName);
+        notification.setTimestamp(System.currentTimeMillis());
+        if (kvRocksService.isGenerationEnabled()) {
+            notification.setGeneration(kvRocksService.getCurrentGeneration(cacheName));
+        }
+        return notification;
+    }
+
+    private void publish(ChangeNotification notification) {
+        try {
+            kvRocksService.publish(CacheKeyConstants.SYNC_CHANGES_CHANNEL, JSON.toJSONString(notification));
+        } catch (Exception e) {
+            // 通知失败不影响同步，消费方仍可依赖sync:version
+            log.warn("Failed to publish change of {}: {}", notification.getCache(), e.getMessage());
+        }
+    }
+
+    private static long hash(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        return MurmurHash3.hash128x64(bytes, 0, bytes.length, 0)[0];
+    }
+}
@@ -0,0 +1,303 @@
+package com.zhugeio.cachesync.service;
+
+import com.zhugeio.cachesync.config.CacheSyncConfig;
+import com.zhugeio.cachesync.constants.CacheKeyConstants;
+import com.zhugeio.cachesync.dao.FrontDao;
+import com.zhugeio.cachesync.entity.CacheDelta;
+import com.zhugeio.cachesync.entity.SyncResult;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基于水位的增量同步服务
+ *
+ * 水位记录在 sync:watermark，每次只读取水位之后的新记录并直接写入当前生效的Key；
+ * 没有水位或超过full-reconcile-hours时由调用方执行全量对账，提交成功后由 {@link #completeFullReconcile} 重置水位
+ *
+ * 元数据表 (company_app / event / event_attr / user_prop_meta / device_prop) 变化的行经 {@link RowDeltaMapper}
+ * 转换为各缓存的字段级更新，
+ * 已增量更新的缓存本次不再全量同步；物理删除和改名遗留的旧Field由全量对账清理
+ */
+@Slf4j
+@Service
+public class IncrementalSyncService {
+
+    @Autowired
+    private KVRocksService kvRocksService;
+
+    @Autowired
+    private FrontDao frontDao;
+
+    @Autowired
+    private CacheSyncConfig config;
+
+    @Autowired
+    private RowDeltaMapper rowDeltaMapper;
+
+    @Autowired
+    private ChangeNotifier changeNotifier;
+
+    /**
+     * 本次走全量的元数据表 -> 全量读取前的水位，全量成功后写入
+     */
+    private final Map<String, String> pendingFullReconcile = new ConcurrentHashMap<>();
+
+    public boolean isEnabled() {
+        return config.getIncremental().isEnabled();
+    }
+
+    /**
+     * 是否可以走增量: 已启用、有水位、未到全量对账时间且生效Key存在
+     */
+    public boolean canApplyIncrement(String name) {
+        return canApplyIncrement(name, name);
+    }
+
+    /**
+     * @param liveCache 用于检查生效Key是否存在的缓存
+     */
+    public boolean canApplyIncrement(String name, String liveCache) {
+        if (!isEnabled()) {
+            return false;
+        }
+        Map<String, String> watermarks = kvRocksService.hgetAll(CacheKeyConstants.SYNC_WATERMARK);
+        String fullAt = watermarks.get(name + ":fullAt");
+        if (watermarks.get(name) == null || fullAt == null) {
+            return false;
+        }
+        long interval = TimeUnit.HOURS.toMillis(config.getIncremental().getFullReconcileHours());
+        if (System.currentTimeMillis() - Long.parseLong(fullAt) >= interval) {
+            log.info("Full reconcile due for {}", name);
+            return false;
+        }
+        return kvRocksService.exists(kvRocksService.readKey(liveCache));
+    }
+
+    public long getWatermark(String name) {
+        String value = getWatermarkValue(name);
+        return value == null ? 0L : Long.parseLong(value);
+    }
+
+    public String getWatermarkValue(String name) {
+        return kvRocksService.hgetAll(CacheKeyConstants.SYNC_WATERMARK).get(name);
+    }
+
+    public void saveWatermark(String name, long watermark) {
+        saveWatermark(name, String.valueOf(watermark));
+    }
+
+    public void saveWatermark(String name, String watermark) {
+        kvRocksService.hset(CacheKeyConstants.SYNC_WATERMARK, Collections.singletonMap(name, watermark));
+    }
+
+    /**
+     * 全量对账完成后重置水位和对账时间
+     *
+     * @param watermark 全量读取前的最大水位，对账期间新增的记录下次增量会再次写入
+     */
+    public void markFullReconcile(String name, long watermark) {
+        markFullReconcile(name, String.valueOf(watermark));
+    }
+
+    /**
+     * 全量替换完成后登记对账，两阶段提交时替换尚未生效，由 {@link #completeFullReconcile} 在提交成功后重置水位
+     *
+     * @param name 缓存名，该缓存同步成功时重置
+     */
+    public void deferFullReconcile(String name, long watermark) {
+        pendingFullReconcile.put(name, String.valueOf(watermark));
+    }
+
+    public void markFullReconcile(String name, String watermark) {
+        Map<String, String> fields = new HashMap<>();
+        fields.put(name, watermark);
+        fields.put(name + ":fullAt", String.valueOf(System.currentTimeMillis()));
+        kvRocksService.hset(CacheKeyConstants.SYNC_WATERMARK, fields);
+    }
+
+    // ==================== 元数据表 ====================
+
+    /**
+     * 对可以增量的元数据表应用变化的行，其余的表记录全量前水位
+     *
+     * @param results 增量结果追加到该列表
+     * @return 本次已增量更新、无需全量同步的缓存
+     */
+    public Set<String> applyMetadataIncrements(List<SyncResult> results) {
+        pendingFullReconcile.clear();
+        if (!isEnabled()) {
+            return Collections.emptySet();
+        }
+
+        Set<String> appliedTables = new HashSet<>();
+        for (Map.Entry<String, String> entry : config.getIncremental().getMetadataColumns().entrySet()) {
+            String table = entry.getKey();
+            if (!rowDeltaMapper.isSupported(table)) {
+                log.warn("Unsupported incremental table: {}", table);
+                continue;
+            }
+            String maxWatermark = frontDao.getMaxWatermark(table, entry.getValue());
+            if (maxWatermark == null) {
+                continue;
+            }
+
+            boolean applied = false;
+            if (canApplyIncrement(table, rowDeltaMapper.cachesSourcedFrom(table).get(0))) {
+                SyncResult result = new SyncResult(table + ":incremental");
+                result.setIncremental(true);
+                try {
+                    applied = applyTableIncrement(table, entry.getValue(), result);
+                } catch (Exception e) {
+                    log.error("Incremental sync of {} failed, fall back to full", table, e);
+                }
+                result.finish();
+                if (applied) {
+                    results.add(result);
+                }
+            }
+
+            if (applied) {
+                saveWatermark(table, maxWatermark);
+                appliedTables.add(table);
+            } else {
+                pendingFullReconcile.put(table, maxWatermark);
+            }
+        }
+
+        return rowDeltaMapper.cachesCoveredBy(appliedTables);
+    }
+
+    /**
+     * 全量同步结束后，来源缓存全部成功的表 (或自身同步成功的缓存) 重置水位和对账时间
+     */
+    public void completeFullReconcile(List<SyncResult> results) {
+        Set<String> succeeded = new HashSet<>();
+        synchronized (results) {
+            for (SyncResult result : results) {
+                if (result.isSuccess()) {
+                    succeeded.add(result.getCacheName());
+                }
+            }
+        }
+        for (Map.Entry<String, String> entry : pendingFullReconcile.entrySet()) {
+            List<String> caches = rowDeltaMapper.cachesSourcedFrom(entry.getKey());
+            if (caches.isEmpty()) {
+                caches = Collections.singletonList(entry.getKey());
+            }
+            if (succeeded.containsAll(caches)) {
+                markFullReconcile(entry.getKey(), entry.getValue());
+                log.info("Full reconcile completed for {}, watermark {}", entry.getKey(), entry.getValue());
+            }
+        }
+        pendingFullReconcile.clear();
+    }
+
+    /**
+     * 按page-size分页读取变化的行，每页写入后推进水位，中途失败时下次从已写入的位置继续
+     *
+     * @return false表示变化涉及无法增量推导的数据 (如虚拟属性定义)，需要全量
+     */
+    private boolean applyTableIncrement(String table, String column, SyncResult result) {
+        String watermark = getWatermarkValue(table);
+        List<String> keyColumns = rowDeltaMapper.keyColumnsOf(table);
+        int pageSize = config.getIncremental().getPageSize();
+
+        Object[] after = null;
+        int changedRows = 0;
+        int updates = 0;
+        while (true) {
+            List<Map<String, Object>> rows = frontDao.getRowsSince(table, rowDeltaMapper.columnsOf(table),
+                    column, watermark, keyColumns, after, pageSize);
+            if (rows.isEmpty()) {
+                break;
+            }
+
+            Map<String, CacheDelta> deltas = new LinkedHashMap<>();
+            boolean derivable = rowDeltaMapper.derive(table, rows, deltas);
+            if (!derivable) {
+                log.info("Changes of {} require full sync", table);
+                return false;
+            }
+
+            rowDeltaMapper.apply(deltas.values(), result);
+            updates += deltas.values().stream().mapToInt(CacheDelta::size).sum();
+            changedRows += rows.size();
+
+            Map<String, Object> last = rows.get(rows.size() - 1);
+            after = new Object[keyColumns.size() + 1];
+            after[0] = last.get(FrontDao.WATERMARK_ALIAS);
+            for (int i = 0; i < keyColumns.size(); i++) {
+                after[i + 1] = last.get(keyColumns.get(i));
+            }
+            // 包含边界值读取，水位相同的行下次会重复写入，结果不变
+            saveWatermark(table, String.valueOf(after[0]));
+            if (rows.size() < pageSize) {
+                break;
+            }
+        }
+
+        result.addCount(changedRows);
+        result.setChangedFields(updates);
+        log.info("Applied incremental {} - {} changed rows, {} cache updates", table, changedRows, updates);
+        return true;
+    }
+
+    // ==================== adFrequencySet ====================
+
+    public long getAdFrequencyMaxWatermark() {
+        return frontDao.getAdsFrequencyMaxWatermark(config.getIncremental().getAdFrequencyColumn());
+    }
+
+    /**
+     * 读取水位之后新增的ads_frequency_first记录，SADD到生效的adFrequencySet
+     *
+     * 按 (水位, event_id, link_id, zg_id) 分页，水位列不唯一时同一水位值跨页的记录不会遗漏；
+     * 每页写入后推进水位，下次从该水位值 (含) 重新读取，同一水位值之后提交的记录也能读到，重复SADD结果不变
+     *
+     * @return 新增的成员
+     */
+    public Set<String> appendAdFrequency(SyncResult result) {
+        CacheSyncConfig.Incremental options = config.getIncremental();
+        String name = CacheKeyConstants.AD_FREQUENCY_SET;
+        List<String> liveKeys = new ArrayList<>();
+        for (String replicaName : kvRocksService.replicaNames(name)) {
+            liveKeys.add(kvRocksService.readKey(replicaName));
+        }
+        long watermark = getWatermark(name);
+
+        Set<String> added = new HashSet<>();
+        Object[] after = null;
+        while (true) {
+            List<Object[]> rows = frontDao.getAdsFrequencyAfter(
+                    options.getAdFrequencyColumn(), watermark, after, options.getPageSize());
+            if (rows.isEmpty()) {
+                break;
+            }
+            Set<String> members = new LinkedHashSet<>();
+            for (Object[] row : rows) {
+                members.add(row[1] + "_" + row[2] + "_" + row[3]);
+            }
+            for (String liveKey : liveKeys) {
+                result.recordWrite(kvRocksService.applySetDelta(liveKey, members, null));
+            }
+            added.addAll(members);
+            after = rows.get(rows.size() - 1);
+            watermark = (Long) after[0];
+            saveWatermark(name, watermark);
+            CacheDelta delta = new CacheDelta(name);
+            members.forEach(member -> delta.member(member, true));
+            changeNotifier.publishDelta(delta);
+            if (rows.size() < options.getPageSize()) {
+                break;
+            }
+        }
+
+        log.info("Appended {} - {} new records, watermark {}", name, added.size(), watermark);
+        return added;
+    }
+}
@@ -1,15 +1,28 @@
 package com.zhugeio.cachesync.service;
 
+import com.zhugeio.cachesync.codec.BloomFilter;
+import com.zhugeio.cachesync.codec.CompactIdCodec;
 import com.zhugeio.cachesync.config.CacheSyncConfig;
+import com.zhugeio.cachesync.constants.CacheKeyConstants;
+import com.zhugeio.cachesync.entity.WriteStats;
+import com.zhugeio.cachesync.metrics.SyncEvents;
+import com.zhugeio.cachesync.metrics.SyncMetrics;
 import io.lettuce.core.*;
 import io.lettuce.core.api.StatefulRedisConnection;
-import io.lettuce.core.api.async.RedisAsyncCommands;
 import io.lettuce.core.api.sync.RedisCommands;
+import io.lettuce.core.codec.ByteArrayCodec;
+import io.lettuce.core.codec.RedisCodec;
+import io.lettuce.core.codec.StringCodec;
 import io.lettuce.core.cluster.ClusterClientOptions;
 import io.lettuce.core.cluster.RedisClusterClient;
+import io.lettuce.core.cluster.SlotHash;
 import io.lettuce.core.cluster.api.StatefulRedisClusterConnection;
-import io.lettuce.core.cluster.api.async.RedisAdvancedClusterAsyncCommands;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
 import io.lettuce.core.cluster.api.sync.RedisAdvancedClusterCommands;
+import io.lettuce.core.cluster.api.sync.RedisClusterCommands;
+import io.lettuce.core.cluster.models.partitions.RedisClusterNode;
+import io.lettuce.core.pubsub.RedisPubSubAdapter;
+import io.lettuce.core.pubsub.StatefulRedisPubSubConnection;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
@@ -17,11 +30,21 @@ import org.springframework.stereotype.Service;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+import java.util.function.UnaryOperator;
 
 /**
  * KVRocks服务 - 基于Lettuce
@@ -33,6 +56,8 @@ import java.util.stream.Collectors;
 @Service
 public class KVRocksService {
 
+    private static final RedisCodec<String, byte[]> BINARY_CODEC = RedisCodec.of(StringCodec.UTF8, ByteArrayCodec.INSTANCE);
+
     @Value("${spring.redis.host:localhost}")
     private String host;
 
@@ -51,10 +76,44 @@ public class KVRocksService {
     @Autowired
     private CacheSyncConfig config;
 
+    @Autowired
+    private SyncMetrics syncMetrics;
+
+    @Autowired
+    private SyncEvents syncEvents;
+
     private RedisClusterClient clusterClient;
     private RedisClient standaloneClient;
     private StatefulRedisClusterConnection<String, String> clusterConnection;
     private StatefulRedisConnection<String, String> standaloneConnection;
+    // 二进制值连接 (位图、Bloom Filter等)，Key仍为字符串
+    private StatefulRedisClusterConnection<String, byte[]> binaryClusterConnection;
+    private StatefulRedisConnection<String, byte[]> binaryStandaloneConnection;
+    // 二进制Field连接 (v2紧凑格式)
+    private StatefulRedisClusterConnection<byte[], byte[]> rawClusterConnection;
+    private StatefulRedisConnection<byte[], byte[]> rawStandaloneConnection;
+
+    private final Map<String, CachedPointer> pointerCache = new ConcurrentHashMap<>();
+
+    /**
+     * 服务端是否支持SMISMEMBER，首次返回unknown command后改用SISMEMBER
+     */
+    private volatile boolean smismemberSupported = true;
+    private final ExecutorService reclaimExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "kvrocks-reclaim");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile Consumer<String> keyRetirer = this::unlink;
+    private volatile BiFunction<String, String, CompletableFuture<String>> valueDecoder;
+    private List<PendingSwap> stagedSwaps;
+    private Map<String, List<Runnable>> postCommitActions;
+    private final Map<String, AdaptiveBatchSizer> batchSizers = new ConcurrentHashMap<>();
+    private WriteRateLimiter rateLimiter;
+    private volatile String deltaScriptSha;
+    private volatile Set<String> publishedReplicas = Collections.emptySet();
+    private volatile long publishedReplicasExpireAt;
+    private volatile boolean scriptingAvailable = true;
 
     @PostConstruct
     public void init() {
@@ -65,6 +124,8 @@ public class KVRocksService {
                 initStandaloneMode();
             }
             
+            rateLimiter = new WriteRateLimiter(config, this::probeLatencyMs);
+            
             if (testConnection()) {
                 log.info("✅ KVRocks连接初始化成功：{}:{} ({}模式)", 
                         host, port, isCluster ? "集群" : "单机");
@@ -94,6 +155,8 @@ public class KVRocksService {
                 .build());
         
         clusterConnection = clusterClient.connect();
+        binaryClusterConnection = clusterClient.connect(BINARY_CODEC);
+        rawClusterConnection = clusterClient.connect(ByteArrayCodec.INSTANCE);
         log.info("✅ Lettuce集群连接初始化成功：{}:{}", host, port);
     }
 
@@ -114,6 +177,8 @@ public class KVRocksService {
                 .build());
         
         standaloneConnection = standaloneClient.connect();
+        binaryStandaloneConnection = standaloneClient.connect(BINARY_CODEC);
+        rawStandaloneConnection = standaloneClient.connect(ByteArrayCodec.INSTANCE);
         log.info("✅ Lettuce单机连接初始化成功：{}:{}", host, port);
     }
 
@@ -132,6 +197,20 @@ public class KVRocksService {
         }
     }
 
+    /**
+     * 限速探测: 配置了probe-key时HGET该Key，否则PING
+     */
+    private long probeLatencyMs() {
+        CacheSyncConfig.RateLimit rateLimit = config.getRateLimit();
+        long start = System.nanoTime();
+        if (rateLimit.getProbeKey() != null && !rateLimit.getProbeKey().isEmpty()) {
+            commands().hget(rateLimit.getProbeKey(), rateLimit.getProbeField());
+        } else {
+            commands().ping();
+        }
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
     // ==================== 原子性替换操作 ====================
 
     /**
@@ -141,297 +220,1738 @@ public class KVRocksService {
      * 例如: {appKeyAppIdMap}:temp:123 和 appKeyAppIdMap 会哈希到同一slot
      * 
      * 注意: 目标key也需要加Hash Tag才能保证同slot
+     * 
+     * 开启代际模式时写入 {cacheName}:gen:${n} 后切换指针，见 {@link #flipGeneration}
      */
-    public void atomicReplaceHash(String cacheName, Map<String, String> data) {
-        if (data == null || data.isEmpty()) {
+    public WriteStats atomicReplaceHash(String cacheName, Map<String, String> data) {
+        if ((data == null || data.isEmpty()) && !isGenerationEnabled()) {
             log.warn("Empty data for cache: {}, will delete key", cacheName);
-            deleteKey(cacheName);
-            return;
+            if (!stage(new PendingSwap(cacheName, null, isCluster ? "{" + cacheName + "}" : cacheName, -1))) {
+                deleteKey(cacheName);
+            }
+            return new WriteStats();
         }
 
-        // 集群模式下使用Hash Tag确保同一slot
-        String finalKey = isCluster ? "{" + cacheName + "}" : cacheName;
-        String tempKey = "{" + cacheName + "}:temp:" + System.currentTimeMillis();
+        PendingSwap swap = prepareSwap(cacheName);
+        WriteStats stats = writeAndSwap(swap, "hash", key -> syncBatchHSet(key, data, timeoutMs));
+        log.debug("Atomic replace hash completed: {} ({} fields)", cacheName, data == null ? 0 : data.size());
+        return stats;
+    }
 
-        try {
-            // 1. 批量写入临时Key
-            syncBatchHSet(tempKey, data, timeoutMs);
-            
-            // 2. 原子替换
-            if (isCluster) {
-                clusterConnection.sync().rename(tempKey, finalKey);
-            } else {
-                standaloneConnection.sync().rename(tempKey, finalKey);
+    /**
+     * 原子性替换指定Key的Hash，Key本身已包含Hash Tag (如按app拆分的缓存)
+     * 临时Key为 ${key}:temp:${ts}，与目标Key同slot；不参与代际切换
+     *
+     * @param owner 所属缓存，两阶段提交失败时归到该缓存的结果
+     */
+    public WriteStats atomicReplaceHashKey(String owner, String key, Map<String, String> data) {
+        if (data == null || data.isEmpty()) {
+            if (!stage(new PendingSwap(key, null, key, -1, owner))) {
+                deleteRawKey(key);
             }
-            
-            log.debug("Atomic replace hash completed: {} ({} fields)", cacheName, data.size());
-        } catch (Exception e) {
-            // 清理临时Key
-            try {
-                if (isCluster) {
-                    clusterConnection.sync().del(tempKey);
-                } else {
-                    standaloneConnection.sync().del(tempKey);
-                }
-            } catch (Exception ignored) {}
-            
-            log.error("Atomic replace hash failed: {}", cacheName, e);
-            throw new RuntimeException("Atomic replace hash failed: " + cacheName, e);
+            return new WriteStats();
         }
+        PendingSwap swap = new PendingSwap(key, key + ":temp:" + System.currentTimeMillis(), key, -1, owner);
+        return writeAndSwap(swap, "hash", tempKey -> syncBatchHSet(tempKey, data, timeoutMs));
     }
 
     /**
      * 原子性替换Set（无缝切换）
      */
-    public void atomicReplaceSet(String cacheName, Set<String> data) {
-        if (data == null || data.isEmpty()) {
+    public WriteStats atomicReplaceSet(String cacheName, Set<String> data) {
+        if ((data == null || data.isEmpty()) && !isGenerationEnabled()) {
             log.warn("Empty data for cache: {}, will delete key", cacheName);
-            deleteKey(cacheName);
-            return;
+            if (!stage(new PendingSwap(cacheName, null, isCluster ? "{" + cacheName + "}" : cacheName, -1))) {
+                deleteKey(cacheName);
+            }
+            return new WriteStats();
         }
 
-        // 集群模式下使用Hash Tag
-        String finalKey = isCluster ? "{" + cacheName + "}" : cacheName;
-        String tempKey = "{" + cacheName + "}:temp:" + System.currentTimeMillis();
+        PendingSwap swap = prepareSwap(cacheName);
+        WriteStats stats = writeAndSwap(swap, "set", key -> syncBatchSAdd(key, data, timeoutMs));
+        log.debug("Atomic replace set completed: {} ({} members)", cacheName, data == null ? 0 : data.size());
+        return stats;
+    }
 
-        try {
-            // 1. 批量写入临时Key
-            syncBatchSAdd(tempKey, data, timeoutMs);
-            
-            // 2. 原子替换
-            if (isCluster) {
-                clusterConnection.sync().rename(tempKey, finalKey);
-            } else {
-                standaloneConnection.sync().rename(tempKey, finalKey);
+    /**
+     * 原子性替换二进制值 (位图、Bloom Filter等)，与Hash/Set相同的临时Key/代际切换流程
+     */
+    public WriteStats atomicReplaceBinary(String cacheName, byte[] value) {
+        PendingSwap swap = prepareSwap(cacheName);
+        WriteStats stats = writeAndSwap(swap, "binary", key -> {
+            binaryCommands().set(key, value);
+            WriteStats written = new WriteStats();
+            written.setBatches(1);
+            written.setCommands(1);
+            written.setBytes(value.length);
+            return written;
+        });
+        log.debug("Atomic replace binary completed: {} ({} bytes)", cacheName, value.length);
+        return stats;
+    }
+
+    /**
+     * 原子性替换v2紧凑格式的Hash: Field和Value经 {@link CompactIdCodec} 编码后写入 ${cacheName}:v2，
+     * 与v1相同的临时Key/代际切换流程，切换生效后 (两阶段提交时为commitStaged之后) 在 sync:schema 标记该缓存已有v2
+     */
+    public WriteStats atomicReplaceCompactHash(String cacheName, Map<String, String> data) {
+        String compactName = CacheKeyConstants.compactName(cacheName);
+        if ((data == null || data.isEmpty()) && !isGenerationEnabled()) {
+            if (!stage(new PendingSwap(compactName, null, isCluster ? "{" + compactName + "}" : compactName, -1))) {
+                deleteKey(compactName);
             }
-            
-            log.debug("Atomic replace set completed: {} ({} members)", cacheName, data.size());
+            return new WriteStats();
+        }
+        Map<byte[], byte[]> encoded = new LinkedHashMap<>();
+        long v1Bytes = 0;
+        long v2Bytes = 0;
+        for (Map.Entry<String, String> entry : data.entrySet()) {
+            byte[] field = CompactIdCodec.encode(entry.getKey());
+            byte[] value = CompactIdCodec.encode(entry.getValue());
+            encoded.put(field, value);
+            v1Bytes += entry.getKey().length() + entry.getValue().length();
+            v2Bytes += field.length + value.length;
+        }
+
+        PendingSwap swap = prepareSwap(compactName);
+        WriteStats stats = writeAndSwap(swap, "compact hash", key -> writeRawHash(key, encoded));
+        afterCommit(compactName, () -> hset(CacheKeyConstants.SYNC_SCHEMA,
+                Collections.singletonMap(cacheName, CacheKeyConstants.SCHEMA_V2)));
+        log.info("Atomic replace compact hash completed: {} ({} fields, {} -> {} bytes)",
+                compactName, data.size(), v1Bytes, v2Bytes);
+        return stats;
+    }
+
+    /**
+     * 二进制HSET，与syncBatchHSet相同经过限速、自适应批次和批次重试
+     */
+    private WriteStats writeRawHash(String key, Map<byte[], byte[]> data) {
+        byte[] rawKey = key.getBytes(StandardCharsets.UTF_8);
+        try {
+            return pipelineWrite(key, rawAsyncCommands(), new ArrayList<>(data.entrySet()),
+                    (async, entry) -> async.hset(rawKey, entry.getKey(), entry.getValue()),
+                    entry -> entry.getKey().length + entry.getValue().length, timeoutMs);
         } catch (Exception e) {
+            log.error("Compact hash write failed: {}, {}", key, e.getMessage());
+            throw new RuntimeException("Compact hash write failed: " + key, e);
+        }
+    }
+
+    /**
+     * 增量更新v2紧凑格式的Hash
+     */
+    public void applyCompactHashDelta(String cacheName, Map<String, String> puts, Collection<String> deletes) {
+        RedisClusterAsyncCommands<byte[], byte[]> async = rawAsyncCommands();
+        byte[] key = readKey(CacheKeyConstants.compactName(cacheName)).getBytes(StandardCharsets.UTF_8);
+        List<RedisFuture<Long>> futures = new ArrayList<>();
+        if (puts != null && !puts.isEmpty()) {
+            Map<byte[], byte[]> encoded = new LinkedHashMap<>();
+            puts.forEach((field, value) -> encoded.put(CompactIdCodec.encode(field), CompactIdCodec.encode(value)));
+            futures.add(async.hset(key, encoded));
+        }
+        if (deletes != null && !deletes.isEmpty()) {
+            byte[][] fields = new byte[deletes.size()][];
+            int i = 0;
+            for (String field : deletes) {
+                fields[i++] = CompactIdCodec.encode(field);
+            }
+            futures.add(async.hdel(key, fields));
+        }
+        for (RedisFuture<Long> future : futures) {
             try {
-                if (isCluster) {
-                    clusterConnection.sync().del(tempKey);
-                } else {
-                    standaloneConnection.sync().del(tempKey);
-                }
-            } catch (Exception ignored) {}
-            
-            log.error("Atomic replace set failed: {}", cacheName, e);
-            throw new RuntimeException("Atomic replace set failed: " + cacheName, e);
+                future.get(timeoutMs, TimeUnit.MILLISECONDS);
+            } catch (Exception e) {
+                throw new RuntimeException("Compact hash delta failed: " + cacheName, e);
+            }
         }
     }
 
-    // ==================== 批量Pipeline操作 ====================
+    /**
+     * 批量替换多个小缓存
+     * 
+     * 每个缓存只发一条多字段HSET/SADD写入临时Key，所有写入按节点分组一次Pipeline发出，
+     * 之后所有RENAME/指针切换再一次Pipeline生效 (两阶段模式下暂存)
+     * 限速按各缓存自身的优先级分别计费
+     *
+     * @param writeStats 输出: 各缓存的写入统计
+     * @return 失败的缓存名
+     */
+    public List<String> batchReplaceSmall(Map<String, Map<String, String>> hashes, Map<String, Set<String>> sets,
+                                          Map<String, WriteStats> writeStats) {
+        List<String> cacheNames = new ArrayList<>(hashes.keySet());
+        cacheNames.addAll(sets.keySet());
+        if (cacheNames.isEmpty()) {
+            return Collections.emptyList();
+        }
 
-    public void syncBatchHSet(String hashKey, Map<String, String> data, long timeoutMs) {
-        if (data == null || data.isEmpty()) {
-            return;
+        List<PendingSwap> swaps = new ArrayList<>();
+        List<String> failedCaches = new ArrayList<>();
+        Map<String, Long> generations = isGenerationEnabled() ? nextGenerations(cacheNames) : Collections.emptyMap();
+        for (String cacheName : cacheNames) {
+            int size = hashes.containsKey(cacheName) ? hashes.get(cacheName).size() : sets.get(cacheName).size();
+            if (isGenerationEnabled()) {
+                long generation = generations.get(cacheName);
+                swaps.add(new PendingSwap(cacheName, CacheKeyConstants.generationKey(cacheName, generation), null, generation));
+            } else if (size == 0) {
+                swaps.add(new PendingSwap(cacheName, null, isCluster ? "{" + cacheName + "}" : cacheName, -1));
+            } else {
+                swaps.add(prepareSwap(cacheName));
+            }
         }
 
-        int batchSize = config.getPipelineBatchSize();
-        List<Map.Entry<String, String>> entries = new ArrayList<>(data.entrySet());
+        // 1. 按节点分组写入临时Key
+        Map<String, List<PendingSwap>> byNode = new LinkedHashMap<>();
+        for (PendingSwap swap : swaps) {
+            if (swap.writeKey != null) {
+                byNode.computeIfAbsent(nodeIdOf(swap.writeKey), k -> new ArrayList<>()).add(swap);
+            }
+        }
 
+        RedisClusterAsyncCommands<String, String> async = asyncCommands();
+        Map<PendingSwap, RedisFuture<?>> writes = new LinkedHashMap<>();
+        for (Map.Entry<String, List<PendingSwap>> group : byNode.entrySet()) {
+            for (PendingSwap swap : group.getValue()) {
+                long bytes = estimateBytes(hashes.get(swap.cacheName), sets.get(swap.cacheName));
+                rateLimiter.acquire(group.getKey(), swap.cacheName, 1, bytes);
+                WriteStats stats = new WriteStats();
+                stats.setBatches(1);
+                stats.setCommands(1);
+                stats.setBytes(bytes);
+                writeStats.put(swap.cacheName, stats);
+            }
+        }
+        async.setAutoFlushCommands(false);
         try {
-            if (isCluster) {
-                RedisAdvancedClusterAsyncCommands<String, String> async = clusterConnection.async();
-                
-                for (int i = 0; i < entries.size(); i += batchSize) {
-                    int end = Math.min(i + batchSize, entries.size());
-                    List<Map.Entry<String, String>> batch = entries.subList(i, end);
-                    
-                    async.setAutoFlushCommands(false);
-                    
-                    List<RedisFuture<Boolean>> futures = batch.stream()
-                            .map(entry -> async.hset(hashKey, entry.getKey(), entry.getValue()))
-                            .collect(Collectors.toList());
-                    
-                    async.flushCommands();
-                    async.setAutoFlushCommands(true);
-                    
-                    CompletableFuture.allOf(
-                            futures.stream()
-                                    .map(RedisFuture::toCompletableFuture)
-                                    .toArray(CompletableFuture[]::new)
-                    ).get(timeoutMs, TimeUnit.MILLISECONDS);
+            for (List<PendingSwap> group : byNode.values()) {
+                for (PendingSwap swap : group) {
+                    Map<String, String> hash = hashes.get(swap.cacheName);
+                    Set<String> set = sets.get(swap.cacheName);
+                    if (hash != null && !hash.isEmpty()) {
+                        writes.put(swap, async.hset(swap.writeKey, hash));
+                    } else if (set != null && !set.isEmpty()) {
+                        writes.put(swap, async.sadd(swap.writeKey, set.toArray(new String[0])));
+                    }
                 }
-            } else {
-                RedisAsyncCommands<String, String> async = standaloneConnection.async();
-                
-                for (int i = 0; i < entries.size(); i += batchSize) {
-                    int end = Math.min(i + batchSize, entries.size());
-                    List<Map.Entry<String, String>> batch = entries.subList(i, end);
-                    
-                    async.setAutoFlushCommands(false);
-                    
-                    List<RedisFuture<Boolean>> futures = batch.stream()
-                            .map(entry -> async.hset(hashKey, entry.getKey(), entry.getValue()))
-                            .collect(Collectors.toList());
-                    
-                    async.flushCommands();
-                    async.setAutoFlushCommands(true);
-                    
-                    CompletableFuture.allOf(
-                            futures.stream()
-                                    .map(RedisFuture::toCompletableFuture)
-                                    .toArray(CompletableFuture[]::new)
-                    ).get(timeoutMs, TimeUnit.MILLISECONDS);
+            }
+            async.flushCommands();
+        } finally {
+            async.setAutoFlushCommands(true);
+        }
+
+        List<PendingSwap> written = new ArrayList<>();
+        for (PendingSwap swap : swaps) {
+            RedisFuture<?> future = writes.get(swap);
+            try {
+                if (future != null) {
+                    future.get(timeoutMs, TimeUnit.MILLISECONDS);
                 }
+                written.add(swap);
+            } catch (Exception e) {
+                log.error("Small cache write failed: {}", swap.cacheName, e);
+                failedCaches.add(swap.cacheName);
+                retireKey(swap.writeKey);
             }
-        } catch (Exception e) {
-            log.error("批量Hash写入失败: {}, {}", hashKey, e.getMessage());
-            throw new RuntimeException("批量Hash写入失败: " + hashKey, e);
         }
-    }
 
-    public void syncBatchSAdd(String setKey, Set<String> members, long timeoutMs) {
-        if (members == null || members.isEmpty()) {
-            return;
+        // 2. 统一生效
+        List<PendingSwap> toCommit = new ArrayList<>();
+        for (PendingSwap swap : written) {
+            if (!stage(swap)) {
+                toCommit.add(swap);
+            }
+        }
+        if (!toCommit.isEmpty()) {
+            failedCaches.addAll(commitSwaps(toCommit));
         }
 
-        int batchSize = config.getPipelineBatchSize();
-        List<String> memberList = new ArrayList<>(members);
+        log.info("Small cache lane flushed: {} caches on {} nodes, {} failed",
+                cacheNames.size(), byNode.size(), failedCaches.size());
+        return failedCaches;
+    }
 
+    private Map<String, Long> nextGenerations(List<String> cacheNames) {
+        RedisClusterAsyncCommands<String, String> async = asyncCommands();
+        Map<String, RedisFuture<Long>> futures = new LinkedHashMap<>();
+        async.setAutoFlushCommands(false);
         try {
-            if (isCluster) {
-                RedisAdvancedClusterAsyncCommands<String, String> async = clusterConnection.async();
-                
-                for (int i = 0; i < memberList.size(); i += batchSize) {
-                    int end = Math.min(i + batchSize, memberList.size());
-                    List<String> batch = memberList.subList(i, end);
-                    
-                    async.setAutoFlushCommands(false);
-                    
-                    List<RedisFuture<Long>> futures = batch.stream()
-                            .map(member -> async.sadd(setKey, member))
-                            .collect(Collectors.toList());
-                    
-                    async.flushCommands();
-                    async.setAutoFlushCommands(true);
-                    
-                    CompletableFuture.allOf(
-                            futures.stream()
-                                    .map(RedisFuture::toCompletableFuture)
-                                    .toArray(CompletableFuture[]::new)
-                    ).get(timeoutMs, TimeUnit.MILLISECONDS);
-                }
-            } else {
-                RedisAsyncCommands<String, String> async = standaloneConnection.async();
-                
-                for (int i = 0; i < memberList.size(); i += batchSize) {
-                    int end = Math.min(i + batchSize, memberList.size());
-                    List<String> batch = memberList.subList(i, end);
-                    
-                    async.setAutoFlushCommands(false);
-                    
-                    List<RedisFuture<Long>> futures = batch.stream()
-                            .map(member -> async.sadd(setKey, member))
-                            .collect(Collectors.toList());
-                    
-                    async.flushCommands();
-                    async.setAutoFlushCommands(true);
-                    
-                    CompletableFuture.allOf(
-                            futures.stream()
-                                    .map(RedisFuture::toCompletableFuture)
-                                    .toArray(CompletableFuture[]::new)
-                    ).get(timeoutMs, TimeUnit.MILLISECONDS);
-                }
+            for (String cacheName : cacheNames) {
+                futures.put(cacheName, async.incr(CacheKeyConstants.generationSeqKey(cacheName)));
+            }
+            async.flushCommands();
+        } finally {
+            async.setAutoFlushCommands(true);
+        }
+
+        Map<String, Long> generations = new HashMap<>();
+        for (Map.Entry<String, RedisFuture<Long>> entry : futures.entrySet()) {
+            try {
+                generations.put(entry.getKey(), entry.getValue().get(timeoutMs, TimeUnit.MILLISECONDS));
+            } catch (Exception e) {
+                throw new RuntimeException("Allocate generation failed: " + entry.getKey(), e);
             }
-        } catch (Exception e) {
-            log.error("批量Set写入失败: {}, {}", setKey, e.getMessage());
-            throw new RuntimeException("批量Set写入失败: " + setKey, e);
         }
+        return generations;
     }
 
-    // ==================== 简单KV操作 ====================
+    private static long estimateBytes(Map<String, String> hash, Set<String> set) {
+        long bytes = 0;
+        if (hash != null) {
+            for (Map.Entry<String, String> entry : hash.entrySet()) {
+                bytes += entry.getKey().length() + entry.getValue().length();
+            }
+        }
+        if (set != null) {
+            for (String member : set) {
+                bytes += member.length();
+            }
+        }
+        return bytes;
+    }
 
-    public void setValue(String key, String value) {
+    /**
+     * 一次待生效的替换: 数据写入writeKey后，RENAME到finalKey或切换代际指针
+     */
+    private static class PendingSwap {
+        final String cacheName;
+        /** 数据写入的Key，为null时表示删除finalKey */
+        final String writeKey;
+        /** RENAME目标，代际模式下为null */
+        final String finalKey;
+        /** 代际编号，非代际模式为-1 */
+        final long generation;
+        /** 提交失败时归属的缓存，默认为cacheName */
+        final String owner;
+
+        PendingSwap(String cacheName, String writeKey, String finalKey, long generation) {
+            this(cacheName, writeKey, finalKey, generation, cacheName);
+        }
+
+        PendingSwap(String cacheName, String writeKey, String finalKey, long generation, String owner) {
+            this.cacheName = cacheName;
+            this.writeKey = writeKey;
+            this.finalKey = finalKey;
+            this.generation = generation;
+            this.owner = owner;
+        }
+    }
+
+    private PendingSwap prepareSwap(String cacheName) {
+        if (isGenerationEnabled()) {
+            long generation = commands().incr(CacheKeyConstants.generationSeqKey(cacheName));
+            return new PendingSwap(cacheName, CacheKeyConstants.generationKey(cacheName, generation), null, generation);
+        }
+        // 集群模式下使用Hash Tag确保同一slot
+        String finalKey = isCluster ? "{" + cacheName + "}" : cacheName;
+        String tempKey = "{" + cacheName + "}:temp:" + System.currentTimeMillis();
+        return new PendingSwap(cacheName, tempKey, finalKey, -1);
+    }
+
+    private WriteStats writeAndSwap(PendingSwap swap, String type, Function<String, WriteStats> writer) {
         try {
-            if (isCluster) {
-                clusterConnection.sync().set(key, value);
-            } else {
-                standaloneConnection.sync().set(key, value);
+            // 1. 批量写入临时Key
+            WriteStats stats = writer.apply(swap.writeKey);
+
+            // 2. 原子替换 (两阶段模式下暂存，统一提交)
+            if (!stage(swap)) {
+                commitSwap(swap);
             }
+            return stats;
         } catch (Exception e) {
-            log.error("KVRocks SET失败: {}", key, e);
+            // 清理临时Key (异步回收，避免大Key同步删除)
+            retireKey(swap.writeKey);
+
+            log.error("Atomic replace {} failed: {}", type, swap.cacheName, e);
+            throw new RuntimeException("Atomic replace " + type + " failed: " + swap.cacheName, e);
         }
     }
 
-    public String getValue(String key) {
+    private void commitSwap(PendingSwap swap) {
+        String previousPhase = syncMetrics.enterPhase(SyncMetrics.SWAP);
+        Object event = syncEvents.beginSwap(swap.cacheName, swapCommand(swap), false);
+        long start = System.nanoTime();
+        boolean success = false;
         try {
-            if (isCluster) {
-                return clusterConnection.sync().get(key);
+            if (swap.writeKey == null) {
+                commands().del(swap.finalKey);
+            } else if (swap.generation < 0) {
+                commands().rename(swap.writeKey, swap.finalKey);
             } else {
-                return standaloneConnection.sync().get(key);
+                flipGeneration(swap.cacheName, swap.generation);
+            }
+            success = true;
+            markReplicaPublished(swap);
+        } finally {
+            syncEvents.endSwap(event, success);
+            if (previousPhase != null) {
+                syncMetrics.enterPhase(previousPhase);
+            } else {
+                syncMetrics.recordPhase(CacheKeyConstants.primaryNameOf(swap.cacheName),
+                        SyncMetrics.SWAP, System.nanoTime() - start);
             }
-        } catch (Exception e) {
-            log.error("KVRocks GET失败: {}", key, e);
-            return null;
         }
     }
 
-    public void deleteKey(String key) {
-        try {
-            // 集群模式下，缓存key使用Hash Tag
-            String actualKey = isCluster ? "{" + key + "}" : key;
-            if (isCluster) {
-                clusterConnection.sync().del(actualKey);
-            } else {
-                standaloneConnection.sync().del(actualKey);
+    private static String swapCommand(PendingSwap swap) {
+        return swap.writeKey == null ? "DEL" : swap.generation < 0 ? "RENAME" : "GENERATION";
+    }
+
+    // ==================== 两阶段提交 ====================
+
+    /**
+     * 开始暂存: 之后的替换只写入临时Key/代际Key，由 {@link #commitStaged()} 统一生效
+     */
+    public synchronized void beginStaging() {
+        stagedSwaps = new ArrayList<>();
+        postCommitActions = new LinkedHashMap<>();
+    }
+
+    /**
+     * 替换生效后才能执行的写入 (如摘要、增量字段、删除)
+     * 
+     * 暂存模式下延迟到 {@link #commitStaged()} 之后，且仅在owner的替换全部成功时执行；
+     * 非暂存模式下替换已立即生效，直接执行
+     */
+    public void afterCommit(String owner, Runnable action) {
+        synchronized (this) {
+            if (stagedSwaps != null) {
+                postCommitActions.computeIfAbsent(owner, k -> new ArrayList<>()).add(action);
+                return;
             }
-        } catch (Exception e) {
-            log.error("KVRocks DEL失败: {}", key, e);
         }
+        action.run();
     }
 
-    // ==================== 异步查询操作 ====================
+    private synchronized boolean stage(PendingSwap swap) {
+        if (stagedSwaps == null) {
+            return false;
+        }
+        stagedSwaps.add(swap);
+        return true;
+    }
 
-    public CompletableFuture<String> asyncHGet(String key, String field) {
-        try {
-            String actualKey = isCluster ? "{" + key + "}" : key;
-            if (isCluster) {
-                return clusterConnection.async().hget(actualKey, field)
-                        .toCompletableFuture()
-                        .exceptionally(ex -> null);
-            } else {
-                return standaloneConnection.async().hget(actualKey, field)
-                        .toCompletableFuture()
-                        .exceptionally(ex -> null);
+    /**
+     * 统一提交暂存的替换: 按节点分组，一次Pipeline发出所有RENAME/指针切换
+     * 
+     * 提交后退出暂存模式，之后完成的替换(如超时任务)各自立即生效；
+     * 随后执行 {@link #afterCommit} 登记的写入
+     *
+     * @return 提交或提交后写入失败的缓存名
+     */
+    public List<String> commitStaged() {
+        List<PendingSwap> swaps;
+        Map<String, List<Runnable>> actions;
+        synchronized (this) {
+            swaps = stagedSwaps == null ? Collections.emptyList() : stagedSwaps;
+            actions = postCommitActions == null ? Collections.emptyMap() : postCommitActions;
+            stagedSwaps = null;
+            postCommitActions = null;
+        }
+
+        List<String> failedCaches = new ArrayList<>();
+        if (!swaps.isEmpty()) {
+            long start = System.currentTimeMillis();
+            failedCaches.addAll(commitSwaps(swaps));
+            log.info("Committed {} staged swaps in {} ms, {} failed",
+                    swaps.size(), System.currentTimeMillis() - start, failedCaches.size());
+        }
+
+        // 替换生效后再执行依赖它的写入，替换失败的缓存跳过
+        for (Map.Entry<String, List<Runnable>> entry : actions.entrySet()) {
+            String owner = entry.getKey();
+            if (failedCaches.contains(owner)) {
+                log.warn("Skip {} post-commit actions of failed cache: {}", entry.getValue().size(), owner);
+                continue;
+            }
+            try {
+                for (Runnable action : entry.getValue()) {
+                    action.run();
+                }
+            } catch (Exception e) {
+                log.error("Post-commit action failed: {}", owner, e);
+                failedCaches.add(owner);
             }
-        } catch (Exception e) {
-            return CompletableFuture.completedFuture(null);
         }
+        return failedCaches;
     }
 
-    public CompletableFuture<Boolean> asyncSIsMember(String key, String member) {
-        try {
-            String actualKey = isCluster ? "{" + key + "}" : key;
-            if (isCluster) {
-                return clusterConnection.async().sismember(actualKey, member)
-                        .toCompletableFuture()
-                        .exceptionally(ex -> false);
-            } else {
-                return standaloneConnection.async().sismember(actualKey, member)
-                        .toCompletableFuture()
-                        .exceptionally(ex -> false);
+    /**
+     * 放弃暂存的替换并回收已写入的数据
+     */
+    public void abortStaged() {
+        List<PendingSwap> swaps;
+        synchronized (this) {
+            swaps = stagedSwaps == null ? Collections.emptyList() : stagedSwaps;
+            stagedSwaps = null;
+            postCommitActions = null;
+        }
+        for (PendingSwap swap : swaps) {
+            if (swap.writeKey != null) {
+                retireKey(swap.writeKey);
             }
-        } catch (Exception e) {
-            return CompletableFuture.completedFuture(false);
         }
+        log.warn("Aborted {} staged swaps", swaps.size());
     }
 
-    @PreDestroy
-    public void shutdown() {
+    private List<String> commitSwaps(List<PendingSwap> swaps) {
+        Map<String, List<PendingSwap>> byNode = new LinkedHashMap<>();
+        for (PendingSwap swap : swaps) {
+            String routeKey = swap.writeKey != null ? swap.writeKey : swap.finalKey;
+            byNode.computeIfAbsent(nodeIdOf(routeKey), k -> new ArrayList<>()).add(swap);
+        }
+
+        RedisClusterAsyncCommands<String, String> async = asyncCommands();
+        Map<PendingSwap, List<RedisFuture<?>>> futures = new LinkedHashMap<>();
+        Map<PendingSwap, Object> events = new HashMap<>();
+        long start = System.nanoTime();
+        async.setAutoFlushCommands(false);
         try {
-            if (clusterConnection != null) {
-                clusterConnection.close();
+            for (List<PendingSwap> group : byNode.values()) {
+                for (PendingSwap swap : group) {
+                    events.put(swap, syncEvents.beginSwap(swap.cacheName, swapCommand(swap), true));
+                    List<RedisFuture<?>> swapFutures = new ArrayList<>(2);
+                    if (swap.writeKey == null) {
+                        swapFutures.add(async.del(swap.finalKey));
+                    } else if (swap.generation < 0) {
+                        swapFutures.add(async.rename(swap.writeKey, swap.finalKey));
+                    } else {
+                        String generation = String.valueOf(swap.generation);
+                        swapFutures.add(async.lpush(CacheKeyConstants.generationListKey(swap.cacheName), generation));
+                        swapFutures.add(async.set(CacheKeyConstants.generationPointerKey(swap.cacheName), generation));
+                    }
+                    futures.put(swap, swapFutures);
+                }
             }
-            if (clusterClient != null) {
-                clusterClient.shutdown();
-                log.info("Lettuce集群连接已关闭");
+            async.flushCommands();
+        } finally {
+            async.setAutoFlushCommands(true);
+        }
+
+        List<String> failedCaches = new ArrayList<>();
+        for (Map.Entry<PendingSwap, List<RedisFuture<?>>> entry : futures.entrySet()) {
+            PendingSwap swap = entry.getKey();
+            try {
+                for (RedisFuture<?> future : entry.getValue()) {
+                    future.get(timeoutMs, TimeUnit.MILLISECONDS);
+                }
+                syncMetrics.recordPhase(CacheKeyConstants.primaryNameOf(swap.cacheName),
+                        SyncMetrics.SWAP, System.nanoTime() - start);
+                syncEvents.endSwap(events.get(swap), true);
+                if (swap.generation >= 0) {
+                    pointerCache.remove(swap.cacheName);
+                    retireOldGenerations(swap.cacheName);
+                }
+                markReplicaPublished(swap);
+            } catch (Exception e) {
+                syncEvents.endSwap(events.get(swap), false);
+                log.error("Commit swap failed: {}", swap.cacheName, e);
+                failedCaches.add(swap.owner);
+                if (swap.writeKey != null) {
+                    retireKey(swap.writeKey);
+                }
             }
+        }
+        return failedCaches;
+    }
 
-            if (standaloneConnection != null) {
-                standaloneConnection.close();
+    /**
+     * Key所在节点，单机模式下所有Key同一节点
+     */
+    String nodeIdOf(String key) {
+        if (!isCluster) {
+            return "standalone";
+        }
+        RedisClusterNode node = clusterConnection.getPartitions().getPartitionBySlot(SlotHash.getSlot(key));
+        return node == null ? "unknown" : node.getNodeId();
+    }
+
+    // ==================== 代际切换 ====================
+
+    public boolean isGenerationEnabled() {
+        return config.getGeneration().isEnabled();
+    }
+
+    /**
+     * 切换到新代际: 记录到代际列表，切换指针，超出保留数的旧代际异步回收
+     * 
+     * 旧数据不再被RENAME覆盖，KVRocks无需在切换时同步删除大Key
+     */
+    private void flipGeneration(String cacheName, long generation) {
+        RedisClusterCommands<String, String> commands = commands();
+        commands.lpush(CacheKeyConstants.generationListKey(cacheName), String.valueOf(generation));
+        commands.set(CacheKeyConstants.generationPointerKey(cacheName), String.valueOf(generation));
+        pointerCache.remove(cacheName);
+        retireOldGenerations(cacheName);
+        log.debug("Generation flipped: {} -> {}", cacheName, generation);
+    }
+
+    /**
+     * 回滚到上一代际
+     *
+     * @return 回滚后的代际编号，没有可回滚的代际时返回-1
+     */
+    public long rollbackGeneration(String cacheName) {
+        RedisClusterCommands<String, String> commands = commands();
+        String listKey = CacheKeyConstants.generationListKey(cacheName);
+        List<String> recent = commands.lrange(listKey, 0, 1);
+        if (recent.size() < 2) {
+            log.warn("No previous generation to roll back: {}", cacheName);
+            return -1;
+        }
+
+        String current = recent.get(0);
+        String previous = recent.get(1);
+        commands.set(CacheKeyConstants.generationPointerKey(cacheName), previous);
+        commands.lrem(listKey, 1, current);
+        pointerCache.remove(cacheName);
+        retireKey(CacheKeyConstants.generationKey(cacheName, Long.parseLong(current)));
+
+        log.info("Generation rolled back: {} {} -> {}", cacheName, current, previous);
+        return Long.parseLong(previous);
+    }
+
+    /**
+     * 当前代际编号，未使用代际模式写入过时返回-1
+     */
+    public long getCurrentGeneration(String cacheName) {
+        String value = getValue(CacheKeyConstants.generationPointerKey(cacheName));
+        return value == null ? -1 : Long.parseLong(value);
+    }
+
+    private void retireOldGenerations(String cacheName) {
+        int retain = Math.max(1, config.getGeneration().getRetain());
+        String listKey = CacheKeyConstants.generationListKey(cacheName);
+        List<String> expired = commands().lrange(listKey, retain, -1);
+        for (String generation : expired) {
+            // 先回收数据再移出列表，进程中途退出时下次仍能回收
+            retireKey(CacheKeyConstants.generationKey(cacheName, Long.parseLong(generation)),
+                    () -> commands().lrem(listKey, 1, generation));
+        }
+    }
+
+    void retireKey(String key) {
+        retireKey(key, null);
+    }
+
+    /**
+     * 异步回收Key，不阻塞同步流程
+     * 
+     * 回收前记录到 sync:reclaim:pending，完成后移除；退出时未完成的回收由下次运行继续
+     */
+    private void retireKey(String key, Runnable afterRetired) {
+        try {
+            commands().sadd(CacheKeyConstants.RECLAIM_PENDING, key);
+        } catch (Exception e) {
+            log.warn("Record pending reclaim failed: {}, {}", key, e.getMessage());
+        }
+        submitRetire(key, afterRetired);
+    }
+
+    private void submitRetire(String key, Runnable afterRetired) {
+        reclaimExecutor.execute(() -> {
+            try {
+                keyRetirer.accept(key);
+                commands().srem(CacheKeyConstants.RECLAIM_PENDING, key);
+                if (afterRetired != null) {
+                    afterRetired.run();
+                }
+                log.debug("Retired key: {}", key);
+            } catch (Exception e) {
+                log.warn("Retire key failed: {}, {}", key, e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * 继续回收之前运行未完成的Key (分批删除可从中途继续)
+     *
+     * @return 提交回收的Key数量
+     */
+    public int resumePendingReclaims() {
+        Set<String> pending = commands().smembers(CacheKeyConstants.RECLAIM_PENDING);
+        for (String key : pending) {
+            submitRetire(key, null);
+        }
+        if (!pending.isEmpty()) {
+            log.info("Resuming reclaim of {} keys left by previous runs", pending.size());
+        }
+        return pending.size();
+    }
+
+    private void unlink(String key) {
+        try {
+            commands().unlink(key);
+        } catch (RedisCommandExecutionException e) {
+            commands().del(key);
+        }
+    }
+
+    /**
+     * 替换Key的回收方式，默认UNLINK
+     */
+    void setKeyRetirer(Consumer<String> keyRetirer) {
+        this.keyRetirer = keyRetirer;
+    }
+
+    /**
+     * 设置Hash读取结果的解码方式 (cacheName, value) -> 原始Value，由ValueCompressionService注册
+     */
+    void setValueDecoder(BiFunction<String, String, CompletableFuture<String>> valueDecoder) {
+        this.valueDecoder = valueDecoder;
+    }
+
+    private CompletableFuture<String> decode(String cacheName, String value) {
+        BiFunction<String, String, CompletableFuture<String>> decoder = valueDecoder;
+        return decoder == null || value == null ? CompletableFuture.completedFuture(value) : decoder.apply(cacheName, value);
+    }
+
+    private CompletableFuture<String[]> decode(String cacheName, String[] values) {
+        if (valueDecoder == null) {
+            return CompletableFuture.completedFuture(values);
+        }
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[values.length];
+        for (int i = 0; i < values.length; i++) {
+            int index = i;
+            futures[i] = decode(cacheName, values[i]).thenAccept(value -> values[index] = value);
+        }
+        return CompletableFuture.allOf(futures).thenApply(v -> values);
+    }
+
+    /**
+     * 在回收线程上执行任务，与Key回收串行，避免并发回收压垮节点
+     */
+    void submitReclaim(Runnable task) {
+        reclaimExecutor.execute(task);
+    }
+
+    /**
+     * 读取时使用的实际Key，增量写入也写入该Key
+     * 
+     * 代际模式下解析指针 (本地缓存pointer-cache-ms)，尚无指针时退回原Key
+     */
+    String readKey(String cacheName) {
+        String legacyKey = isCluster ? "{" + cacheName + "}" : cacheName;
+        if (!isGenerationEnabled()) {
+            return legacyKey;
+        }
+
+        long now = System.currentTimeMillis();
+        CachedPointer cached = pointerCache.get(cacheName);
+        if (cached == null || cached.expireAt < now) {
+            String generation = getValue(CacheKeyConstants.generationPointerKey(cacheName));
+            String key = generation == null ? legacyKey : CacheKeyConstants.generationKey(cacheName, Long.parseLong(generation));
+            cached = new CachedPointer(key, now + config.getGeneration().getPointerCacheMs());
+            pointerCache.put(cacheName, cached);
+        }
+        return cached.key;
+    }
+
+    /**
+     * 读取时使用的Key: 配置了副本的缓存按调用线程选择一个副本，分散热点读取
+     */
+    String readReplicaKey(String cacheName) {
+        return readKey(replicaFor(cacheName, UnaryOperator.identity()));
+    }
+
+    /**
+     * 按调用线程选择副本，返回其派生缓存名 (如副本的Bloom Filter)；
+     * 选中的副本尚未写入 (刚增加副本数，下次全量才写入) 时退回主缓存
+     */
+    private String replicaFor(String cacheName, UnaryOperator<String> derived) {
+        Integer copies = config.getReplica().getCaches().get(cacheName);
+        if (copies == null || copies <= 1) {
+            return derived.apply(cacheName);
+        }
+        int index = (int) ((Thread.currentThread().getId() * 0x9E3779B97F4A7C15L >>> 33) % copies);
+        if (index == 0) {
+            return derived.apply(cacheName);
+        }
+        String name = derived.apply(CacheKeyConstants.replicaName(cacheName, index));
+        return isReplicaPublished(name) ? name : derived.apply(cacheName);
+    }
+
+    /**
+     * sync:replicas 本地缓存pointer-cache-ms，读取失败时沿用上次结果
+     */
+    private boolean isReplicaPublished(String name) {
+        long now = System.currentTimeMillis();
+        if (now >= publishedReplicasExpireAt) {
+            publishedReplicasExpireAt = now + config.getGeneration().getPointerCacheMs();
+            try {
+                publishedReplicas = commands().smembers(CacheKeyConstants.SYNC_REPLICAS);
+            } catch (Exception e) {
+                log.debug("Load published replicas failed: {}", e.getMessage());
+            }
+        }
+        return publishedReplicas.contains(name);
+    }
+
+    /**
+     * 副本 (或副本的位图、Bloom Filter) 替换生效后记录到 sync:replicas
+     */
+    private void markReplicaPublished(PendingSwap swap) {
+        if (swap.writeKey == null || !isReplicaName(swap.cacheName)) {
+            return;
+        }
+        try {
+            commands().sadd(CacheKeyConstants.SYNC_REPLICAS, swap.cacheName);
+        } catch (Exception e) {
+            log.warn("Mark replica published failed: {}, {}", swap.cacheName, e.getMessage());
+        }
+    }
+
+    private boolean isReplicaName(String name) {
+        for (Map.Entry<String, Integer> entry : config.getReplica().getCaches().entrySet()) {
+            for (int i = 1; i < entry.getValue(); i++) {
+                String replica = CacheKeyConstants.replicaName(entry.getKey(), i);
+                if (name.equals(replica) || name.equals(CacheKeyConstants.bitmapName(replica))
+                        || name.equals(CacheKeyConstants.bloomName(replica))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 缓存及其副本的缓存名，写入时需全部写入
+     */
+    public List<String> replicaNames(String cacheName) {
+        Integer copies = config.getReplica().getCaches().get(cacheName);
+        if (copies == null || copies <= 1) {
+            return Collections.singletonList(cacheName);
+        }
+        List<String> names = new ArrayList<>(copies);
+        names.add(cacheName);
+        for (int i = 1; i < copies; i++) {
+            names.add(CacheKeyConstants.replicaName(cacheName, i));
+        }
+        return names;
+    }
+
+    private static class CachedPointer {
+        final String key;
+        final long expireAt;
+
+        CachedPointer(String key, long expireAt) {
+            this.key = key;
+            this.expireAt = expireAt;
+        }
+    }
+
+    RedisClusterCommands<String, String> commands() {
+        return isCluster ? clusterConnection.sync() : standaloneConnection.sync();
+    }
+
+    RedisClusterAsyncCommands<String, String> asyncCommands() {
+        return isCluster ? clusterConnection.async() : standaloneConnection.async();
+    }
+
+    RedisClusterCommands<String, byte[]> binaryCommands() {
+        return isCluster ? binaryClusterConnection.sync() : binaryStandaloneConnection.sync();
+    }
+
+    RedisClusterAsyncCommands<String, byte[]> binaryAsyncCommands() {
+        return isCluster ? binaryClusterConnection.async() : binaryStandaloneConnection.async();
+    }
+
+    RedisClusterAsyncCommands<byte[], byte[]> rawAsyncCommands() {
+        return isCluster ? rawClusterConnection.async() : rawStandaloneConnection.async();
+    }
+
+    // ==================== 批量Pipeline操作 ====================
+
+    public WriteStats syncBatchHSet(String hashKey, Map<String, String> data, long timeoutMs) {
+        if (data == null || data.isEmpty()) {
+            return new WriteStats();
+        }
+
+        try {
+            return pipelineWrite(hashKey, new ArrayList<>(data.entrySet()),
+                    (async, entry) -> async.hset(hashKey, entry.getKey(), entry.getValue()),
+                    entry -> entry.getKey().length() + entry.getValue().length(), timeoutMs);
+        } catch (Exception e) {
+            log.error("批量Hash写入失败: {}, {}", hashKey, e.getMessage());
+            throw new RuntimeException("批量Hash写入失败: " + hashKey, e);
+        }
+    }
+
+    public WriteStats syncBatchSAdd(String setKey, Set<String> members, long timeoutMs) {
+        if (members == null || members.isEmpty()) {
+            return new WriteStats();
+        }
+
+        try {
+            return pipelineWrite(setKey, new ArrayList<>(members),
+                    (async, member) -> async.sadd(setKey, member), String::length, timeoutMs);
+        } catch (Exception e) {
+            log.error("批量Set写入失败: {}, {}", setKey, e.getMessage());
+            throw new RuntimeException("批量Set写入失败: " + setKey, e);
+        }
+    }
+
+    /**
+     * Pipeline批量写入
+     * 
+     * 批次大小和同时在途的批次数由Key所在节点的 {@link AdaptiveBatchSizer} 决定，
+     * 在途批次达到窗口上限时等待最早的批次完成，并用其回复延迟调节后续批次
+     * 每个批次发送前经过 {@link WriteRateLimiter} 限速
+     */
+    private <T> WriteStats pipelineWrite(String key, List<T> items,
+                                         BiFunction<RedisClusterAsyncCommands<String, String>, T, RedisFuture<?>> command,
+                                         ToLongFunction<T> sizeOf, long timeoutMs) throws Exception {
+        return pipelineWrite(key, asyncCommands(), items, command, sizeOf, timeoutMs);
+    }
+
+    /**
+     * Pipeline批量写入，async为写入使用的连接 (String或二进制编解码)
+     */
+    private <A extends RedisClusterAsyncCommands<?, ?>, T> WriteStats pipelineWrite(String key, A async, List<T> items,
+                                                                                 BiFunction<A, T, RedisFuture<?>> command,
+                                                                                 ToLongFunction<T> sizeOf, long timeoutMs) throws Exception {
+        String nodeId = nodeIdOf(key);
+        String cacheName = CacheKeyConstants.cacheNameOf(key);
+        AdaptiveBatchSizer sizer = batchSizers.computeIfAbsent(nodeId, k -> new AdaptiveBatchSizer(config));
+        Deque<InFlightBatch<T>> inFlight = new ArrayDeque<>();
+        WriteStats stats = new WriteStats();
+
+        int i = 0;
+        while (i < items.size() || !inFlight.isEmpty()) {
+            if (i < items.size() && inFlight.size() < sizer.window()) {
+                int end = Math.min(i + sizer.batchSize(), items.size());
+                List<T> batch = items.subList(i, end);
+
+                long bytes = 0;
+                for (T item : batch) {
+                    bytes += sizeOf.applyAsLong(item);
+                }
+                rateLimiter.acquire(nodeId, cacheName, batch.size(), bytes);
+
+                Object event = syncEvents.beginBatch(cacheName, key, (int) stats.getBatches(), batch.size(), bytes);
+                InFlightBatch<T> sent = sendBatch(async, batch, command);
+                sent.event = event;
+                syncEvents.onBatchReplied(event, sent.all);
+                inFlight.addLast(sent);
+                stats.setBatches(stats.getBatches() + 1);
+                stats.setCommands(stats.getCommands() + batch.size());
+                stats.setBytes(stats.getBytes() + bytes);
+                i = end;
+                continue;
+            }
+
+            InFlightBatch<T> oldest = inFlight.pollFirst();
+            try {
+                oldest.all.get(timeoutMs, TimeUnit.MILLISECONDS);
+                sizer.onSuccess(oldest.latencyMs());
+                syncMetrics.recordBatchReply(CacheKeyConstants.primaryNameOf(cacheName), oldest.latencyMs());
+                syncEvents.endBatch(oldest.event, oldest.latencyMs(), true);
+            } catch (Exception e) {
+                syncEvents.endBatch(oldest.event, oldest.latencyMs(), false);
+                sizer.onFailure();
+                retryBatch(key, async, oldest.items, command, timeoutMs, stats, e);
+            }
+        }
+
+        stats.setBatchSize(sizer.batchSize());
+        stats.setWindow(sizer.window());
+        return stats;
+    }
+
+    private <A extends RedisClusterAsyncCommands<?, ?>, T> InFlightBatch<T> sendBatch(A async, List<T> batch,
+                                                                                   BiFunction<A, T, RedisFuture<?>> command) {
+        async.setAutoFlushCommands(false);
+        List<RedisFuture<?>> futures = new ArrayList<>(batch.size());
+        for (T item : batch) {
+            futures.add(command.apply(async, item));
+        }
+        async.flushCommands();
+        async.setAutoFlushCommands(true);
+        return new InFlightBatch<>(batch, futures);
+    }
+
+    /**
+     * 单批次重试: HSET/SADD幂等，失败的批次在同一临时Key上重发，
+     * 按指数退避最多重试max-attempts次，整次写入的重试总数受max-total-retries限制，
+     * 超出后抛出异常，由调用方回收临时Key
+     */
+    private <A extends RedisClusterAsyncCommands<?, ?>, T> void retryBatch(String key, A async, List<T> batch,
+                                                                        BiFunction<A, T, RedisFuture<?>> command,
+                                                                        long timeoutMs, WriteStats stats, Exception cause) throws Exception {
+        CacheSyncConfig.Retry retry = config.getRetry();
+        long backoffMs = retry.getInitialBackoffMs();
+        Exception lastError = cause;
+        for (int attempt = 1; attempt <= retry.getMaxAttempts(); attempt++) {
+            if (stats.getRetries() >= retry.getMaxTotalRetries()) {
+                break;
+            }
+            log.warn("批次写入失败，第{}次重试: {} ({} commands), {}", attempt, key, batch.size(), lastError.getMessage());
+            Thread.sleep(backoffMs);
+            backoffMs = Math.min(backoffMs * 2, retry.getMaxBackoffMs());
+
+            stats.setRetries(stats.getRetries() + 1);
+            stats.setCommands(stats.getCommands() + batch.size());
+            try {
+                sendBatch(async, batch, command).all.get(timeoutMs, TimeUnit.MILLISECONDS);
+                return;
+            } catch (Exception e) {
+                lastError = e;
+            }
+        }
+        throw lastError;
+    }
+
+    private static class InFlightBatch<T> {
+        final long sentAt = System.nanoTime();
+        final List<T> items;
+        final CompletableFuture<Void> all;
+        volatile long completedAt;
+        /** JFR批次事件，未记录时为null */
+        Object event;
+
+        InFlightBatch(List<T> items, List<RedisFuture<?>> futures) {
+            this.items = items;
+            this.all = CompletableFuture.allOf(futures.stream()
+                    .map(RedisFuture::toCompletableFuture)
+                    .toArray(CompletableFuture<?>[]::new));
+            this.all.whenComplete((v, e) -> completedAt = System.nanoTime());
+        }
+
+        long latencyMs() {
+            long end = completedAt > 0 ? completedAt : System.nanoTime();
+            return TimeUnit.NANOSECONDS.toMillis(end - sentAt);
+        }
+    }
+
+    // ==================== 增量写入 ====================
+
+    /**
+     * 服务端解包并执行增量的Lua脚本
+     * 
+     * ARGV[1]/ARGV[2]: 写入/删除命令 (HSET/HDEL 或 SADD/SREM)
+     * ARGV[3]: 写入部分的token数
+     * ARGV[4]: 打包数据，每个token编码为 ${字节数}:${内容}
+     */
+    private static final String DELTA_SCRIPT =
+            "local key = KEYS[1]\n" +
+            "local putTokens = tonumber(ARGV[3])\n" +
+            "local payload = ARGV[4]\n" +
+            "local tokens, pos, len = {}, 1, #payload\n" +
+            "while pos <= len do\n" +
+            "  local colon = string.find(payload, ':', pos, true)\n" +
+            "  local size = tonumber(string.sub(payload, pos, colon - 1))\n" +
+            "  tokens[#tokens + 1] = string.sub(payload, colon + 1, colon + size)\n" +
+            "  pos = colon + size + 1\n" +
+            "end\n" +
+            "local step = ARGV[1] == 'HSET' and 200 or 100\n" +
+            "local i = 1\n" +
+            "while i <= putTokens do\n" +
+            "  local stop = math.min(i + step - 1, putTokens)\n" +
+            "  redis.call(ARGV[1], key, unpack(tokens, i, stop))\n" +
+            "  i = stop + 1\n" +
+            "end\n" +
+            "while i <= #tokens do\n" +
+            "  local stop = math.min(i + 99, #tokens)\n" +
+            "  redis.call(ARGV[2], key, unpack(tokens, i, stop))\n" +
+            "  i = stop + 1\n" +
+            "end\n" +
+            "return #tokens";
+
+    /**
+     * 增量更新Hash: 写入puts并删除deletes (Key不追加Hash Tag)
+     * 
+     * 按delta.chunk-size分块，每块打包为一个EVALSHA在服务端执行；
+     * 服务端不支持脚本时退回Pipeline HSET/HDEL
+     */
+    public WriteStats applyHashDelta(String key, Map<String, String> puts, Collection<String> deletes) {
+        List<String> putTokens = new ArrayList<>();
+        if (puts != null) {
+            for (Map.Entry<String, String> entry : puts.entrySet()) {
+                putTokens.add(entry.getKey());
+                putTokens.add(entry.getValue());
+            }
+        }
+        return applyDelta(key, "HSET", "HDEL", putTokens, 2, deletes);
+    }
+
+    /**
+     * 增量更新Set: 添加adds并移除removes (Key不追加Hash Tag)
+     */
+    public WriteStats applySetDelta(String key, Collection<String> adds, Collection<String> removes) {
+        return applyDelta(key, "SADD", "SREM", adds == null ? Collections.emptyList() : new ArrayList<>(adds), 1, removes);
+    }
+
+    /**
+     * 增量更新已发布的位图 (${setName}:bitmap)，位图不存在时跳过
+     * 
+     * @throws IllegalStateException ID超过bitmap.max-id，调用方应退回全量重建
+     */
+    public WriteStats applyBitDelta(String setName, Collection<Integer> sets, Collection<Integer> clears) {
+        String key = readKey(CacheKeyConstants.bitmapName(setName));
+        if (!exists(key)) {
+            return new WriteStats();
+        }
+        int maxId = config.getBitmap().getMaxId();
+        RedisClusterCommands<String, String> commands = commands();
+        WriteStats stats = new WriteStats();
+        for (Integer id : sets) {
+            if (id > maxId) {
+                throw new IllegalStateException("Bitmap id " + id + " exceeds max-id " + maxId + ": " + setName);
+            }
+            commands.setbit(key, id, 1);
+            stats.setCommands(stats.getCommands() + 1);
+        }
+        for (Integer id : clears) {
+            if (id >= 0 && id <= maxId) {
+                commands.setbit(key, id, 0);
+                stats.setCommands(stats.getCommands() + 1);
+            }
+        }
+        stats.setBatches(stats.getCommands() > 0 ? 1 : 0);
+        return stats;
+    }
+
+    private WriteStats applyDelta(String key, String putCommand, String deleteCommand,
+                                  List<String> putTokens, int tokensPerPut, Collection<String> deletes) {
+        List<String> deleteTokens = deletes == null ? Collections.emptyList() : new ArrayList<>(deletes);
+        if (putTokens.isEmpty() && deleteTokens.isEmpty()) {
+            return new WriteStats();
+        }
+
+        try {
+            if (config.getDelta().isUseScript() && scriptingAvailable) {
+                try {
+                    return evalDelta(key, putCommand, deleteCommand, putTokens, tokensPerPut, deleteTokens);
+                } catch (RedisCommandExecutionException e) {
+                    if (!isScriptingUnsupported(e)) {
+                        throw e;
+                    }
+                    scriptingAvailable = false;
+                    log.warn("Lua脚本不可用，增量写入退回普通命令: {}", e.getMessage());
+                }
+            }
+            return plainDelta(key, putCommand, putTokens, tokensPerPut, deleteTokens);
+        } catch (Exception e) {
+            log.error("增量写入失败: {}, {}", key, e.getMessage());
+            throw new RuntimeException("增量写入失败: " + key, e);
+        }
+    }
+
+    private WriteStats evalDelta(String key, String putCommand, String deleteCommand,
+                                 List<String> putTokens, int tokensPerPut, List<String> deleteTokens) throws Exception {
+        if (deltaScriptSha == null) {
+            deltaScriptSha = commands().scriptLoad(DELTA_SCRIPT);
+        }
+
+        int chunkSize = Math.max(1, config.getDelta().getChunkSize());
+        List<String[]> chunks = new ArrayList<>();
+        int putIdx = 0;
+        int deleteIdx = 0;
+        while (putIdx < putTokens.size() || deleteIdx < deleteTokens.size()) {
+            StringBuilder payload = new StringBuilder();
+            int ops = 0;
+            int chunkPutTokens = 0;
+            while (ops < chunkSize && putIdx < putTokens.size()) {
+                for (int t = 0; t < tokensPerPut; t++) {
+                    appendToken(payload, putTokens.get(putIdx++));
+                }
+                chunkPutTokens += tokensPerPut;
+                ops++;
+            }
+            while (ops < chunkSize && deleteIdx < deleteTokens.size()) {
+                appendToken(payload, deleteTokens.get(deleteIdx++));
+                ops++;
+            }
+            chunks.add(new String[]{putCommand, deleteCommand, String.valueOf(chunkPutTokens), payload.toString()});
+        }
+
+        RedisClusterAsyncCommands<String, String> async = asyncCommands();
+        String[] keys = {key};
+        List<RedisFuture<Long>> futures = new ArrayList<>(chunks.size());
+        async.setAutoFlushCommands(false);
+        try {
+            for (String[] args : chunks) {
+                futures.add(async.evalsha(deltaScriptSha, ScriptOutputType.INTEGER, keys, args));
+            }
+            async.flushCommands();
+        } finally {
+            async.setAutoFlushCommands(true);
+        }
+
+        for (int c = 0; c < futures.size(); c++) {
+            try {
+                futures.get(c).get(timeoutMs, TimeUnit.MILLISECONDS);
+            } catch (ExecutionException e) {
+                // 节点上没有缓存脚本时带脚本重发
+                if (!(e.getCause() instanceof RedisNoScriptException)) {
+                    throw e.getCause() instanceof RedisCommandExecutionException
+                            ? (RedisCommandExecutionException) e.getCause() : e;
+                }
+                commands().eval(DELTA_SCRIPT, ScriptOutputType.INTEGER, keys, chunks.get(c));
+            }
+        }
+
+        WriteStats stats = new WriteStats();
+        stats.setBatches(chunks.size());
+        stats.setCommands(chunks.size());
+        return stats;
+    }
+
+    private static boolean isScriptingUnsupported(RedisCommandExecutionException e) {
+        String message = e.getMessage() == null ? "" : e.getMessage().toLowerCase();
+        return message.contains("unknown command") || message.contains("disabled") || message.contains("not supported");
+    }
+
+    private static void appendToken(StringBuilder payload, String token) {
+        payload.append(token.getBytes(StandardCharsets.UTF_8).length).append(':').append(token);
+    }
+
+    private WriteStats plainDelta(String key, String putCommand, List<String> putTokens, int tokensPerPut,
+                                  List<String> deleteTokens) throws Exception {
+        WriteStats stats = new WriteStats();
+        if (!putTokens.isEmpty()) {
+            if (tokensPerPut == 2) {
+                Map<String, String> puts = new LinkedHashMap<>();
+                for (int t = 0; t < putTokens.size(); t += 2) {
+                    puts.put(putTokens.get(t), putTokens.get(t + 1));
+                }
+                stats.merge(syncBatchHSet(key, puts, timeoutMs));
+            } else {
+                stats.merge(syncBatchSAdd(key, new LinkedHashSet<>(putTokens), timeoutMs));
+            }
+        }
+        if (!deleteTokens.isEmpty()) {
+            boolean hash = "HSET".equals(putCommand);
+            stats.merge(pipelineWrite(key, deleteTokens,
+                    (async, token) -> hash ? async.hdel(key, token) : async.srem(key, token),
+                    String::length, timeoutMs));
+        }
+        return stats;
+    }
+
+    // ==================== 简单KV操作 ====================
+
+    public void setValue(String key, String value) {
+        try {
+            if (isCluster) {
+                clusterConnection.sync().set(key, value);
+            } else {
+                standaloneConnection.sync().set(key, value);
+            }
+        } catch (Exception e) {
+            log.error("KVRocks SET失败: {}", key, e);
+        }
+    }
+
+    public String getValue(String key) {
+        try {
+            if (isCluster) {
+                return clusterConnection.sync().get(key);
+            } else {
+                return standaloneConnection.sync().get(key);
+            }
+        } catch (Exception e) {
+            log.error("KVRocks GET失败: {}", key, e);
+            return null;
+        }
+    }
+
+    public CompletableFuture<String> asyncGetValue(String key) {
+        return asyncCommands().get(key).toCompletableFuture();
+    }
+
+    public void deleteKey(String key) {
+        try {
+            // 集群模式下，缓存key使用Hash Tag
+            String actualKey = isCluster ? "{" + key + "}" : key;
+            if (isCluster) {
+                clusterConnection.sync().del(actualKey);
+            } else {
+                standaloneConnection.sync().del(actualKey);
+            }
+        } catch (Exception e) {
+            log.error("KVRocks DEL失败: {}", key, e);
+        }
+    }
+
+    /**
+     * 删除Key，不追加Hash Tag
+     */
+    public void deleteRawKey(String key) {
+        try {
+            if (isCluster) {
+                clusterConnection.sync().del(key);
+            } else {
+                standaloneConnection.sync().del(key);
+            }
+        } catch (Exception e) {
+            log.error("KVRocks DEL失败: {}", key, e);
+        }
+    }
+
+    public boolean exists(String key) {
+        return commands().exists(key) > 0;
+    }
+
+    /**
+     * Pipeline批量EXISTS，返回其中存在的Key
+     */
+    public Set<String> existingKeys(Collection<String> keys) {
+        if (keys.isEmpty()) {
+            return Collections.emptySet();
+        }
+        RedisClusterAsyncCommands<String, String> async = asyncCommands();
+        Map<String, RedisFuture<Long>> futures = new LinkedHashMap<>();
+        async.setAutoFlushCommands(false);
+        try {
+            for (String key : keys) {
+                futures.put(key, async.exists(key));
+            }
+            async.flushCommands();
+        } finally {
+            async.setAutoFlushCommands(true);
+        }
+        Set<String> existing = new HashSet<>();
+        for (Map.Entry<String, RedisFuture<Long>> entry : futures.entrySet()) {
+            try {
+                if (entry.getValue().get(timeoutMs, TimeUnit.MILLISECONDS) > 0) {
+                    existing.add(entry.getKey());
+                }
+            } catch (Exception e) {
+                throw new RuntimeException("EXISTS failed: " + entry.getKey(), e);
+            }
+        }
+        return existing;
+    }
+
+    public void expire(String key, long seconds) {
+        commands().expire(key, seconds);
+    }
+
+    /**
+     * 追加到列表头部并截断到maxLength
+     */
+    public void pushBounded(String key, String value, int maxLength) {
+        commands().lpush(key, value);
+        commands().ltrim(key, 0, maxLength - 1);
+    }
+
+    public List<String> range(String key, long start, long stop) {
+        return commands().lrange(key, start, stop);
+    }
+
+    // ==================== Pub/Sub ====================
+
+    public void publish(String channel, String message) {
+        commands().publish(channel, message);
+    }
+
+    /**
+     * 订阅频道，使用独立连接；返回的连接关闭即取消订阅
+     */
+    public StatefulRedisPubSubConnection<String, String> subscribe(String channel, Consumer<String> listener) {
+        StatefulRedisPubSubConnection<String, String> connection =
+                isCluster ? clusterClient.connectPubSub() : standaloneClient.connectPubSub();
+        connection.addListener(new RedisPubSubAdapter<String, String>() {
+            @Override
+            public void message(String messageChannel, String message) {
+                if (channel.equals(messageChannel)) {
+                    listener.accept(message);
+                }
+            }
+        });
+        connection.sync().subscribe(channel);
+        log.info("Subscribed to {}", channel);
+        return connection;
+    }
+
+    // ==================== Hash字段操作 (Key不追加Hash Tag) ====================
+
+    public Map<String, String> hgetAll(String key) {
+        if (isCluster) {
+            return clusterConnection.sync().hgetall(key);
+        } else {
+            return standaloneConnection.sync().hgetall(key);
+        }
+    }
+
+    /**
+     * HSCAN匹配pattern的Field
+     */
+    public List<String> hscanFields(String key, String pattern) {
+        List<String> fields = new ArrayList<>();
+        ScanIterator<KeyValue<String, String>> iterator = ScanIterator.hscan(commands(), key,
+                ScanArgs.Builder.matches(pattern).limit(config.getReclaim().getScanCount()));
+        while (iterator.hasNext()) {
+            fields.add(iterator.next().getKey());
+        }
+        return fields;
+    }
+
+    public void hset(String key, Map<String, String> fields) {
+        if (fields == null || fields.isEmpty()) {
+            return;
+        }
+        if (isCluster) {
+            clusterConnection.sync().hset(key, fields);
+        } else {
+            standaloneConnection.sync().hset(key, fields);
+        }
+    }
+
+    public void hdel(String key, Collection<String> fields) {
+        if (fields == null || fields.isEmpty()) {
+            return;
+        }
+        String[] fieldArray = fields.toArray(new String[0]);
+        if (isCluster) {
+            clusterConnection.sync().hdel(key, fieldArray);
+        } else {
+            standaloneConnection.sync().hdel(key, fieldArray);
+        }
+    }
+
+    /**
+     * 读取整个缓存Hash (解析代际指针)
+     */
+    public Map<String, String> hgetAllCache(String cacheName) {
+        Map<String, String> entries = commands().hgetall(readReplicaKey(cacheName));
+        if (valueDecoder == null) {
+            return entries;
+        }
+        Map<String, String> decoded = new HashMap<>(entries.size());
+        for (Map.Entry<String, String> entry : entries.entrySet()) {
+            decoded.put(entry.getKey(), decode(cacheName, entry.getValue()).join());
+        }
+        return decoded;
+    }
+
+    /**
+     * 读取整个缓存Set (解析代际指针)
+     */
+    public Set<String> smembersCache(String cacheName) {
+        return commands().smembers(readReplicaKey(cacheName));
+    }
+
+    /**
+     * 缓存的条目数 (HLEN/SCARD)
+     */
+    public long sizeOfCache(String cacheName) {
+        String key = readReplicaKey(cacheName);
+        return "set".equals(commands().type(key)) ? commands().scard(key) : commands().hlen(key);
+    }
+
+    // ==================== 异步查询操作 ====================
+
+    /**
+     * 与asyncHGet相同，但读取失败时返回异常而不是null，便于调用方区分不存在和失败
+     */
+    public CompletableFuture<String> asyncHGetChecked(String key, String field) {
+        return asyncCommands().hget(readReplicaKey(key), field).toCompletableFuture()
+                .thenCompose(value -> decode(key, value));
+    }
+
+    public CompletableFuture<Boolean> asyncSIsMemberChecked(String key, String member) {
+        return asyncCommands().sismember(readReplicaKey(key), member).toCompletableFuture();
+    }
+
+    public CompletableFuture<String> asyncHGet(String key, String field) {
+        try {
+            String actualKey = readReplicaKey(key);
+            if (isCluster) {
+                return clusterConnection.async().hget(actualKey, field)
+                        .toCompletableFuture()
+                        .thenCompose(value -> decode(key, value))
+                        .exceptionally(ex -> null);
+            } else {
+                return standaloneConnection.async().hget(actualKey, field)
+                        .toCompletableFuture()
+                        .thenCompose(value -> decode(key, value))
+                        .exceptionally(ex -> null);
+            }
+        } catch (Exception e) {
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+
+    /**
+     * 加载集合的Bloom Filter (配置了副本时读取一个已写入的副本)，不存在或格式错误时返回null
+     */
+    public BloomFilter loadBloomFilter(String setName) {
+        byte[] data = getBinary(replicaFor(setName, CacheKeyConstants::bloomName));
+        if (data == null) {
+            return null;
+        }
+        try {
+            return BloomFilter.fromBytes(data);
+        } catch (IllegalArgumentException e) {
+            log.warn("Invalid bloom filter for {}: {}", setName, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 先用本地Bloom Filter排除不存在的成员，可能存在时再SISMEMBER
+     */
+    public CompletableFuture<Boolean> asyncSIsMember(String key, String member, BloomFilter filter) {
+        if (filter != null && !filter.mightContain(member)) {
+            return CompletableFuture.completedFuture(false);
+        }
+        return asyncSIsMember(key, member);
+    }
+
+    public CompletableFuture<Boolean> asyncSIsMember(String key, String member) {
+        try {
+            String actualKey = readReplicaKey(key);
+            if (isCluster) {
+                return clusterConnection.async().sismember(actualKey, member)
+                        .toCompletableFuture()
+                        .exceptionally(ex -> false);
+            } else {
+                return standaloneConnection.async().sismember(actualKey, member)
+                        .toCompletableFuture()
+                        .exceptionally(ex -> false);
+            }
+        } catch (Exception e) {
+            return CompletableFuture.completedFuture(false);
+        }
+    }
+
+    /**
+     * 读取v2紧凑格式: 按原始Field查询，返回解码后的原始Value，不存在或读取失败时为null
+     */
+    public CompletableFuture<String> asyncHGetCompact(String cacheName, String field) {
+        try {
+            byte[] key = readKey(CacheKeyConstants.compactName(cacheName)).getBytes(StandardCharsets.UTF_8);
+            return rawAsyncCommands().hget(key, CompactIdCodec.encode(field))
+                    .toCompletableFuture()
+                    .thenApply(CompactIdCodec::decode)
+                    .exceptionally(ex -> null);
+        } catch (Exception e) {
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+
+    /**
+     * 缓存已写入的最高格式版本，未标记时为1
+     */
+    public int schemaVersion(String cacheName) {
+        String version = hgetAll(CacheKeyConstants.SYNC_SCHEMA).get(cacheName);
+        return version == null ? 1 : Integer.parseInt(version);
+    }
+
+    // ==================== 批量查询操作 ====================
+
+    /**
+     * HMGET: 一次读取同一缓存的多个Field
+     *
+     * @return 与fields一一对应，不存在或读取失败时为null
+     */
+    public CompletableFuture<String[]> asyncHMGet(String cacheName, String... fields) {
+        if (fields.length == 0) {
+            return CompletableFuture.completedFuture(new String[0]);
+        }
+        try {
+            return asyncCommands().hmget(readReplicaKey(cacheName), fields)
+                    .toCompletableFuture()
+                    .thenApply(values -> toValueArray(values, fields.length))
+                    .thenCompose(values -> decode(cacheName, values))
+                    .exceptionally(ex -> new String[fields.length]);
+        } catch (Exception e) {
+            return CompletableFuture.completedFuture(new String[fields.length]);
+        }
+    }
+
+    /**
+     * 多个缓存的批量读取: 每个缓存一条HMGET，全部异步发出后统一等待，
+     * 共享连接自动流水线，总耗时约为最慢节点的一次往返
+     *
+     * @param cacheNames 缓存名
+     * @param fields     fields[i] 为 cacheNames[i] 要读取的Field
+     * @return result[i][j] 对应 cacheNames[i] 的 fields[i][j]，不存在或读取失败时为null
+     */
+    public CompletableFuture<String[][]> asyncMultiHMGet(String[] cacheNames, String[][] fields) {
+        if (cacheNames.length != fields.length) {
+            throw new IllegalArgumentException("cacheNames and fields length mismatch");
+        }
+        String[][] result = new String[cacheNames.length][];
+        RedisClusterAsyncCommands<String, String> async = asyncCommands();
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < cacheNames.length; i++) {
+            result[i] = new String[fields[i].length];
+            if (fields[i].length == 0) {
+                continue;
+            }
+            String key;
+            try {
+                key = readReplicaKey(cacheNames[i]);
+            } catch (Exception e) {
+                // 与单缓存读取一致，解析失败的缓存返回null
+                log.debug("Resolve read key failed: {}, {}", cacheNames[i], e.getMessage());
+                continue;
+            }
+            int index = i;
+            futures.add(async.hmget(key, fields[index])
+                    .toCompletableFuture()
+                    .thenCompose(values -> decode(cacheNames[index], toValueArray(values, fields[index].length)))
+                    .thenAccept(values -> result[index] = values)
+                    .exceptionally(ex -> null));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).thenApply(v -> result);
+    }
+
+    /**
+     * 批量成员判断: SMISMEMBER，服务端不支持时退回流水线发出的SISMEMBER
+     *
+     * @return 与members一一对应，读取失败时为false
+     */
+    public CompletableFuture<boolean[]> asyncSMIsMember(String cacheName, String... members) {
+        if (members.length == 0) {
+            return CompletableFuture.completedFuture(new boolean[0]);
+        }
+        try {
+            String key = readReplicaKey(cacheName);
+            if (smismemberSupported) {
+                return asyncCommands().smismember(key, members)
+                        .toCompletableFuture()
+                        .thenApply(KVRocksService::toFlagArray)
+                        .handle((flags, ex) -> {
+                            if (ex == null) {
+                                return CompletableFuture.completedFuture(flags);
+                            }
+                            if (isUnknownCommand(ex)) {
+                                log.warn("SMISMEMBER not supported, fall back to SISMEMBER");
+                                smismemberSupported = false;
+                                return pipelinedSIsMember(key, members);
+                            }
+                            return CompletableFuture.completedFuture(new boolean[members.length]);
+                        })
+                        .thenCompose(future -> future);
+            }
+            return pipelinedSIsMember(key, members);
+        } catch (Exception e) {
+            return CompletableFuture.completedFuture(new boolean[members.length]);
+        }
+    }
+
+    /**
+     * 逐条SISMEMBER，应答直接写入结果数组并计数，全部返回后完成同一个future，
+     * 不为每个成员创建派生future
+     */
+    private CompletableFuture<boolean[]> pipelinedSIsMember(String key, String[] members) {
+        RedisClusterAsyncCommands<String, String> async = asyncCommands();
+        boolean[] result = new boolean[members.length];
+        CompletableFuture<boolean[]> done = new CompletableFuture<>();
+        AtomicInteger remaining = new AtomicInteger(members.length);
+        for (int i = 0; i < members.length; i++) {
+            int index = i;
+            async.sismember(key, members[i]).whenComplete((present, ex) -> {
+                // 单条失败按不存在处理
+                result[index] = ex == null && Boolean.TRUE.equals(present);
+                if (remaining.decrementAndGet() == 0) {
+                    done.complete(result);
+                }
+            });
+        }
+        return done;
+    }
+
+    private static String[] toValueArray(List<KeyValue<String, String>> values, int length) {
+        String[] result = new String[length];
+        for (int i = 0; i < length && i < values.size(); i++) {
+            KeyValue<String, String> value = values.get(i);
+            result[i] = value.hasValue() ? value.getValue() : null;
+        }
+        return result;
+    }
+
+    private static boolean isUnknownCommand(Throwable ex) {
+        for (Throwable cause = ex; cause != null; cause = cause.getCause()) {
+            String message = cause.getMessage();
+            if (cause instanceof RedisCommandExecutionException && message != null
+                    && message.toLowerCase().contains("unknown command")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean[] toFlagArray(List<Boolean> flags) {
+        boolean[] result = new boolean[flags.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = Boolean.TRUE.equals(flags.get(i));
+        }
+        return result;
+    }
+
+    // ==================== 二进制值查询 ====================
+
+    /**
+     * 读取缓存的二进制值 (如位图)，便于客户端整体加载后本地判断
+     */
+    public byte[] getBinary(String cacheName) {
+        try {
+            return binaryCommands().get(readKey(cacheName));
+        } catch (Exception e) {
+            log.error("KVRocks GET失败: {}", cacheName, e);
+            return null;
+        }
+    }
+
+    /**
+     * 整数集合的位图成员判断: GETBIT ${setName}:bitmap ${id}，配置了副本时读取一个已写入的副本
+     */
+    public CompletableFuture<Boolean> asyncBitmapContains(String setName, long id) {
+        try {
+            return asyncGetBit(replicaFor(setName, CacheKeyConstants::bitmapName), id);
+        } catch (Exception e) {
+            return CompletableFuture.completedFuture(false);
+        }
+    }
+
+    /**
+     * 位图成员判断: GETBIT ${cacheName} ${id}
+     */
+    public CompletableFuture<Boolean> asyncGetBit(String cacheName, long id) {
+        try {
+            return asyncCommands().getbit(readKey(cacheName), id)
+                    .toCompletableFuture()
+                    .thenApply(bit -> bit != null && bit == 1L)
+                    .exceptionally(ex -> false);
+        } catch (Exception e) {
+            return CompletableFuture.completedFuture(false);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        try {
+            // 等待异步回收完成
+            reclaimExecutor.shutdown();
+            if (!reclaimExecutor.awaitTermination(config.getReclaim().getAwaitSeconds(), TimeUnit.SECONDS)) {
+                log.warn("Key reclaim not finished before shutdown, remaining keys are resumed by the next run");
+            }
+
+            if (clusterConnection != null) {
+                clusterConnection.close();
+            }
+            if (binaryClusterConnection != null) {
+                binaryClusterConnection.close();
+            }
+            if (rawClusterConnection != null) {
+                rawClusterConnection.close();
+            }
+            if (clusterClient != null) {
+                clusterClient.shutdown();
+                log.info("Lettuce集群连接已关闭");
+            }
+
+            if (standaloneConnection != null) {
+                standaloneConnection.close();
+            }
+            if (binaryStandaloneConnection != null) {
+                binaryStandaloneConnection.close();
+            }
+            if (rawStandaloneConnection != null) {
+                rawStandaloneConnection.close();
             }
             if (standaloneClient != null) {
                 standaloneClient.shutdown();
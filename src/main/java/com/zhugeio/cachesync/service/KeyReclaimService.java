@@ -0,0 +1,196 @@
+package com.zhugeio.cachesync.service;
+
+import com.zhugeio.cachesync.config.CacheSyncConfig;
+import com.zhugeio.cachesync.constants.CacheKeyConstants;
+import io.lettuce.core.*;
+import io.lettuce.core.cluster.api.sync.RedisClusterCommands;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.*;
+
+/**
+ * 大Key回收服务
+ *
+ * 1. 替换KVRocksService的Key回收方式: HSCAN+HDEL / SSCAN+SREM 分批删除，批次间限速
+ * 2. 同步开始时继续上次运行未完成的回收 (sync:reclaim:pending)，
+ *    并SCAN遗留的 :temp: Key (进程中途退出导致) 和未生效的代际，按同样方式回收
+ *
+ * 所有回收都在KVRocksService的回收线程上串行执行，不阻塞同步流程和在线读取；
+ * 单次运行退出时只等待await-seconds，未完成的部分由下次运行继续，不依赖退出等待
+ */
+@Slf4j
+@Service
+public class KeyReclaimService {
+
+    private static final String TEMP_MARKER = ":temp:";
+    private static final String GENERATION_MARKER = "}:gen:";
+
+    @Autowired
+    private KVRocksService kvRocksService;
+
+    @Autowired
+    private CacheSyncConfig config;
+
+    @PostConstruct
+    public void init() {
+        if (config.getReclaim().isChunked()) {
+            kvRocksService.setKeyRetirer(this::chunkedDelete);
+        }
+    }
+
+    /**
+     * 异步继续未完成的回收，并扫描回收遗留Key
+     */
+    public void reclaimOrphansAsync() {
+        try {
+            kvRocksService.resumePendingReclaims();
+        } catch (Exception e) {
+            log.warn("Resume pending reclaims failed: {}", e.getMessage());
+        }
+        if (!config.getReclaim().isScanOrphans()) {
+            return;
+        }
+        kvRocksService.submitReclaim(() -> {
+            try {
+                reclaimOrphans();
+            } catch (Exception e) {
+                log.warn("Reclaim orphan keys failed: {}", e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * 扫描遗留的临时Key和未生效的代际并回收
+     *
+     * @return 回收的Key数量
+     */
+    public int reclaimOrphans() {
+        CacheSyncConfig.Reclaim reclaim = config.getReclaim();
+        long deadline = System.currentTimeMillis() - reclaim.getOrphanAgeMinutes() * 60_000L;
+        RedisClusterCommands<String, String> commands = kvRocksService.commands();
+
+        int reclaimed = 0;
+        for (String key : scanKeys("*" + TEMP_MARKER + "*")) {
+            Long createdAt = parseTempTimestamp(key);
+            if (createdAt != null && createdAt < deadline) {
+                log.info("Reclaiming orphan temp key: {}", key);
+                chunkedDelete(key);
+                reclaimed++;
+            }
+        }
+
+        Map<String, Set<String>> retainedGenerations = new HashMap<>();
+        Map<String, Long> currentGenerations = new HashMap<>();
+        for (String key : scanKeys("*" + GENERATION_MARKER + "*")) {
+            int idx = key.lastIndexOf(GENERATION_MARKER);
+            String generation = key.substring(idx + GENERATION_MARKER.length());
+            if (!key.startsWith("{") || !isNumeric(generation)) {
+                continue;
+            }
+            String cacheName = key.substring(1, idx);
+            Set<String> retained = retainedGenerations.computeIfAbsent(cacheName, name -> {
+                Set<String> set = new HashSet<>(commands.lrange(CacheKeyConstants.generationListKey(name), 0, -1));
+                String current = commands.get(CacheKeyConstants.generationPointerKey(name));
+                if (current != null) {
+                    set.add(current);
+                }
+                return set;
+            });
+            // 比当前代际旧且不在保留列表中，说明写入后未生效或已被移出列表
+            long current = currentGenerations.computeIfAbsent(cacheName, kvRocksService::getCurrentGeneration);
+            if (!retained.contains(generation) && Long.parseLong(generation) < current) {
+                log.info("Reclaiming orphan generation: {}", key);
+                chunkedDelete(key);
+                reclaimed++;
+            }
+        }
+
+        log.info("Orphan key reclaim finished, {} keys reclaimed", reclaimed);
+        return reclaimed;
+    }
+
+    /**
+     * 分批删除大Key: Hash/Set按chunk-size逐批删除字段，最后DEL剩余的空Key
+     */
+    public void chunkedDelete(String key) {
+        CacheSyncConfig.Reclaim reclaim = config.getReclaim();
+        RedisClusterCommands<String, String> commands = kvRocksService.commands();
+        ScanArgs args = ScanArgs.Builder.limit(reclaim.getChunkSize());
+
+        String type = commands.type(key);
+        long removed = 0;
+        if ("hash".equals(type)) {
+            ScanCursor cursor = ScanCursor.INITIAL;
+            do {
+                MapScanCursor<String, String> page = commands.hscan(key, cursor, args);
+                if (!page.getMap().isEmpty()) {
+                    removed += commands.hdel(key, page.getMap().keySet().toArray(new String[0]));
+                    pause(reclaim.getChunkIntervalMs());
+                }
+                cursor = page;
+            } while (!cursor.isFinished());
+        } else if ("set".equals(type)) {
+            ScanCursor cursor = ScanCursor.INITIAL;
+            do {
+                ValueScanCursor<String> page = commands.sscan(key, cursor, args);
+                if (!page.getValues().isEmpty()) {
+                    removed += commands.srem(key, page.getValues().toArray(new String[0]));
+                    pause(reclaim.getChunkIntervalMs());
+                }
+                cursor = page;
+            } while (!cursor.isFinished());
+        }
+
+        commands.del(key);
+        log.debug("Chunked delete completed: {} ({}, {} elements)", key, type, removed);
+    }
+
+    private List<String> scanKeys(String pattern) {
+        List<String> keys = new ArrayList<>();
+        ScanIterator<String> iterator = ScanIterator.scan(kvRocksService.commands(),
+                ScanArgs.Builder.matches(pattern).limit(config.getReclaim().getScanCount()));
+        while (iterator.hasNext()) {
+            keys.add(iterator.next());
+        }
+        return keys;
+    }
+
+    /**
+     * 临时Key格式: ...:temp:${ts}
+     */
+    static Long parseTempTimestamp(String key) {
+        int idx = key.lastIndexOf(TEMP_MARKER);
+        if (idx < 0) {
+            return null;
+        }
+        String ts = key.substring(idx + TEMP_MARKER.length());
+        return isNumeric(ts) ? Long.parseLong(ts) : null;
+    }
+
+    private static boolean isNumeric(String value) {
+        if (value.isEmpty() || value.length() > 18) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            if (!Character.isDigit(value.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void pause(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Key reclaim interrupted", e);
+        }
+    }
+}
@@ -0,0 +1,423 @@
+package com.zhugeio.cachesync.service;
+
+import com.zhugeio.cachesync.cdc.RowChange;
+import com.zhugeio.cachesync.config.CacheSyncConfig;
+import com.zhugeio.cachesync.constants.CacheKeyConstants;
+import com.zhugeio.cachesync.dao.FrontDao;
+import com.zhugeio.cachesync.entity.CacheDelta;
+import com.zhugeio.cachesync.entity.SyncResult;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+
+/**
+ * 元数据表行 -> 缓存字段级变更
+ *
+ * 推导规则与FrontDao全量加载一致，供水位增量、CDC和定向刷新共用；
+ * 涉及虚拟属性定义(attr_type=1)的行仍推导非虚拟缓存，但虚拟属性是列表型缓存无法按行推导，
+ * 此时返回false，由调用方决定退回全量
+ */
+@Slf4j
+@Component
+public class RowDeltaMapper {
+
+    @Autowired
+    private KVRocksService kvRocksService;
+
+    @Autowired
+    private FrontDao frontDao;
+
+    @Autowired
+    private CacheSyncConfig config;
+
+    @Autowired
+    private AppPartitionService appPartitionService;
+
+    @Autowired
+    private ChangeNotifier changeNotifier;
+
+    /**
+     * 元数据表读取的列
+     */
+    private static final Map<String, String> TABLE_COLUMNS = new LinkedHashMap<>();
+
+    /**
+     * 元数据表的唯一键，水位相同的行按其分页
+     */
+    private static final Map<String, List<String>> TABLE_KEYS = new HashMap<>();
+
+    /**
+     * 缓存 -> 数据来源表
+     */
+    private static final Map<String, List<String>> CACHE_SOURCES = new LinkedHashMap<>();
+
+    static {
+        TABLE_COLUMNS.put("company_app", "id, app_key, company_id, is_delete, stop, auto_event");
+        TABLE_COLUMNS.put("event", "id, app_id, owner, event_name, is_delete, is_stop");
+        TABLE_COLUMNS.put("event_attr", "event_id, attr_id, attr_name, owner, is_delete, is_stop, " +
+                "attr_type, alias_name, column_name");
+        TABLE_COLUMNS.put("user_prop_meta", "id, app_id, owner, name, is_delete, attr_type");
+        TABLE_COLUMNS.put("device_prop", "id, app_id, owner, name");
+
+        TABLE_KEYS.put("company_app", Collections.singletonList("id"));
+        TABLE_KEYS.put("event", Collections.singletonList("id"));
+        TABLE_KEYS.put("event_attr", Arrays.asList("event_id", "attr_id"));
+        TABLE_KEYS.put("user_prop_meta", Collections.singletonList("id"));
+        TABLE_KEYS.put("device_prop", Collections.singletonList("id"));
+
+        CACHE_SOURCES.put(CacheKeyConstants.APP_KEY_APP_ID_MAP, Collections.singletonList("company_app"));
+        CACHE_SOURCES.put(CacheKeyConstants.CID_BY_AID_MAP, Collections.singletonList("company_app"));
+        CACHE_SOURCES.put(CacheKeyConstants.APP_ID_NONE_AUTO_CREATE_SET, Collections.singletonList("company_app"));
+        CACHE_SOURCES.put(CacheKeyConstants.APP_ID_EVENT_ID_MAP, Collections.singletonList("event"));
+        CACHE_SOURCES.put(CacheKeyConstants.BLACK_EVENT_ID_SET, Collections.singletonList("event"));
+        CACHE_SOURCES.put(CacheKeyConstants.APP_ID_EVENT_ATTR_ID_MAP, Collections.singletonList("event_attr"));
+        CACHE_SOURCES.put(CacheKeyConstants.BLACK_EVENT_ATTR_ID_SET, Collections.singletonList("event_attr"));
+        CACHE_SOURCES.put(CacheKeyConstants.EVENT_ATTR_COLUMN_MAP, Collections.singletonList("event_attr"));
+        CACHE_SOURCES.put(CacheKeyConstants.EVENT_ATTR_ALIAS_MAP, Collections.singletonList("event_attr"));
+        CACHE_SOURCES.put(CacheKeyConstants.VIRTUAL_EVENT_PROP_MAP, Collections.singletonList("event_attr"));
+        CACHE_SOURCES.put(CacheKeyConstants.EVENT_VIRTUAL_ATTR_IDS_SET, Collections.singletonList("event_attr"));
+        CACHE_SOURCES.put(CacheKeyConstants.APP_ID_PROP_ID_MAP, Collections.singletonList("user_prop_meta"));
+        CACHE_SOURCES.put(CacheKeyConstants.APP_ID_PROP_ID_ORIGINAL_MAP, Collections.singletonList("user_prop_meta"));
+        CACHE_SOURCES.put(CacheKeyConstants.BLACK_USER_PROP_SET, Collections.singletonList("user_prop_meta"));
+        CACHE_SOURCES.put(CacheKeyConstants.VIRTUAL_USER_PROP_MAP, Collections.singletonList("user_prop_meta"));
+        CACHE_SOURCES.put(CacheKeyConstants.VIRTUAL_PROP_APP_IDS_SET, Arrays.asList("event_attr", "user_prop_meta"));
+        CACHE_SOURCES.put(CacheKeyConstants.APP_ID_DEVICE_PROP_ID_MAP, Collections.singletonList("device_prop"));
+    }
+
+    public boolean isSupported(String table) {
+        return TABLE_COLUMNS.containsKey(table);
+    }
+
+    public Set<String> supportedTables() {
+        return TABLE_COLUMNS.keySet();
+    }
+
+    public String columnsOf(String table) {
+        return TABLE_COLUMNS.get(table);
+    }
+
+    public List<String> keyColumnsOf(String table) {
+        return TABLE_KEYS.get(table);
+    }
+
+    /**
+     * 数据来自该表的缓存
+     */
+    public List<String> cachesSourcedFrom(String table) {
+        List<String> caches = new ArrayList<>();
+        for (Map.Entry<String, List<String>> entry : CACHE_SOURCES.entrySet()) {
+            if (entry.getValue().contains(table)) {
+                caches.add(entry.getKey());
+            }
+        }
+        return caches;
+    }
+
+    /**
+     * 所有来源表都在tables中的缓存
+     */
+    public Set<String> cachesCoveredBy(Set<String> tables) {
+        Set<String> covered = new HashSet<>();
+        for (Map.Entry<String, List<String>> entry : CACHE_SOURCES.entrySet()) {
+            if (tables.containsAll(entry.getValue())) {
+                covered.add(entry.getKey());
+            }
+        }
+        return covered;
+    }
+
+    // ==================== 推导 ====================
+
+    /**
+     * 按行的当前值推导变更 (只有写入，不处理删除)
+     *
+     * @return false表示涉及无法按行推导的数据
+     */
+    public boolean derive(String table, List<Map<String, Object>> rows, Map<String, CacheDelta> deltas) {
+        return derive(table, rows, deltas, lookup(Collections.singletonMap(table, rows)));
+    }
+
+    private boolean derive(String table, List<Map<String, Object>> rows, Map<String, CacheDelta> deltas, Lookups lookups) {
+        if (rows.isEmpty()) {
+            return true;
+        }
+        switch (table) {
+            case "company_app":
+                return deriveCompanyApp(rows, deltas, lookups);
+            case "event":
+                return deriveEvent(rows, deltas);
+            case "event_attr":
+                return deriveEventAttr(rows, deltas, lookups);
+            case "user_prop_meta":
+                return deriveUserPropMeta(rows, deltas);
+            case "device_prop":
+                return deriveDeviceProp(rows, deltas);
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * 一行变更: 变更后的值写入，变更前推导出而变更后不再存在的Field/成员删除
+     *
+     * @return false表示涉及无法按行推导的数据
+     */
+    public boolean derive(RowChange change, Map<String, CacheDelta> deltas) {
+        return derive(change, deltas, lookup(Collections.singletonList(change)));
+    }
+
+    /**
+     * 使用 {@link #lookup(Collection)} 预先查询的关联数据推导一行变更
+     */
+    boolean derive(RowChange change, Map<String, CacheDelta> deltas, Lookups lookups) {
+        Map<String, CacheDelta> before = new HashMap<>();
+        Map<String, CacheDelta> after = new HashMap<>();
+        if (change.getBefore() != null
+                && !derive(change.getTable(), Collections.singletonList(change.getBefore()), before, lookups)) {
+            return false;
+        }
+        if (change.getAfter() != null
+                && !derive(change.getTable(), Collections.singletonList(change.getAfter()), after, lookups)) {
+            return false;
+        }
+
+        Set<String> caches = new HashSet<>(before.keySet());
+        caches.addAll(after.keySet());
+        for (String cacheName : caches) {
+            CacheDelta target = delta(deltas, cacheName);
+            CacheDelta old = before.get(cacheName);
+            CacheDelta current = after.get(cacheName);
+            if (old != null) {
+                for (String field : old.getPuts().keySet()) {
+                    if (current == null || !current.getPuts().containsKey(field)) {
+                        target.delete(field);
+                    }
+                }
+                for (String member : old.getAdds()) {
+                    if (current == null || (!current.getAdds().contains(member) && !current.getRemoves().contains(member))) {
+                        target.member(member, false);
+                    }
+                }
+            }
+            if (current != null) {
+                current.getPuts().forEach(target::put);
+                current.getAdds().forEach(member -> target.member(member, true));
+                current.getRemoves().forEach(member -> target.member(member, false));
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 一批变更 (含变更前后的行) 推导时需要的关联数据，每类只查询一次
+     */
+    Lookups lookup(Collection<RowChange> changes) {
+        Map<String, List<Map<String, Object>>> rowsByTable = new HashMap<>();
+        for (RowChange change : changes) {
+            List<Map<String, Object>> rows = rowsByTable.computeIfAbsent(change.getTable(), k -> new ArrayList<>());
+            if (change.getBefore() != null) {
+                rows.add(change.getBefore());
+            }
+            if (change.getAfter() != null) {
+                rows.add(change.getAfter());
+            }
+        }
+        return lookup(rowsByTable);
+    }
+
+    private Lookups lookup(Map<String, List<Map<String, Object>>> rowsByTable) {
+        Lookups lookups = new Lookups();
+        List<Map<String, Object>> appRows = rowsByTable.get("company_app");
+        if (appRows != null && !appRows.isEmpty()) {
+            lookups.transferIds = frontDao.getTransferredAppIds();
+        }
+        List<Map<String, Object>> attrRows = rowsByTable.get("event_attr");
+        if (attrRows != null && !attrRows.isEmpty()) {
+            Set<Integer> eventIds = new HashSet<>();
+            for (Map<String, Object> row : attrRows) {
+                eventIds.add(intOf(row, "event_id"));
+            }
+            lookups.eventInfos = frontDao.getEventInfos(eventIds);
+            Set<Integer> appIds = new HashSet<>();
+            for (FrontDao.EventInfo eventInfo : lookups.eventInfos.values()) {
+                appIds.add(eventInfo.appId);
+            }
+            lookups.validAppIds = frontDao.filterValidAppIds(appIds);
+        }
+        return lookups;
+    }
+
+    /**
+     * 推导依赖的关联数据: 已迁移的app、事件信息、有效的app
+     */
+    static final class Lookups {
+        Set<Integer> transferIds = Collections.emptySet();
+        Map<Integer, FrontDao.EventInfo> eventInfos = Collections.emptyMap();
+        Set<Integer> validAppIds = Collections.emptySet();
+    }
+
+    private boolean deriveCompanyApp(List<Map<String, Object>> rows, Map<String, CacheDelta> deltas, Lookups lookups) {
+        Set<Integer> transferIds = lookups.transferIds;
+        for (Map<String, Object> row : rows) {
+            int id = intOf(row, "id");
+            String appKey = (String) row.get("app_key");
+            boolean valid = intOf(row, "is_delete") == 0 && intOf(row, "stop") == 0;
+
+            delta(deltas, CacheKeyConstants.CID_BY_AID_MAP).put(String.valueOf(id), String.valueOf(intOf(row, "company_id")));
+            if (valid && appKey != null && !transferIds.contains(id)) {
+                delta(deltas, CacheKeyConstants.APP_KEY_APP_ID_MAP).put(appKey, String.valueOf(id));
+            }
+            delta(deltas, CacheKeyConstants.APP_ID_NONE_AUTO_CREATE_SET)
+                    .member(String.valueOf(id), valid && intOf(row, "auto_event") == 0);
+        }
+        return true;
+    }
+
+    private boolean deriveEvent(List<Map<String, Object>> rows, Map<String, CacheDelta> deltas) {
+        for (Map<String, Object> row : rows) {
+            int id = intOf(row, "id");
+            String eventName = (String) row.get("event_name");
+            if (eventName != null) {
+                delta(deltas, CacheKeyConstants.APP_ID_EVENT_ID_MAP)
+                        .put(intOf(row, "app_id") + "_" + row.get("owner") + "_" + eventName, String.valueOf(id));
+            }
+            delta(deltas, CacheKeyConstants.BLACK_EVENT_ID_SET)
+                    .member(String.valueOf(id), intOf(row, "is_delete") == 1 || intOf(row, "is_stop") == 1);
+        }
+        return true;
+    }
+
+    private boolean deriveEventAttr(List<Map<String, Object>> rows, Map<String, CacheDelta> deltas, Lookups lookups) {
+        boolean virtual = false;
+        for (Map<String, Object> row : rows) {
+            virtual |= intOf(row, "attr_type") == 1;
+        }
+
+        Map<Integer, FrontDao.EventInfo> eventInfos = lookups.eventInfos;
+        Set<Integer> validAppIds = lookups.validAppIds;
+        for (Map<String, Object> row : rows) {
+            int eventId = intOf(row, "event_id");
+            FrontDao.EventInfo eventInfo = eventInfos.get(eventId);
+            if (eventInfo == null) {
+                continue;
+            }
+            int attrId = intOf(row, "attr_id");
+            String attrName = (String) row.get("attr_name");
+            String columnName = (String) row.get("column_name");
+            String aliasName = (String) row.get("alias_name");
+
+            if (columnName != null) {
+                delta(deltas, CacheKeyConstants.EVENT_ATTR_COLUMN_MAP).put(eventId + "_" + attrId, columnName);
+            }
+            if (attrName != null && validAppIds.contains(eventInfo.appId)) {
+                delta(deltas, CacheKeyConstants.APP_ID_EVENT_ATTR_ID_MAP)
+                        .put(eventInfo.appId + "_" + eventId + "_" + row.get("owner") + "_" + attrName.toUpperCase(),
+                                String.valueOf(attrId));
+            }
+            delta(deltas, CacheKeyConstants.BLACK_EVENT_ATTR_ID_SET).member(String.valueOf(attrId),
+                    (intOf(row, "is_delete") == 1 || intOf(row, "is_stop") == 1) && intOf(row, "attr_type") != 1);
+            if (aliasName != null && !aliasName.isEmpty() && eventInfo.isValid) {
+                delta(deltas, CacheKeyConstants.EVENT_ATTR_ALIAS_MAP)
+                        .put(eventInfo.appId + "_" + eventInfo.owner + "_" + eventInfo.eventName + "_" + attrName, aliasName);
+            }
+        }
+        return !virtual;
+    }
+
+    private boolean deriveUserPropMeta(List<Map<String, Object>> rows, Map<String, CacheDelta> deltas) {
+        boolean virtual = false;
+        for (Map<String, Object> row : rows) {
+            virtual |= intOf(row, "attr_type") == 1;
+            int id = intOf(row, "id");
+            int appId = intOf(row, "app_id");
+            Object owner = row.get("owner");
+            String name = (String) row.get("name");
+            if (name != null) {
+                delta(deltas, CacheKeyConstants.APP_ID_PROP_ID_MAP)
+                        .put(appId + "_" + owner + "_" + name.toUpperCase(), String.valueOf(id));
+                delta(deltas, CacheKeyConstants.APP_ID_PROP_ID_ORIGINAL_MAP).put(appId + "_" + owner + "_" + id, name);
+            }
+            delta(deltas, CacheKeyConstants.BLACK_USER_PROP_SET).member(String.valueOf(id), intOf(row, "is_delete") == 1);
+        }
+        return !virtual;
+    }
+
+    private boolean deriveDeviceProp(List<Map<String, Object>> rows, Map<String, CacheDelta> deltas) {
+        for (Map<String, Object> row : rows) {
+            String name = (String) row.get("name");
+            if (name != null) {
+                delta(deltas, CacheKeyConstants.APP_ID_DEVICE_PROP_ID_MAP)
+                        .put(intOf(row, "app_id") + "_" + row.get("owner") + "_" + name, String.valueOf(intOf(row, "id")));
+            }
+        }
+        return true;
+    }
+
+    // ==================== 写入 ====================
+
+    /**
+     * 写入当前生效的Key (含副本): Hash字段覆盖/删除，整数Set同时更新已发布的位图，已拆分的app分区同步更新；
+     * 每个缓存写入后发布变更通知
+     */
+    public void apply(Collection<CacheDelta> deltas, SyncResult result) {
+        for (CacheDelta delta : deltas) {
+            if (!delta.isEmpty()) {
+                apply(delta, result);
+                changeNotifier.publishDelta(delta);
+            }
+        }
+    }
+
+    private void apply(CacheDelta delta, SyncResult result) {
+        String cacheName = delta.getCacheName();
+        List<String> replicaNames = kvRocksService.replicaNames(cacheName);
+        if (!delta.getPuts().isEmpty() || !delta.getDeletes().isEmpty()) {
+            // 只写入app分区的缓存没有全局Hash，不能增量写出不完整的全局Hash
+            boolean globalSkipped = AppPartitionService.PARTITIONED_CACHES.contains(cacheName) && appPartitionService.isSkipGlobal();
+            for (String name : globalSkipped ? Collections.<String>emptyList() : replicaNames) {
+                result.recordWrite(kvRocksService.applyHashDelta(
+                        kvRocksService.readKey(name), delta.getPuts(), delta.getDeletes()));
+            }
+            CacheSyncConfig.Compact compact = config.getCompact();
+            if (!globalSkipped && compact.isEnabled() && compact.getCaches().contains(cacheName)) {
+                kvRocksService.applyCompactHashDelta(cacheName, delta.getPuts(), delta.getDeletes());
+            }
+            if (AppPartitionService.PARTITIONED_CACHES.contains(cacheName)) {
+                result.recordWrite(appPartitionService.applyIncrement(cacheName, delta.getPuts(), delta.getDeletes()));
+            }
+        }
+        if (!delta.getAdds().isEmpty() || !delta.getRemoves().isEmpty()) {
+            if (config.getBitmap().getCaches().contains(cacheName)) {
+                for (String name : replicaNames) {
+                    result.recordWrite(kvRocksService.applyBitDelta(name,
+                            toIntegers(delta.getAdds()), toIntegers(delta.getRemoves())));
+                }
+            }
+            for (String name : replicaNames) {
+                String liveKey = kvRocksService.readKey(name);
+                if (kvRocksService.exists(liveKey)) {
+                    result.recordWrite(kvRocksService.applySetDelta(liveKey, delta.getAdds(), delta.getRemoves()));
+                }
+            }
+        }
+    }
+
+    private static CacheDelta delta(Map<String, CacheDelta> deltas, String cacheName) {
+        return deltas.computeIfAbsent(cacheName, CacheDelta::new);
+    }
+
+    private static int intOf(Map<String, Object> row, String column) {
+        Object value = row.get(column);
+        return value == null ? 0 : ((Number) value).intValue();
+    }
+
+    private static List<Integer> toIntegers(Collection<String> members) {
+        List<Integer> result = new ArrayList<>();
+        for (String member : members) {
+            result.add(Integer.valueOf(member));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,175 @@
+package com.zhugeio.cachesync.service;
+
+import com.alibaba.fastjson.JSON;
+import com.zhugeio.cachesync.config.CacheSyncConfig;
+import com.zhugeio.cachesync.constants.CacheKeyConstants;
+import com.zhugeio.cachesync.entity.RunRecord;
+import com.zhugeio.cachesync.entity.SyncResult;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+
+/**
+ * 运行历史与性能回退检测
+ *
+ * 每次全量结束后把各缓存的行数、字节数、阶段耗时追加到 sync:history (有界列表)，
+ * 并与最近若干次运行的中位数比较: 总耗时或任一阶段耗时超过 基线*regression-ratio
+ * 且超出量不小于min-regression-ms 时告警，严格模式下由调用方以非0状态码退出
+ *
+ * 告警同时给出行数相对基线的变化，用于区分数据增长和读写变慢；
+ * 同一缓存的增量写入和整体替换分别作为基线，不互相比较
+ */
+@Slf4j
+@Service
+public class RunHistoryService {
+
+    private static final String TOTAL = "total";
+
+    @Autowired
+    private KVRocksService kvRocksService;
+
+    @Autowired
+    private CacheSyncConfig config;
+
+    private volatile List<String> lastRegressions = Collections.emptyList();
+
+    /**
+     * 记录本次运行并与基线比较
+     *
+     * @return 回退描述，无回退时为空
+     */
+    public List<String> record(Collection<SyncResult> results, long costMs) {
+        CacheSyncConfig.History history = config.getHistory();
+        if (!history.isEnabled()) {
+            return Collections.emptyList();
+        }
+        RunRecord current = toRecord(results, costMs);
+        List<String> regressions = Collections.emptyList();
+        try {
+            regressions = detect(current, loadRecent(history.getBaselineRuns()));
+            kvRocksService.pushBounded(CacheKeyConstants.SYNC_HISTORY, JSON.toJSONString(current), history.getMaxRuns());
+        } catch (Exception e) {
+            // 历史记录失败不影响同步结果
+            log.warn("Failed to record run history: {}", e.getMessage());
+        }
+        for (String regression : regressions) {
+            log.warn("Performance regression: {}", regression);
+        }
+        lastRegressions = regressions;
+        return regressions;
+    }
+
+    /**
+     * 严格模式下最近一次运行是否存在回退
+     */
+    public boolean isStrictFailure() {
+        return config.getHistory().isEnabled() && config.getHistory().isStrict() && !lastRegressions.isEmpty();
+    }
+
+    public List<String> getLastRegressions() {
+        return lastRegressions;
+    }
+
+    /**
+     * 最近的运行记录，最新的在前
+     */
+    public List<RunRecord> loadRecent(int count) {
+        List<RunRecord> records = new ArrayList<>();
+        for (String json : kvRocksService.range(CacheKeyConstants.SYNC_HISTORY, 0, count - 1)) {
+            try {
+                records.add(JSON.parseObject(json, RunRecord.class));
+            } catch (Exception e) {
+                log.warn("Skip invalid run history entry: {}", json);
+            }
+        }
+        return records;
+    }
+
+    private RunRecord toRecord(Collection<SyncResult> results, long costMs) {
+        RunRecord record = new RunRecord();
+        record.setTimestamp(System.currentTimeMillis());
+        record.setCostMs(costMs);
+        List<SyncResult> snapshot;
+        synchronized (results) {
+            snapshot = new ArrayList<>(results);
+        }
+        boolean success = true;
+        for (SyncResult result : snapshot) {
+            RunRecord.CacheRun run = new RunRecord.CacheRun();
+            run.setRows(result.getSyncCount().get());
+            run.setBytes(result.getBytesWritten());
+            run.setCommands(result.getCommands());
+            run.setCostMs(result.getCostTime());
+            run.setChangedFields(result.getChangedFields());
+            run.setIncremental(result.isIncremental());
+            run.setSuccess(result.isSuccess());
+            run.setPhaseMillis(new LinkedHashMap<>(result.getPhaseMillis()));
+            record.getCaches().put(result.getCacheName(), run);
+            success &= result.isSuccess();
+        }
+        record.setSuccess(success);
+        return record;
+    }
+
+    List<String> detect(RunRecord current, List<RunRecord> history) {
+        CacheSyncConfig.History options = config.getHistory();
+        List<String> regressions = new ArrayList<>();
+        for (Map.Entry<String, RunRecord.CacheRun> entry : current.getCaches().entrySet()) {
+            String cacheName = entry.getKey();
+            RunRecord.CacheRun run = entry.getValue();
+            if (!run.isSuccess()) {
+                continue;
+            }
+            List<RunRecord.CacheRun> baseline = new ArrayList<>();
+            for (RunRecord record : history) {
+                RunRecord.CacheRun previous = record.getCaches().get(cacheName);
+                if (previous != null && previous.isSuccess() && previous.isIncremental() == run.isIncremental()) {
+                    baseline.add(previous);
+                }
+            }
+            if (baseline.size() < options.getMinSamples()) {
+                continue;
+            }
+
+            Map<String, Long> metrics = new LinkedHashMap<>();
+            metrics.put(TOTAL, run.getCostMs());
+            metrics.putAll(run.getPhaseMillis());
+            for (Map.Entry<String, Long> metric : metrics.entrySet()) {
+                List<Long> samples = new ArrayList<>();
+                for (RunRecord.CacheRun previous : baseline) {
+                    Long value = TOTAL.equals(metric.getKey())
+                            ? Long.valueOf(previous.getCostMs()) : previous.getPhaseMillis().get(metric.getKey());
+                    if (value != null) {
+                        samples.add(value);
+                    }
+                }
+                if (samples.size() < options.getMinSamples()) {
+                    continue;
+                }
+                long expected = median(samples);
+                long value = metric.getValue();
+                if (value > expected * options.getRegressionRatio()
+                        && value - expected >= options.getMinRegressionMs()) {
+                    List<Long> rows = new ArrayList<>();
+                    for (RunRecord.CacheRun previous : baseline) {
+                        rows.add(previous.getRows());
+                    }
+                    regressions.add(String.format("%s (%s) %s %d ms vs baseline %d ms (x%.2f), rows %d vs %d",
+                            cacheName, run.isIncremental() ? "incremental" : "full", metric.getKey(),
+                            value, expected, (double) value / Math.max(1, expected),
+                            run.getRows(), median(rows)));
+                }
+            }
+        }
+        return regressions;
+    }
+
+    static long median(List<Long> values) {
+        List<Long> sorted = new ArrayList<>(values);
+        Collections.sort(sorted);
+        int middle = sorted.size() / 2;
+        return sorted.size() % 2 == 1 ? sorted.get(middle) : (sorted.get(middle - 1) + sorted.get(middle)) / 2;
+    }
+}
@@ -0,0 +1,155 @@
+package com.zhugeio.cachesync.service;
+
+import com.zhugeio.cachesync.constants.CacheKeyConstants;
+import com.zhugeio.cachesync.dao.FrontDao;
+import com.zhugeio.cachesync.entity.CacheDelta;
+import com.zhugeio.cachesync.entity.SyncResult;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+
+/**
+ * 定向刷新服务
+ *
+ * 按缓存刷新: 只执行指定缓存的全量同步
+ * 按app刷新: 只读取该app的行 (WHERE app_id = ?)，经 {@link RowDeltaMapper} 写入受影响的Field；
+ * 以 appId_ 开头的Hash缓存找出库中已不存在的Field并删除: 已按app拆分的直接读取该app的分区，其余HSCAN全局Hash
+ *
+ * 虚拟属性相关的列表缓存 (virtualEventAttrMap等) 无法按app拆分，需按缓存刷新
+ */
+@Slf4j
+@Service
+public class TargetedRefreshService {
+
+    /**
+     * Field以 appId_ 开头的Hash缓存
+     */
+    private static final List<String> APP_PREFIXED_CACHES = Arrays.asList(
+            CacheKeyConstants.APP_ID_EVENT_ID_MAP,
+            CacheKeyConstants.APP_ID_EVENT_ATTR_ID_MAP,
+            CacheKeyConstants.EVENT_ATTR_ALIAS_MAP,
+            CacheKeyConstants.APP_ID_PROP_ID_MAP,
+            CacheKeyConstants.APP_ID_PROP_ID_ORIGINAL_MAP,
+            CacheKeyConstants.APP_ID_DEVICE_PROP_ID_MAP);
+
+    @Autowired
+    private CacheSyncService cacheSyncService;
+
+    @Autowired
+    private RowDeltaMapper rowDeltaMapper;
+
+    @Autowired
+    private KVRocksService kvRocksService;
+
+    @Autowired
+    private FrontDao frontDao;
+
+    @Autowired
+    private AppPartitionService appPartitionService;
+
+    /**
+     * @param caches 逗号分隔的缓存名，可为空
+     * @param appIds 逗号分隔的appId，可为空
+     */
+    public List<SyncResult> refresh(String caches, String appIds) {
+        List<SyncResult> results = new ArrayList<>();
+        if (caches != null && !caches.trim().isEmpty()) {
+            results.addAll(refreshCaches(splitValues(caches)));
+        }
+        if (appIds != null && !appIds.trim().isEmpty()) {
+            for (String appId : splitValues(appIds)) {
+                results.add(refreshApp(Integer.parseInt(appId)));
+            }
+        }
+        return results;
+    }
+
+    private static List<String> splitValues(String values) {
+        List<String> result = new ArrayList<>();
+        for (String value : values.split(",")) {
+            if (!value.trim().isEmpty()) {
+                result.add(value.trim());
+            }
+        }
+        return result;
+    }
+
+    public List<SyncResult> refreshCaches(Collection<String> cacheNames) {
+        return cacheSyncService.refreshCaches(cacheNames);
+    }
+
+    /**
+     * 刷新单个app在各缓存中的数据
+     */
+    public SyncResult refreshApp(int appId) {
+        SyncResult result = new SyncResult("app:" + appId);
+        try {
+            Map<String, CacheDelta> deltas = new LinkedHashMap<>();
+            long rows = 0;
+            for (String table : rowDeltaMapper.supportedTables()) {
+                List<Map<String, Object>> tableRows = frontDao.getRowsForApp(table, rowDeltaMapper.columnsOf(table), appId);
+                if (!rowDeltaMapper.derive(table, tableRows, deltas)) {
+                    log.info("App {} has virtual attributes in {}, refresh virtual caches by name if needed", appId, table);
+                }
+                if ("company_app".equals(table)) {
+                    removeApp(appId, tableRows, deltas);
+                }
+                rows += tableRows.size();
+            }
+
+            for (String cacheName : APP_PREFIXED_CACHES) {
+                CacheDelta delta = deltas.computeIfAbsent(cacheName, CacheDelta::new);
+                for (String field : cachedFields(cacheName, appId)) {
+                    if (!delta.getPuts().containsKey(field)) {
+                        delta.delete(field);
+                    }
+                }
+            }
+
+            rowDeltaMapper.apply(deltas.values(), result);
+            result.addCount(rows);
+            log.info("Refreshed app {} - {} rows, {} cache updates",
+                    appId, rows, deltas.values().stream().mapToInt(CacheDelta::size).sum());
+        } catch (Exception e) {
+            result.fail(e.getMessage());
+            log.error("Failed to refresh app {}", appId, e);
+        }
+        result.finish();
+        return result;
+    }
+
+    /**
+     * 缓存中该app的Field: 已拆分的app读取分区Key，否则HSCAN全局Hash
+     */
+    private Collection<String> cachedFields(String cacheName, int appId) {
+        if (appPartitionService.isPartitioned(cacheName)) {
+            Map<String, String> partition = kvRocksService.hgetAll(
+                    CacheKeyConstants.appPartitionKey(cacheName, String.valueOf(appId)));
+            if (!partition.isEmpty() || appPartitionService.isSkipGlobal()) {
+                return partition.keySet();
+            }
+        }
+        return kvRocksService.hscanFields(kvRocksService.readKey(cacheName), appId + "_*");
+    }
+
+    /**
+     * app已删除或停用时移除其映射
+     */
+    private void removeApp(int appId, List<Map<String, Object>> rows, Map<String, CacheDelta> deltas) {
+        String id = String.valueOf(appId);
+        if (rows.isEmpty()) {
+            deltas.computeIfAbsent(CacheKeyConstants.CID_BY_AID_MAP, CacheDelta::new).delete(id);
+            deltas.computeIfAbsent(CacheKeyConstants.APP_ID_NONE_AUTO_CREATE_SET, CacheDelta::new).member(id, false);
+            return;
+        }
+        CacheDelta appKeys = deltas.computeIfAbsent(CacheKeyConstants.APP_KEY_APP_ID_MAP, CacheDelta::new);
+        for (Map<String, Object> row : rows) {
+            String appKey = (String) row.get("app_key");
+            if (appKey != null && !appKeys.getPuts().containsKey(appKey)) {
+                appKeys.delete(appKey);
+            }
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.zhugeio.cachesync.service;
+
+import com.zhugeio.cachesync.codec.ValueCompressor;
+import com.zhugeio.cachesync.config.CacheSyncConfig;
+import com.zhugeio.cachesync.constants.CacheKeyConstants;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 大Value压缩
+ *
+ * 写入: 配置的缓存在替换前压缩超过min-length的Value (格式见 {@link ValueCompressor})，
+ * 字典按retrain-hours从本缓存的Value重新训练，写入 {cacheName}:dict:${id}，当前字典ID记录在 {cacheName}:dict:current；
+ * 被替换的旧字典保留dictionary-retain-days，供回滚的代际读取
+ *
+ * 读取: 注册为KVRocksService的Value解码方式，HGET/HMGET/近端缓存读取配置的缓存时自动解压，
+ * 按帧中的字典ID异步加载并缓存字典，未压缩的Value原样返回；字典缺失或帧损坏时读取失败，不返回压缩帧
+ */
+@Slf4j
+@Service
+public class ValueCompressionService {
+
+    @Autowired
+    private KVRocksService kvRocksService;
+
+    @Autowired
+    private CacheSyncConfig config;
+
+    /**
+     * 读取方的字典缓存: cacheName:id -> 字典
+     */
+    private final Map<String, byte[]> dictionaries = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        if (config.getCompression().isEnabled()) {
+            kvRocksService.setValueDecoder(this::asyncDecompress);
+        }
+    }
+
+    public boolean isEnabledFor(String cacheName) {
+        CacheSyncConfig.Compression options = config.getCompression();
+        return options.isEnabled() && options.getCaches().contains(cacheName);
+    }
+
+    /**
+     * 压缩超过阈值的Value，压缩后不变小的保持原样
+     */
+    public Map<String, String> compress(String cacheName, Map<String, String> data) {
+        if (!isEnabledFor(cacheName) || data.isEmpty()) {
+            return data;
+        }
+        CacheSyncConfig.Compression options = config.getCompression();
+        byte[] dictionary = currentDictionary(cacheName, data, options);
+        String dictionaryId = ValueCompressor.dictionaryId(dictionary);
+
+        Map<String, String> result = new HashMap<>(data.size());
+        long originalLength = 0;
+        long compressedLength = 0;
+        int compressedCount = 0;
+        for (Map.Entry<String, String> entry : data.entrySet()) {
+            String value = entry.getValue();
+            if (value != null && value.length() >= options.getMinLength()) {
+                String compressed = ValueCompressor.compress(value, dictionary, dictionaryId, options.getLevel());
+                originalLength += value.length();
+                if (compressed.length() < value.length()) {
+                    value = compressed;
+                    compressedCount++;
+                }
+                compressedLength += value.length();
+            }
+            result.put(entry.getKey(), value);
+        }
+        log.info("Compressed {} - {}/{} values, {} -> {} chars, dictionary {}",
+                cacheName, compressedCount, data.size(), originalLength, compressedLength, dictionaryId);
+        return result;
+    }
+
+    /**
+     * 当前字典，不存在或已到重新训练时间时从本次数据训练
+     */
+    private byte[] currentDictionary(String cacheName, Map<String, String> data, CacheSyncConfig.Compression options) {
+        String pointerKey = CacheKeyConstants.compressionDictionaryPointerKey(cacheName);
+        String pointer = kvRocksService.getValue(pointerKey);
+        String currentId = null;
+        if (pointer != null) {
+            String[] parts = pointer.split(",");
+            currentId = parts[0];
+            long trainedAt = parts.length > 1 ? Long.parseLong(parts[1]) : 0;
+            if (System.currentTimeMillis() - trainedAt < TimeUnit.HOURS.toMillis(options.getRetrainHours())) {
+                byte[] dictionary = loadDictionary(cacheName, currentId);
+                if (dictionary != null) {
+                    return dictionary;
+                }
+            }
+        }
+
+        byte[] dictionary = ValueCompressor.train(sample(data, options), options.getDictionarySize());
+        if (dictionary.length == 0) {
+            return null;
+        }
+        String id = ValueCompressor.dictionaryId(dictionary);
+        kvRocksService.setValue(CacheKeyConstants.compressionDictionaryKey(cacheName, id),
+                Base64.getEncoder().encodeToString(dictionary));
+        kvRocksService.setValue(pointerKey, id + "," + System.currentTimeMillis());
+        if (currentId != null && !currentId.equals(id)) {
+            kvRocksService.expire(CacheKeyConstants.compressionDictionaryKey(cacheName, currentId),
+                    TimeUnit.DAYS.toSeconds(options.getDictionaryRetainDays()));
+        }
+        log.info("Trained compression dictionary for {} - {} bytes, id {}", cacheName, dictionary.length, id);
+        return dictionary;
+    }
+
+    /**
+     * 等间隔采样超过阈值的Value
+     */
+    private static List<String> sample(Map<String, String> data, CacheSyncConfig.Compression options) {
+        List<String> candidates = new ArrayList<>();
+        for (String value : data.values()) {
+            if (value != null && value.length() >= options.getMinLength()) {
+                candidates.add(value);
+            }
+        }
+        int stride = Math.max(1, candidates.size() / Math.max(1, options.getSampleSize()));
+        List<String> samples = new ArrayList<>();
+        for (int i = 0; i < candidates.size() && samples.size() < options.getSampleSize(); i += stride) {
+            samples.add(candidates.get(i));
+        }
+        return samples;
+    }
+
+    private byte[] loadDictionary(String cacheName, String id) {
+        byte[] cached = dictionaries.get(cacheName + ":" + id);
+        if (cached != null) {
+            return cached;
+        }
+        String encoded = kvRocksService.getValue(CacheKeyConstants.compressionDictionaryKey(cacheName, id));
+        if (encoded == null) {
+            return null;
+        }
+        byte[] dictionary = Base64.getDecoder().decode(encoded);
+        dictionaries.put(cacheName + ":" + id, dictionary);
+        return dictionary;
+    }
+
+    // ==================== 读取 ====================
+
+    /**
+     * 解压读取到的Value，未压缩时原样返回
+     */
+    public String decompress(String cacheName, String value) {
+        if (!ValueCompressor.isCompressed(value)) {
+            return value;
+        }
+        String id = ValueCompressor.dictionaryIdOf(value);
+        byte[] dictionary = id == null ? null : loadDictionary(cacheName, id);
+        return ValueCompressor.decompress(value, dictionary);
+    }
+
+    /**
+     * 异步解压: 字典未缓存时异步加载，不阻塞Lettuce的IO线程
+     */
+    CompletableFuture<String> asyncDecompress(String cacheName, String value) {
+        if (!isEnabledFor(cacheName) || !ValueCompressor.isCompressed(value)) {
+            return CompletableFuture.completedFuture(value);
+        }
+        String id = ValueCompressor.dictionaryIdOf(value);
+        byte[] cached = id == null ? null : dictionaries.get(cacheName + ":" + id);
+        if (id == null || cached != null) {
+            return CompletableFuture.completedFuture(ValueCompressor.decompress(value, cached));
+        }
+        return kvRocksService.asyncGetValue(CacheKeyConstants.compressionDictionaryKey(cacheName, id))
+                .thenApply(encoded -> {
+                    byte[] dictionary = null;
+                    if (encoded != null) {
+                        dictionary = Base64.getDecoder().decode(encoded);
+                        dictionaries.put(cacheName + ":" + id, dictionary);
+                    }
+                    return ValueCompressor.decompress(value, dictionary);
+                });
+    }
+
+    /**
+     * 与KVRocksService.asyncHGet相同 (解压已在共享读取路径中完成)
+     */
+    public CompletableFuture<String> asyncHGet(String cacheName, String field) {
+        return kvRocksService.asyncHGet(cacheName, field);
+    }
+}
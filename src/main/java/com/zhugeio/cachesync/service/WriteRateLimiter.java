@@ -0,0 +1,128 @@
+package com.zhugeio.cachesync.service;
+
+import com.zhugeio.cachesync.config.CacheSyncConfig;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * 同步写入限速 (令牌桶)
+ *
+ * - 全局和单节点两级，分别限制 ops/s 和 bytes/s，0表示不限制；上限是所有缓存合计的速率
+ * - 按缓存优先级加权: 每次写入消耗 实际量/权重 的令牌，权重1.0的缓存可用满上限，
+ *   权重更低的缓存单独写入时也只能达到上限的相应比例，并发写入时让出更多速率
+ * - 可选延迟探测: 定期PING/HGET，延迟超过阈值时整体速率减半，恢复后逐步回升
+ */
+@Slf4j
+class WriteRateLimiter {
+
+    private static final double MIN_MULTIPLIER = 0.05;
+
+    private final CacheSyncConfig.RateLimit options;
+    private final LongSupplier probe;
+    private final TokenBucket globalOps;
+    private final TokenBucket globalBytes;
+    private final Map<String, TokenBucket> nodeOps = new ConcurrentHashMap<>();
+    private final Map<String, TokenBucket> nodeBytes = new ConcurrentHashMap<>();
+    private final AtomicLong lastProbeAt = new AtomicLong();
+    private volatile double multiplier = 1.0;
+
+    /**
+     * @param probe 执行一次探测并返回延迟(毫秒)
+     */
+    WriteRateLimiter(CacheSyncConfig config, LongSupplier probe) {
+        this.options = config.getRateLimit();
+        this.probe = probe;
+        this.globalOps = new TokenBucket(options.getOpsPerSecond());
+        this.globalBytes = new TokenBucket(options.getBytesPerSecond());
+    }
+
+    /**
+     * 获取写入许可，令牌不足时阻塞
+     */
+    void acquire(String nodeId, String cacheName, long ops, long bytes) {
+        if (!options.isEnabled()) {
+            return;
+        }
+        maybeProbe();
+
+        double weight = options.getPriorityWeights().getOrDefault(priorityOf(cacheName), 1.0);
+        double scale = 1.0 / (Math.max(weight, 0.01) * multiplier);
+        long waitNanos = Math.max(
+                Math.max(globalOps.take(ops * scale), globalBytes.take(bytes * scale)),
+                Math.max(nodeOps.computeIfAbsent(nodeId, k -> new TokenBucket(options.getNodeOpsPerSecond())).take(ops * scale),
+                        nodeBytes.computeIfAbsent(nodeId, k -> new TokenBucket(options.getNodeBytesPerSecond())).take(bytes * scale)));
+        if (waitNanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Rate limit wait interrupted", e);
+            }
+        }
+    }
+
+    double getMultiplier() {
+        return multiplier;
+    }
+
+    private String priorityOf(String cacheName) {
+        return options.getPriorities().getOrDefault(cacheName, options.getDefaultPriority());
+    }
+
+    private void maybeProbe() {
+        if (!options.isProbeEnabled()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        long last = lastProbeAt.get();
+        if (now - last < options.getProbeIntervalMs() || !lastProbeAt.compareAndSet(last, now)) {
+            return;
+        }
+
+        long latencyMs;
+        try {
+            latencyMs = probe.getAsLong();
+        } catch (Exception e) {
+            latencyMs = Long.MAX_VALUE;
+        }
+        if (latencyMs > options.getProbeLatencyThresholdMs()) {
+            multiplier = Math.max(MIN_MULTIPLIER, multiplier / 2);
+            log.info("Probe latency {} ms exceeds threshold, write rate multiplier -> {}", latencyMs, multiplier);
+        } else if (multiplier < 1.0) {
+            multiplier = Math.min(1.0, multiplier * 1.25);
+        }
+    }
+
+    /**
+     * 令牌桶，容量为1秒的速率，允许透支并返回需要等待的时间
+     */
+    static class TokenBucket {
+        private final double ratePerSecond;
+        private double tokens;
+        private long lastRefill = System.nanoTime();
+
+        TokenBucket(long ratePerSecond) {
+            this.ratePerSecond = ratePerSecond;
+            this.tokens = ratePerSecond;
+        }
+
+        /**
+         * @return 需要等待的纳秒数
+         */
+        synchronized long take(double amount) {
+            if (ratePerSecond <= 0) {
+                return 0;
+            }
+            long now = System.nanoTime();
+            tokens = Math.min(ratePerSecond, tokens + (now - lastRefill) / 1e9 * ratePerSecond);
+            lastRefill = now;
+            tokens -= amount;
+            return tokens >= 0 ? 0 : (long) (-tokens / ratePerSecond * 1e9);
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.zhugeio.cachesync.snapshot;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.BiConsumer;
+
+/**
+ * 缓存快照文件读取 (格式见 {@link SnapshotWriter})
+ *
+ * 只读映射整个文件，查询时在映射内存上二分比较Key字节，只解码命中的Value；
+ * 实例可在多线程间共享
+ */
+public final class SnapshotReader implements Closeable {
+
+    private final ByteBuffer buffer;
+    private final FileChannel channel;
+    private final byte type;
+    private final int count;
+    private final int indexOffset;
+
+    private SnapshotReader(FileChannel channel, MappedByteBuffer buffer) throws IOException {
+        this.channel = channel;
+        this.buffer = buffer;
+        if (buffer.limit() < SnapshotWriter.HEADER_SIZE || buffer.getInt(0) != SnapshotWriter.MAGIC
+                || buffer.get(4) != SnapshotWriter.VERSION) {
+            throw new IOException("Not a cache snapshot");
+        }
+        this.type = buffer.get(5);
+        this.count = buffer.getInt(8);
+        this.indexOffset = buffer.getInt(12);
+        if ((long) indexOffset + 4L * count != buffer.limit()) {
+            throw new IOException("Corrupt cache snapshot");
+        }
+    }
+
+    public static SnapshotReader open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            return new SnapshotReader(channel, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public boolean isSet() {
+        return type == SnapshotWriter.TYPE_SET;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Hash快照的Value，不存在时返回null
+     */
+    public String get(String key) {
+        int offset = find(key.getBytes(StandardCharsets.UTF_8));
+        if (offset < 0 || isSet()) {
+            return null;
+        }
+        int valueOffset = offset + 4 + buffer.getInt(offset);
+        return decode(valueOffset + 4, buffer.getInt(valueOffset));
+    }
+
+    public boolean contains(String key) {
+        return find(key.getBytes(StandardCharsets.UTF_8)) >= 0;
+    }
+
+    /**
+     * 按Key顺序遍历全部条目，Set快照的Value为null
+     */
+    public void forEach(BiConsumer<String, String> consumer) {
+        for (int i = 0; i < count; i++) {
+            int offset = buffer.getInt(indexOffset + 4 * i);
+            int keyLength = buffer.getInt(offset);
+            String key = decode(offset + 4, keyLength);
+            String value = null;
+            if (!isSet()) {
+                int valueOffset = offset + 4 + keyLength;
+                value = decode(valueOffset + 4, buffer.getInt(valueOffset));
+            }
+            consumer.accept(key, value);
+        }
+    }
+
+    /**
+     * 二分查找，返回条目偏移，不存在时返回-1
+     */
+    private int find(byte[] key) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int offset = buffer.getInt(indexOffset + 4 * mid);
+            int cmp = compareKey(offset, key);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return offset;
+            }
+        }
+        return -1;
+    }
+
+    private int compareKey(int offset, byte[] key) {
+        int length = buffer.getInt(offset);
+        int start = offset + 4;
+        int common = Math.min(length, key.length);
+        for (int i = 0; i < common; i++) {
+            int diff = (buffer.get(start + i) & 0xFF) - (key[i] & 0xFF);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return length - key.length;
+    }
+
+    private String decode(int offset, int length) {
+        byte[] bytes = new byte[length];
+        ByteBuffer view = buffer.duplicate();
+        view.position(offset);
+        view.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,136 @@
+package com.zhugeio.cachesync.snapshot;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * 缓存快照文件写入
+ *
+ * 文件格式 (大端):
+ * [magic "ZSNP" 4字节][版本 1字节][类型 1字节: 0=Hash 1=Set][保留 2字节][条目数 4字节][索引偏移 4字节]
+ * [条目: Key长度 4字节 + Key(UTF-8) + (Hash) Value长度 4字节 + Value(UTF-8)] ...
+ * [索引: 各条目偏移 4字节] ...
+ *
+ * 条目按Key的UTF-8字节无符号排序，读取方映射后二分查找；
+ * 先写临时文件再原子替换，已映射旧文件的读取方不受影响
+ */
+public final class SnapshotWriter {
+
+    /**
+     * 快照文件: ${directory}/${cacheName}.snap
+     */
+    public static final String FILE_SUFFIX = ".snap";
+
+    static final int MAGIC = 0x5A534E50;
+    static final byte VERSION = 1;
+    static final byte TYPE_HASH = 0;
+    static final byte TYPE_SET = 1;
+    static final int HEADER_SIZE = 16;
+
+    private SnapshotWriter() {}
+
+    public static void writeHash(Path file, Map<String, String> data) throws IOException {
+        Entry[] entries = new Entry[data.size()];
+        int i = 0;
+        for (Map.Entry<String, String> entry : data.entrySet()) {
+            entries[i] = new Entry(entry.getKey().getBytes(StandardCharsets.UTF_8),
+                    entry.getValue() == null ? new byte[0] : entry.getValue().getBytes(StandardCharsets.UTF_8));
+            i++;
+        }
+        Arrays.sort(entries, (a, b) -> compare(a.key, b.key));
+        byte[][] keys = new byte[entries.length][];
+        byte[][] values = new byte[entries.length][];
+        for (i = 0; i < entries.length; i++) {
+            keys[i] = entries[i].key;
+            values[i] = entries[i].value;
+        }
+        write(file, TYPE_HASH, keys, values);
+    }
+
+    public static void writeSet(Path file, Collection<?> members) throws IOException {
+        byte[][] keys = new byte[members.size()][];
+        int i = 0;
+        for (Object member : members) {
+            keys[i++] = String.valueOf(member).getBytes(StandardCharsets.UTF_8);
+        }
+        Arrays.sort(keys, SnapshotWriter::compare);
+        write(file, TYPE_SET, keys, null);
+    }
+
+    private static void write(Path file, byte type, byte[][] keys, byte[][] values) throws IOException {
+        long dataSize = 0;
+        for (int i = 0; i < keys.length; i++) {
+            dataSize += 4 + keys[i].length + (values == null ? 0 : 4 + values[i].length);
+        }
+        long indexOffset = HEADER_SIZE + dataSize;
+        if (indexOffset + 4L * keys.length > Integer.MAX_VALUE) {
+            throw new IOException("Snapshot exceeds 2GB: " + file);
+        }
+
+        Path parent = file.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream stream = Files.newOutputStream(temp);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream, 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeByte(VERSION);
+                out.writeByte(type);
+                out.writeShort(0);
+                out.writeInt(keys.length);
+                out.writeInt((int) indexOffset);
+
+                for (int i = 0; i < keys.length; i++) {
+                    out.writeInt(keys[i].length);
+                    out.write(keys[i]);
+                    if (values != null) {
+                        out.writeInt(values[i].length);
+                        out.write(values[i]);
+                    }
+                }
+
+                int offset = HEADER_SIZE;
+                for (int i = 0; i < keys.length; i++) {
+                    out.writeInt(offset);
+                    offset += 4 + keys[i].length + (values == null ? 0 : 4 + values[i].length);
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * 字节数组无符号比较
+     */
+    static int compare(byte[] a, byte[] b) {
+        int length = Math.min(a.length, b.length);
+        for (int i = 0; i < length; i++) {
+            int diff = (a[i] & 0xFF) - (b[i] & 0xFF);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return a.length - b.length;
+    }
+
+    private static final class Entry {
+        final byte[] key;
+        final byte[] value;
+
+        Entry(byte[] key, byte[] value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+}
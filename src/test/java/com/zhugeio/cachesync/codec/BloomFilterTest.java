@@ -0,0 +1,77 @@
+package com.zhugeio.cachesync.codec;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BloomFilterTest {
+
+    @Test
+    void sizesFromExpectedInsertionsAndFpp() {
+        // m = ceil(-n*ln(p)/ln(2)^2) = 9586 向上取整到64位 -> 9600，k = round(m/n*ln2) = 7
+        BloomFilter filter = BloomFilter.create(1000, 0.01);
+        assertEquals(9600, filter.bitSize());
+        assertEquals(7, filter.hashCount());
+        assertEquals(10 + 9600 / 8, filter.toBytes().length);
+    }
+
+    @Test
+    void noFalseNegatives() {
+        BloomFilter filter = BloomFilter.create(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            filter.put("member_" + i);
+        }
+        for (int i = 0; i < 10_000; i++) {
+            assertTrue(filter.mightContain("member_" + i), "member_" + i);
+        }
+    }
+
+    @Test
+    void falsePositiveRateNearConfigured() {
+        double fpp = 0.01;
+        BloomFilter filter = BloomFilter.create(10_000, fpp);
+        for (int i = 0; i < 10_000; i++) {
+            filter.put(String.valueOf(i));
+        }
+        int falsePositives = 0;
+        int probes = 100_000;
+        for (int i = 0; i < probes; i++) {
+            if (filter.mightContain("absent_" + i)) {
+                falsePositives++;
+            }
+        }
+        double rate = (double) falsePositives / probes;
+        assertTrue(rate < fpp * 1.5, "false positive rate " + rate);
+    }
+
+    @Test
+    void serializationRoundTrip() {
+        BloomFilter filter = BloomFilter.create(500, 0.001);
+        for (int i = 0; i < 500; i++) {
+            filter.put("1001_" + i);
+        }
+        byte[] bytes = filter.toBytes();
+        assertEquals(1, bytes[0]);
+        assertEquals(filter.hashCount(), bytes[1] & 0xFF);
+
+        BloomFilter restored = BloomFilter.fromBytes(bytes);
+        assertEquals(filter.bitSize(), restored.bitSize());
+        assertEquals(filter.hashCount(), restored.hashCount());
+        assertArrayEquals(bytes, restored.toBytes());
+        for (int i = 0; i < 500; i++) {
+            assertTrue(restored.mightContain("1001_" + i));
+        }
+    }
+
+    @Test
+    void rejectsInvalidInput() {
+        assertThrows(IllegalArgumentException.class, () -> BloomFilter.create(100, 0));
+        assertThrows(IllegalArgumentException.class, () -> BloomFilter.create(100, 1));
+        assertThrows(IllegalArgumentException.class, () -> BloomFilter.fromBytes(new byte[]{2, 1, 0, 0, 0, 0, 0, 0, 0, 64}));
+        byte[] truncated = BloomFilter.create(100, 0.01).toBytes();
+        assertThrows(IllegalArgumentException.class,
+                () -> BloomFilter.fromBytes(Arrays.copyOf(truncated, truncated.length - 8)));
+    }
+}
@@ -0,0 +1,55 @@
+package com.zhugeio.cachesync.codec;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompactIdCodecTest {
+
+    @Test
+    void encodesKnownVectors() {
+        // 整数片段 varint(n << 1)
+        assertArrayEquals(new byte[]{0x02}, CompactIdCodec.encode("1"));
+        assertArrayEquals(new byte[]{(byte) 0xF2, (byte) 0xC0, 0x01}, CompactIdCodec.encode("12345"));
+        // 字符串片段 varint(len << 1 | 1) + UTF-8
+        assertArrayEquals(new byte[]{0x07, 'A', 'P', 'P'}, CompactIdCodec.encode("APP"));
+        assertArrayEquals(new byte[]{0x02, 0x07, 'A', 'P', 'P', 0x04}, CompactIdCodec.encode("1_APP_2"));
+        assertEquals(16, CompactIdCodec.encode("1001_12345_1_APP_START").length);
+    }
+
+    @Test
+    void mergesAdjacentTextParts() {
+        byte[] encoded = CompactIdCodec.encode("1_APP_START");
+        assertEquals(0x02, encoded[0]);
+        assertEquals((9 << 1) | 1, encoded[1]);
+        assertEquals("APP_START", new String(encoded, 2, 9, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void keepsNonCanonicalNumbersAsText() {
+        // 前导0、超过2^62的数字不能按整数编码，否则解码后不一致
+        assertEquals(1 + 3, CompactIdCodec.encode("007").length);
+        String large = String.valueOf(1L << 62);
+        assertEquals(1 + large.length(), CompactIdCodec.encode(large).length);
+    }
+
+    @Test
+    void roundTrips() {
+        String[] values = {
+                "", "0", "_", "__", "1_", "_1", "1__2", "a__1", "01_2", "-1_3",
+                "1001_12345_1_APP_START", "12345", "4611686018427387903", "4611686018427387904",
+                "99999999999999999999", "事件_1_属性", "$channel_2_utm", "1.5_2"
+        };
+        for (String value : values) {
+            assertEquals(value, CompactIdCodec.decode(CompactIdCodec.encode(value)), value);
+        }
+        assertNull(CompactIdCodec.decode(null));
+    }
+
+    @Test
+    void rejectsMalformedInput() {
+        assertThrows(IllegalArgumentException.class, () -> CompactIdCodec.decode(new byte[]{(byte) 0x80}));
+    }
+}
@@ -0,0 +1,73 @@
+package com.zhugeio.cachesync.codec;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.Deflater;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ValueCompressorTest {
+
+    private static final String JSON = "{\"appId\":1001,\"eventName\":\"APP_START\",\"attrs\":[\"os\",\"version\",\"channel\"]}";
+
+    @Test
+    void dictionaryIdIsCrc32() {
+        assertEquals("00000000", ValueCompressor.dictionaryId(null));
+        assertEquals("00000000", ValueCompressor.dictionaryId(new byte[0]));
+        assertEquals("e8b7be43", ValueCompressor.dictionaryId("a".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void roundTripsWithoutDictionary() {
+        String compressed = ValueCompressor.compress(JSON, null, null, Deflater.BEST_COMPRESSION);
+        assertTrue(compressed.startsWith("\0Z100000000"));
+        assertTrue(ValueCompressor.isCompressed(compressed));
+        assertNull(ValueCompressor.dictionaryIdOf(compressed));
+        assertEquals(JSON, ValueCompressor.decompress(compressed, null));
+    }
+
+    @Test
+    void roundTripsWithDictionary() {
+        List<String> samples = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            samples.add(JSON.replace("1001", String.valueOf(1000 + i)));
+        }
+        byte[] dictionary = ValueCompressor.train(samples, 1024);
+        assertTrue(dictionary.length > 0);
+        String id = ValueCompressor.dictionaryId(dictionary);
+
+        String compressed = ValueCompressor.compress(JSON, dictionary, id, Deflater.BEST_COMPRESSION);
+        assertEquals(id, ValueCompressor.dictionaryIdOf(compressed));
+        assertEquals(JSON, ValueCompressor.decompress(compressed, dictionary));
+        assertTrue(compressed.length() < ValueCompressor.compress(JSON, null, null, Deflater.BEST_COMPRESSION).length());
+        assertThrows(IllegalStateException.class, () -> ValueCompressor.decompress(compressed, null));
+    }
+
+    @Test
+    void roundTripsUnicodeAndEmpty() {
+        for (String value : Arrays.asList("", "事件属性", JSON + "中文")) {
+            assertEquals(value, ValueCompressor.decompress(ValueCompressor.compress(value, null, null, 6), null));
+        }
+    }
+
+    @Test
+    void passesThroughUncompressedValues() {
+        assertEquals(JSON, ValueCompressor.decompress(JSON, null));
+        assertNull(ValueCompressor.decompress(null, null));
+        assertFalse(ValueCompressor.isCompressed("\0Z1"));
+    }
+
+    @Test
+    void trainsMostValuableTokensLast() {
+        byte[] dictionary = ValueCompressor.train(Arrays.asList(
+                "{\"a\":\"long_repeated_value\"}", "{\"a\":\"long_repeated_value\"}", "{\"once\":1}"), 1024);
+        String text = new String(dictionary, StandardCharsets.UTF_8);
+        assertTrue(text.endsWith("\"long_repeated_value\"}"), text);
+        assertFalse(text.contains("once"));
+        assertTrue(ValueCompressor.train(Arrays.asList(JSON, JSON), 8).length <= 8);
+    }
+}
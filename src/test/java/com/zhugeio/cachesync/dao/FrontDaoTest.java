@@ -0,0 +1,74 @@
+package com.zhugeio.cachesync.dao;
+
+import com.zhugeio.cachesync.config.CacheSyncConfig;
+import com.zhugeio.cachesync.metrics.SyncEvents;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.lang.reflect.Field;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FrontDaoTest {
+
+    /**
+     * 只记录SQL和参数，不连接数据库
+     */
+    private static class RecordingJdbcTemplate extends JdbcTemplate {
+        String sql;
+        Object[] args;
+
+        @Override
+        public List<Map<String, Object>> queryForList(String sql, Object... args) {
+            this.sql = sql;
+            this.args = args;
+            return Collections.emptyList();
+        }
+    }
+
+    private final RecordingJdbcTemplate jdbc = new RecordingJdbcTemplate();
+    private final FrontDao dao = new FrontDao();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        SyncEvents syncEvents = new SyncEvents();
+        inject(syncEvents, "config", new CacheSyncConfig());
+        inject(dao, "jdbcTemplate", jdbc);
+        inject(dao, "syncEvents", syncEvents);
+    }
+
+    private static void inject(Object target, String name, Object value) throws Exception {
+        Field field = target.getClass().getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(target, value);
+    }
+
+    @Test
+    void firstPageIncludesWatermark() {
+        dao.getRowsSince("event", "id, app_id", "updated_at", "2024-01-01 00:00:00",
+                Collections.singletonList("id"), null, 100);
+        assertEquals("SELECT id, app_id, CAST(updated_at AS CHAR) AS " + FrontDao.WATERMARK_ALIAS + " FROM event" +
+                " WHERE updated_at >= ? ORDER BY updated_at, id LIMIT ?", jdbc.sql);
+        assertArrayEquals(new Object[]{"2024-01-01 00:00:00", 100}, jdbc.args);
+    }
+
+    @Test
+    void laterPagesContinueAfterLastRowKey() {
+        dao.getRowsSince("event_attr", "event_id, attr_id", "updated_at", "ignored",
+                Arrays.asList("event_id", "attr_id"), new Object[]{"2024-01-01 00:00:00", 10, 5}, 50);
+        assertEquals("SELECT event_id, attr_id, CAST(updated_at AS CHAR) AS " + FrontDao.WATERMARK_ALIAS +
+                " FROM event_attr WHERE (updated_at, event_id, attr_id) > (?, ?, ?)" +
+                " ORDER BY updated_at, event_id, attr_id LIMIT ?", jdbc.sql);
+        assertArrayEquals(new Object[]{"2024-01-01 00:00:00", 10, 5, 50}, jdbc.args);
+    }
+
+    @Test
+    void rejectsUnsafeIdentifiers() {
+        assertThrows(IllegalArgumentException.class, () -> dao.getRowsSince("event", "id", "updated_at; DROP TABLE event",
+                "0", Collections.singletonList("id"), null, 10));
+        assertThrows(IllegalArgumentException.class, () -> dao.getRowsSince("event", "id", "updated_at",
+                "0", Collections.singletonList("id) OR (1"), null, 10));
+    }
+}
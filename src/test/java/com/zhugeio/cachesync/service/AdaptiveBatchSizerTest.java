@@ -0,0 +1,93 @@
+package com.zhugeio.cachesync.service;
+
+import com.zhugeio.cachesync.config.CacheSyncConfig;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdaptiveBatchSizerTest {
+
+    private static CacheSyncConfig config(boolean enabled, int pipelineBatchSize) {
+        CacheSyncConfig config = new CacheSyncConfig();
+        config.setPipelineBatchSize(pipelineBatchSize);
+        CacheSyncConfig.AdaptiveBatch adaptive = config.getAdaptiveBatch();
+        adaptive.setEnabled(enabled);
+        adaptive.setMinBatchSize(100);
+        adaptive.setMaxBatchSize(1000);
+        adaptive.setIncreaseStep(100);
+        adaptive.setDecreaseFactor(0.5);
+        adaptive.setTargetLatencyMs(50);
+        adaptive.setMaxWindow(4);
+        return config;
+    }
+
+    @Test
+    void fixedWhenDisabled() {
+        AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(config(false, 5000));
+        sizer.onSuccess(1);
+        sizer.onFailure();
+        assertEquals(5000, sizer.batchSize());
+        assertEquals(1, sizer.window());
+    }
+
+    @Test
+    void clampsInitialSize() {
+        assertEquals(1000, new AdaptiveBatchSizer(config(true, 5000)).batchSize());
+        assertEquals(100, new AdaptiveBatchSizer(config(true, 10)).batchSize());
+    }
+
+    @Test
+    void growsAdditivelyUnderTarget() {
+        AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(config(true, 500));
+        // 低于目标一半: 批次+步长，窗口+1
+        sizer.onSuccess(10);
+        assertEquals(600, sizer.batchSize());
+        assertEquals(2, sizer.window());
+        // 低于目标但超过一半: 只增加批次
+        sizer.onSuccess(40);
+        assertEquals(700, sizer.batchSize());
+        assertEquals(2, sizer.window());
+
+        for (int i = 0; i < 20; i++) {
+            sizer.onSuccess(1);
+        }
+        assertEquals(1000, sizer.batchSize());
+        assertEquals(4, sizer.window());
+    }
+
+    @Test
+    void shrinksMultiplicativelyOverTarget() {
+        AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(config(true, 800));
+        sizer.onSuccess(1);
+        assertEquals(900, sizer.batchSize());
+        assertEquals(2, sizer.window());
+
+        sizer.onSuccess(51);
+        assertEquals(450, sizer.batchSize());
+        assertEquals(1, sizer.window());
+
+        for (int i = 0; i < 10; i++) {
+            sizer.onSuccess(500);
+        }
+        assertEquals(100, sizer.batchSize());
+        assertEquals(1, sizer.window());
+    }
+
+    @Test
+    void halvesOnFailure() {
+        AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(config(true, 1000));
+        for (int i = 0; i < 3; i++) {
+            sizer.onSuccess(1);
+        }
+        assertEquals(4, sizer.window());
+
+        sizer.onFailure();
+        assertEquals(500, sizer.batchSize());
+        assertEquals(2, sizer.window());
+        sizer.onFailure();
+        sizer.onFailure();
+        sizer.onFailure();
+        assertEquals(100, sizer.batchSize());
+        assertEquals(1, sizer.window());
+    }
+}
@@ -0,0 +1,77 @@
+package com.zhugeio.cachesync.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AppPartitionServiceTest {
+
+    @Test
+    void splitsByAppIdPrefix() {
+        Map<String, String> data = new HashMap<>();
+        data.put("1_a", "x");
+        data.put("1_b", "y");
+        data.put("23_a", "z");
+        data.put("23_", "empty");
+
+        Map<String, Map<String, String>> partitions = AppPartitionService.splitByAppId(data);
+        assertEquals(2, partitions.size());
+        assertEquals(2, partitions.get("1").size());
+        assertEquals("y", partitions.get("1").get("1_b"));
+        assertEquals(2, partitions.get("23").size());
+        assertEquals("empty", partitions.get("23").get("23_"));
+    }
+
+    @Test
+    void skipsFieldsWithoutAppPrefix() {
+        Map<String, String> data = new HashMap<>();
+        data.put("noprefix", "x");
+        data.put("_1", "y");
+        data.put("5_ok", "z");
+
+        Map<String, Map<String, String>> partitions = AppPartitionService.splitByAppId(data);
+        assertEquals(1, partitions.size());
+        assertEquals("z", partitions.get("5").get("5_ok"));
+    }
+
+    @Test
+    void digestIgnoresFieldOrder() {
+        Map<String, String> a = new LinkedHashMap<>();
+        a.put("1_a", "x");
+        a.put("1_b", "y");
+        Map<String, String> b = new LinkedHashMap<>();
+        b.put("1_b", "y");
+        b.put("1_a", "x");
+        assertEquals(AppPartitionService.digest(a), AppPartitionService.digest(b));
+    }
+
+    @Test
+    void digestChangesWithFieldsAndValues() {
+        Map<String, String> base = new HashMap<>();
+        base.put("1_a", "x");
+        String digest = AppPartitionService.digest(base);
+
+        Map<String, String> value = new HashMap<>(base);
+        value.put("1_a", "y");
+        assertNotEquals(digest, AppPartitionService.digest(value));
+
+        Map<String, String> added = new HashMap<>(base);
+        added.put("1_b", "x");
+        assertNotEquals(digest, AppPartitionService.digest(added));
+
+        // 分隔符避免Field和Value的边界移动后摘要相同
+        Map<String, String> shifted = new HashMap<>();
+        shifted.put("1_ax", "");
+        assertNotEquals(digest, AppPartitionService.digest(shifted));
+    }
+
+    @Test
+    void dirtyDigestNeverMatchesData() {
+        assertNotEquals(AppPartitionService.DIRTY_DIGEST, AppPartitionService.digest(new HashMap<>()));
+        assertEquals(32, AppPartitionService.digest(new HashMap<>()).length());
+    }
+}
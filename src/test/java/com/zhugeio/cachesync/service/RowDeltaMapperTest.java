@@ -0,0 +1,134 @@
+package com.zhugeio.cachesync.service;
+
+import com.zhugeio.cachesync.cdc.RowChange;
+import com.zhugeio.cachesync.constants.CacheKeyConstants;
+import com.zhugeio.cachesync.dao.FrontDao;
+import com.zhugeio.cachesync.entity.CacheDelta;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RowDeltaMapperTest {
+
+    private final RowDeltaMapper mapper = new RowDeltaMapper();
+
+    private static Map<String, Object> row(Object... keyValues) {
+        Map<String, Object> row = new HashMap<>();
+        for (int i = 0; i < keyValues.length; i += 2) {
+            row.put((String) keyValues[i], keyValues[i + 1]);
+        }
+        return row;
+    }
+
+    private static Map<String, Object> event(int id, String name, int isDelete) {
+        return row("id", id, "app_id", 1, "owner", 0, "event_name", name, "is_delete", isDelete, "is_stop", 0);
+    }
+
+    @Test
+    void updateDeletesFieldsNoLongerDerived() {
+        Map<String, CacheDelta> deltas = new HashMap<>();
+        RowChange change = new RowChange("event", RowChange.Type.UPDATE, event(10, "a", 0), event(10, "b", 0));
+        assertTrue(mapper.derive(change, deltas, new RowDeltaMapper.Lookups()));
+
+        CacheDelta events = deltas.get(CacheKeyConstants.APP_ID_EVENT_ID_MAP);
+        assertEquals(Collections.singletonMap("1_0_b", "10"), events.getPuts());
+        assertEquals(Collections.singleton("1_0_a"), events.getDeletes());
+        CacheDelta black = deltas.get(CacheKeyConstants.BLACK_EVENT_ID_SET);
+        assertEquals(Collections.singleton("10"), black.getRemoves());
+        assertTrue(black.getAdds().isEmpty());
+    }
+
+    @Test
+    void unchangedFieldIsRewrittenNotDeleted() {
+        Map<String, CacheDelta> deltas = new HashMap<>();
+        RowChange change = new RowChange("event", RowChange.Type.UPDATE, event(10, "a", 0), event(10, "a", 1));
+        assertTrue(mapper.derive(change, deltas, new RowDeltaMapper.Lookups()));
+
+        CacheDelta events = deltas.get(CacheKeyConstants.APP_ID_EVENT_ID_MAP);
+        assertEquals(Collections.singletonMap("1_0_a", "10"), events.getPuts());
+        assertTrue(events.getDeletes().isEmpty());
+        assertEquals(Collections.singleton("10"), deltas.get(CacheKeyConstants.BLACK_EVENT_ID_SET).getAdds());
+    }
+
+    @Test
+    void deleteRemovesDerivedFieldsAndMembers() {
+        Map<String, CacheDelta> deltas = new HashMap<>();
+        RowChange change = new RowChange("event", RowChange.Type.DELETE, event(10, "a", 1), null);
+        assertTrue(mapper.derive(change, deltas, new RowDeltaMapper.Lookups()));
+
+        CacheDelta events = deltas.get(CacheKeyConstants.APP_ID_EVENT_ID_MAP);
+        assertTrue(events.getPuts().isEmpty());
+        assertEquals(Collections.singleton("1_0_a"), events.getDeletes());
+        assertEquals(Collections.singleton("10"), deltas.get(CacheKeyConstants.BLACK_EVENT_ID_SET).getRemoves());
+    }
+
+    @Test
+    void laterChangesInTheSameBatchWin() {
+        Map<String, CacheDelta> deltas = new HashMap<>();
+        RowDeltaMapper.Lookups lookups = new RowDeltaMapper.Lookups();
+        assertTrue(mapper.derive(new RowChange("event", RowChange.Type.INSERT, null, event(10, "a", 0)), deltas, lookups));
+        assertTrue(mapper.derive(new RowChange("event", RowChange.Type.DELETE, event(10, "a", 0), null), deltas, lookups));
+
+        CacheDelta events = deltas.get(CacheKeyConstants.APP_ID_EVENT_ID_MAP);
+        assertTrue(events.getPuts().isEmpty());
+        assertEquals(Collections.singleton("1_0_a"), events.getDeletes());
+    }
+
+    @Test
+    void companyAppUsesPrefetchedTransfers() {
+        RowDeltaMapper.Lookups lookups = new RowDeltaMapper.Lookups();
+        lookups.transferIds = Collections.singleton(2);
+        Map<String, CacheDelta> deltas = new HashMap<>();
+        Map<String, Object> app1 = row("id", 1, "app_key", "k1", "company_id", 7, "is_delete", 0, "stop", 0, "auto_event", 0);
+        Map<String, Object> app2 = row("id", 2, "app_key", "k2", "company_id", 7, "is_delete", 0, "stop", 0, "auto_event", 1);
+        assertTrue(mapper.derive(new RowChange("company_app", RowChange.Type.INSERT, null, app1), deltas, lookups));
+        assertTrue(mapper.derive(new RowChange("company_app", RowChange.Type.INSERT, null, app2), deltas, lookups));
+
+        assertEquals(Collections.singletonMap("k1", "1"), deltas.get(CacheKeyConstants.APP_KEY_APP_ID_MAP).getPuts());
+        assertEquals(2, deltas.get(CacheKeyConstants.CID_BY_AID_MAP).getPuts().size());
+        CacheDelta noneAutoCreate = deltas.get(CacheKeyConstants.APP_ID_NONE_AUTO_CREATE_SET);
+        assertEquals(Collections.singleton("1"), noneAutoCreate.getAdds());
+        assertEquals(Collections.singleton("2"), noneAutoCreate.getRemoves());
+    }
+
+    @Test
+    void eventAttrUsesPrefetchedEventsAndApps() {
+        RowDeltaMapper.Lookups lookups = new RowDeltaMapper.Lookups();
+        lookups.eventInfos = Collections.singletonMap(10, new FrontDao.EventInfo(1, "ev", "0", true));
+        lookups.validAppIds = Collections.singleton(1);
+        Map<String, CacheDelta> deltas = new HashMap<>();
+        Map<String, Object> attr = row("event_id", 10, "attr_id", 5, "attr_name", "price", "owner", 0,
+                "is_delete", 0, "is_stop", 0, "attr_type", 0, "alias_name", "p", "column_name", "c5");
+        // 事件信息缺失的行跳过
+        Map<String, Object> orphan = row("event_id", 11, "attr_id", 6, "attr_name", "x", "owner", 0,
+                "is_delete", 0, "is_stop", 0, "attr_type", 0, "column_name", "c6");
+        assertTrue(mapper.derive(new RowChange("event_attr", RowChange.Type.INSERT, null, attr), deltas, lookups));
+        assertTrue(mapper.derive(new RowChange("event_attr", RowChange.Type.INSERT, null, orphan), deltas, lookups));
+
+        assertEquals(Collections.singletonMap("1_10_0_PRICE", "5"),
+                deltas.get(CacheKeyConstants.APP_ID_EVENT_ATTR_ID_MAP).getPuts());
+        assertEquals(Collections.singletonMap("10_5", "c5"), deltas.get(CacheKeyConstants.EVENT_ATTR_COLUMN_MAP).getPuts());
+        assertEquals(Collections.singletonMap("1_0_ev_price", "p"), deltas.get(CacheKeyConstants.EVENT_ATTR_ALIAS_MAP).getPuts());
+    }
+
+    @Test
+    void virtualAttributesCannotBeDerived() {
+        RowDeltaMapper.Lookups lookups = new RowDeltaMapper.Lookups();
+        lookups.eventInfos = Collections.singletonMap(10, new FrontDao.EventInfo(1, "ev", "0", true));
+        Map<String, Object> attr = row("event_id", 10, "attr_id", 5, "attr_name", "v", "owner", 0,
+                "is_delete", 0, "is_stop", 0, "attr_type", 1);
+        assertFalse(mapper.derive(new RowChange("event_attr", RowChange.Type.INSERT, null, attr),
+                new HashMap<>(), lookups));
+        Map<String, Object> prop = row("id", 3, "app_id", 1, "owner", 0, "name", "v", "is_delete", 0, "attr_type", 1);
+        assertFalse(mapper.derive(new RowChange("user_prop_meta", RowChange.Type.DELETE, prop, null),
+                new HashMap<>(), lookups));
+    }
+
+    @Test
+    void unsupportedTableCannotBeDerived() {
+        assertFalse(mapper.derive(new RowChange("unknown", RowChange.Type.INSERT, null, row("id", 1)),
+                new HashMap<>(), new RowDeltaMapper.Lookups()));
+    }
+}
@@ -0,0 +1,119 @@
+package com.zhugeio.cachesync.service;
+
+import com.zhugeio.cachesync.config.CacheSyncConfig;
+import com.zhugeio.cachesync.entity.RunRecord;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RunHistoryServiceTest {
+
+    private static final String CACHE = "appIdEventIdMap";
+
+    private final RunHistoryService service = new RunHistoryService();
+
+    private final CacheSyncConfig config = new CacheSyncConfig();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        Field field = RunHistoryService.class.getDeclaredField("config");
+        field.setAccessible(true);
+        field.set(service, config);
+    }
+
+    @Test
+    void medianOfOddAndEvenCounts() {
+        assertEquals(3, RunHistoryService.median(Arrays.asList(5L, 1L, 3L)));
+        assertEquals(3, RunHistoryService.median(Arrays.asList(4L, 1L, 2L, 9L)));
+        assertEquals(7, RunHistoryService.median(Collections.singletonList(7L)));
+    }
+
+    @Test
+    void slowerThanBaselineIsRegression() {
+        List<String> regressions = service.detect(record(10000, false), history(4000, false, 3));
+        assertEquals(1, regressions.size());
+        assertTrue(regressions.get(0).startsWith(CACHE + " (full) total 10000 ms vs baseline 4000 ms"));
+    }
+
+    @Test
+    void smallAbsoluteIncreaseIsIgnored() {
+        // 超过倍数但超出量小于min-regression-ms
+        assertTrue(service.detect(record(1000, false), history(100, false, 3)).isEmpty());
+    }
+
+    @Test
+    void withinRatioIsNotRegression() {
+        assertTrue(service.detect(record(5000, false), history(4000, false, 3)).isEmpty());
+    }
+
+    @Test
+    void tooFewSamplesAreSkipped() {
+        assertTrue(service.detect(record(10000, false), history(4000, false, 2)).isEmpty());
+    }
+
+    @Test
+    void baselineOnlyUsesSameMode() {
+        // 增量运行很快，不能作为整体替换的基线
+        List<RunRecord> history = new ArrayList<>(history(100, true, 3));
+        assertTrue(service.detect(record(10000, false), history).isEmpty());
+
+        history.addAll(history(9000, false, 3));
+        assertTrue(service.detect(record(10000, false), history).isEmpty());
+
+        List<String> regressions = service.detect(record(5000, true), history);
+        assertEquals(1, regressions.size());
+        assertTrue(regressions.get(0).startsWith(CACHE + " (incremental) total"));
+    }
+
+    @Test
+    void phaseRegressionIsReported() {
+        RunRecord current = record(4000, false);
+        current.getCaches().get(CACHE).getPhaseMillis().put("WRITE", 3500L);
+        List<RunRecord> history = history(4000, false, 3);
+        for (RunRecord record : history) {
+            record.getCaches().get(CACHE).getPhaseMillis().put("WRITE", 1000L);
+        }
+        List<String> regressions = service.detect(current, history);
+        assertEquals(1, regressions.size());
+        assertTrue(regressions.get(0).contains(" WRITE 3500 ms vs baseline 1000 ms"));
+    }
+
+    @Test
+    void failedRunsAreIgnored() {
+        RunRecord current = record(10000, false);
+        current.getCaches().get(CACHE).setSuccess(false);
+        assertTrue(service.detect(current, history(4000, false, 3)).isEmpty());
+
+        List<RunRecord> history = history(4000, false, 3);
+        history.get(0).getCaches().get(CACHE).setSuccess(false);
+        assertTrue(service.detect(record(10000, false), history).isEmpty());
+    }
+
+    private static List<RunRecord> history(long costMs, boolean incremental, int count) {
+        List<RunRecord> records = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            records.add(record(costMs, incremental));
+        }
+        return records;
+    }
+
+    private static RunRecord record(long costMs, boolean incremental) {
+        RunRecord.CacheRun run = new RunRecord.CacheRun();
+        run.setCostMs(costMs);
+        run.setRows(100);
+        run.setIncremental(incremental);
+        run.setSuccess(true);
+        RunRecord record = new RunRecord();
+        record.setCostMs(costMs);
+        record.setSuccess(true);
+        record.getCaches().put(CACHE, run);
+        return record;
+    }
+}
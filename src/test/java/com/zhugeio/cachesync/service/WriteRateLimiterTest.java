@@ -0,0 +1,58 @@
+package com.zhugeio.cachesync.service;
+
+import com.zhugeio.cachesync.config.CacheSyncConfig;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WriteRateLimiterTest {
+
+    @Test
+    void unlimitedBucketNeverWaits() {
+        WriteRateLimiter.TokenBucket bucket = new WriteRateLimiter.TokenBucket(0);
+        assertEquals(0, bucket.take(1_000_000));
+        assertEquals(0, bucket.take(1_000_000));
+    }
+
+    @Test
+    void startsFullWithOneSecondOfTokens() {
+        WriteRateLimiter.TokenBucket bucket = new WriteRateLimiter.TokenBucket(1000);
+        assertEquals(0, bucket.take(600));
+        assertEquals(0, bucket.take(300));
+    }
+
+    @Test
+    void overdraftReturnsWaitForDeficit() {
+        WriteRateLimiter.TokenBucket bucket = new WriteRateLimiter.TokenBucket(1000);
+        assertEquals(0, bucket.take(1000));
+        // 透支500个令牌，按1000/s需要约0.5秒补齐
+        long waitMs = TimeUnit.NANOSECONDS.toMillis(bucket.take(500));
+        assertTrue(waitMs > 400 && waitMs <= 500, "wait " + waitMs);
+        // 继续透支时等待累加
+        long nextMs = TimeUnit.NANOSECONDS.toMillis(bucket.take(500));
+        assertTrue(nextMs > 900 && nextMs <= 1000, "wait " + nextMs);
+    }
+
+    @Test
+    void refillIsCappedAtCapacity() throws InterruptedException {
+        WriteRateLimiter.TokenBucket bucket = new WriteRateLimiter.TokenBucket(100_000);
+        Thread.sleep(30);
+        // 空闲期间不会积累超过1秒的令牌
+        assertEquals(0, bucket.take(100_000));
+        assertTrue(bucket.take(10_000) > 0);
+    }
+
+    @Test
+    void disabledLimiterDoesNotBlock() {
+        CacheSyncConfig config = new CacheSyncConfig();
+        config.getRateLimit().setEnabled(false);
+        config.getRateLimit().setOpsPerSecond(1);
+        WriteRateLimiter limiter = new WriteRateLimiter(config, () -> 0L);
+        long start = System.nanoTime();
+        limiter.acquire("node", "appKeyAppIdMap", 1_000, 1_000_000);
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 100);
+        assertEquals(1.0, limiter.getMultiplier());
+    }
+}
@@ -0,0 +1,114 @@
+package com.zhugeio.cachesync.snapshot;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SnapshotReaderTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void hashRoundTrip() throws IOException {
+        Map<String, String> data = new HashMap<>();
+        for (int i = 0; i < 1000; i++) {
+            data.put("1001_" + i, "{\"id\":" + i + "}");
+        }
+        data.put("事件", "属性");
+        data.put("empty", "");
+        Path file = directory.resolve("hash" + SnapshotWriter.FILE_SUFFIX);
+        SnapshotWriter.writeHash(file, data);
+
+        try (SnapshotReader reader = SnapshotReader.open(file)) {
+            assertFalse(reader.isSet());
+            assertEquals(data.size(), reader.size());
+            for (Map.Entry<String, String> entry : data.entrySet()) {
+                assertEquals(entry.getValue(), reader.get(entry.getKey()), entry.getKey());
+            }
+            assertNull(reader.get("1001_1000"));
+            assertFalse(reader.contains("missing"));
+
+            Map<String, String> read = new LinkedHashMap<>();
+            reader.forEach(read::put);
+            assertEquals(data, read);
+        }
+    }
+
+    @Test
+    void setRoundTripInUnsignedByteOrder() throws IOException {
+        // UTF-8多字节字符 (首字节>=0x80) 必须排在ASCII之后，否则二分查找失败
+        List<Object> members = Arrays.asList("b", "事件", "a", 10, 2, "é");
+        Path file = directory.resolve("set" + SnapshotWriter.FILE_SUFFIX);
+        SnapshotWriter.writeSet(file, members);
+
+        try (SnapshotReader reader = SnapshotReader.open(file)) {
+            assertTrue(reader.isSet());
+            for (Object member : members) {
+                assertTrue(reader.contains(String.valueOf(member)), String.valueOf(member));
+            }
+            assertNull(reader.get("a"));
+            List<String> order = new ArrayList<>();
+            reader.forEach((key, value) -> {
+                assertNull(value);
+                order.add(key);
+            });
+            assertEquals(Arrays.asList("10", "2", "a", "b", "é", "事件"), order);
+        }
+    }
+
+    @Test
+    void writesKnownLayout() throws IOException {
+        Path file = directory.resolve("layout" + SnapshotWriter.FILE_SUFFIX);
+        SnapshotWriter.writeHash(file, Collections.singletonMap("k", "vv"));
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+
+        assertEquals(16 + 4 + 1 + 4 + 2 + 4, buffer.limit());
+        assertEquals(0x5A534E50, buffer.getInt(0));
+        assertEquals(1, buffer.get(4));
+        assertEquals(0, buffer.get(5));
+        assertEquals(1, buffer.getInt(8));
+        assertEquals(27, buffer.getInt(12));
+        assertEquals(1, buffer.getInt(16));
+        assertEquals('k', buffer.get(20));
+        assertEquals(2, buffer.getInt(21));
+        assertEquals(16, buffer.getInt(27));
+    }
+
+    @Test
+    void emptySnapshot() throws IOException {
+        Path file = directory.resolve("empty" + SnapshotWriter.FILE_SUFFIX);
+        SnapshotWriter.writeSet(file, Collections.emptySet());
+        try (SnapshotReader reader = SnapshotReader.open(file)) {
+            assertEquals(0, reader.size());
+            assertFalse(reader.contains(""));
+        }
+    }
+
+    @Test
+    void replacesExistingFileAndRejectsCorruptFiles() throws IOException {
+        Path file = directory.resolve("replace" + SnapshotWriter.FILE_SUFFIX);
+        SnapshotWriter.writeHash(file, Collections.singletonMap("k", "old"));
+        SnapshotWriter.writeHash(file, Collections.singletonMap("k", "new"));
+        try (SnapshotReader reader = SnapshotReader.open(file)) {
+            assertEquals("new", reader.get("k"));
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(1, files.count());
+        }
+
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 1));
+        assertThrows(IOException.class, () -> SnapshotReader.open(file));
+        Files.write(file, new byte[]{'n', 'o', 'p', 'e'});
+        assertThrows(IOException.class, () -> SnapshotReader.open(file));
+    }
+}